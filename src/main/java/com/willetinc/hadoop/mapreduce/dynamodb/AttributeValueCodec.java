@@ -0,0 +1,524 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+
+/**
+ * <p>
+ * Compact binary encoding of attribute values used by the writables and
+ * input splits. Lengths and counts are variable length integers, numbers are
+ * stored as a scale and an unscaled value and binaries are stored raw unless
+ * they are larger than {@link #COMPRESS_THRESHOLD} and compress.
+ * </p>
+ * 
+ * <p>
+ * Values carry no version of their own; a writer emits
+ * {@link #writeVersion(DataOutput)} once ahead of the values it encodes and
+ * the reader checks it with {@link #readVersion(DataInput)}.
+ * </p>
+ * 
+ * <p>
+ * Earlier releases wrote writables with {@link AttributeValueIOUtils} and no
+ * version. Those values start with a length or count, which is never
+ * negative, while the version byte has its sign bit set. Such a byte can only
+ * begin a negative length or count, so {@link #readVersion(DataInput)} tells
+ * the two apart and hands back legacy values to be read with
+ * AttributeValueIOUtils.
+ * </p>
+ */
+public class AttributeValueCodec {
+
+	/** Version of the encoding written by this class */
+	public static final byte VERSION = 1;
+
+	/** Set in the version byte, never set in the first byte of legacy values */
+	private static final int VERSION_FLAG = 0x80;
+
+	/** Mask of the version in the version byte */
+	private static final int VERSION_MASK = 0x07;
+
+	/** Size in bytes above which binaries are compressed */
+	public static final int COMPRESS_THRESHOLD = 1024;
+
+	/** Number stored as a scale and an unscaled long */
+	private static final int NUMBER_LONG = 0;
+
+	/** Number stored as a scale and an unscaled BigInteger */
+	private static final int NUMBER_BIG = 1;
+
+	/** Number stored as a string, to keep the form it was given in */
+	private static final int NUMBER_STRING = 2;
+
+	/** Length of a compressed binary */
+	private static final int COMPRESSED = -1;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * <p>
+	 * Reads values of one type into recycled holders. A reader returns the
+	 * same AttributeValue on every read; strings and numbers that did not
+	 * change since the previous read are returned as the same String,
+	 * binaries are read into a growable array and sets into recycled lists.
+	 * </p>
+	 * 
+	 * <p>
+	 * The value returned and everything it holds are overwritten by the next
+	 * read, so callers keeping a value across reads must copy it.
+	 * </p>
+	 */
+	public static class Reader {
+
+		private final Types type;
+
+		private final AttributeValue value = new AttributeValue();
+
+		private final Slot slot = new Slot();
+
+		private Slot[] elements = new Slot[0];
+
+		public Reader(Types type) {
+			this.type = type;
+		}
+
+		public AttributeValue read(DataInput in) throws IOException {
+			switch (type) {
+			case STRING:
+				value.setS(slot.readString(in));
+				break;
+			case NUMBER:
+				value.setN(slot.readNumber(in));
+				break;
+			case BINARY:
+				value.setB(slot.readBinary(in));
+				break;
+			case STRING_SET:
+			case NUMBER_SET: {
+				int size = WritableUtils.readVInt(in);
+				ensureElements(size);
+				List<String> values = type == Types.STRING_SET
+						? value.getSS()
+						: value.getNS();
+				if (null == values) {
+					values = new ArrayList<String>(size);
+				}
+				values.clear();
+				for (int i = 0; i < size; i++) {
+					values.add(type == Types.STRING_SET
+							? elements[i].readString(in)
+							: elements[i].readNumber(in));
+				}
+				if (type == Types.STRING_SET && values != value.getSS()) {
+					value.setSS(values);
+				} else if (type == Types.NUMBER_SET && values != value.getNS()) {
+					value.setNS(values);
+				}
+				break;
+			}
+			case BINARY_SET: {
+				int size = WritableUtils.readVInt(in);
+				ensureElements(size);
+				List<ByteBuffer> values = value.getBS();
+				if (null == values) {
+					values = new ArrayList<ByteBuffer>(size);
+				}
+				values.clear();
+				for (int i = 0; i < size; i++) {
+					values.add(elements[i].readBinary(in));
+				}
+				if (values != value.getBS()) {
+					value.setBS(values);
+				}
+				break;
+			}
+			}
+
+			return value;
+		}
+
+		private void ensureElements(int size) {
+			if (elements.length < size) {
+				Slot[] grown = new Slot[Math.max(size, elements.length * 2)];
+				System.arraycopy(elements, 0, grown, 0, elements.length);
+				for (int i = elements.length; i < grown.length; i++) {
+					grown[i] = new Slot();
+				}
+				elements = grown;
+			}
+		}
+	}
+
+	/**
+	 * Holder of one decoded string, number or binary that keeps the bytes it
+	 * was decoded from to detect unchanged values.
+	 */
+	private static class Slot {
+
+		private byte[] bytes = new byte[16];
+
+		private byte[] next = new byte[16];
+
+		private int length = -1;
+
+		private int tag = -1;
+
+		private long number;
+
+		private String value;
+
+		private ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+		String readString(DataInput in) throws IOException {
+			if (readBytes(in, WritableUtils.readVInt(in))) {
+				value = new String(bytes, 0, length, UTF8);
+			}
+			return value;
+		}
+
+		String readNumber(DataInput in) throws IOException {
+			int tag = WritableUtils.readVInt(in);
+			switch (tag & 3) {
+			case NUMBER_LONG: {
+				long number = WritableUtils.readVLong(in);
+				if (tag != this.tag || number != this.number || null == value) {
+					value = BigDecimal.valueOf(number, tag >> 2).toString();
+					this.number = number;
+				}
+				break;
+			}
+			case NUMBER_BIG: {
+				if (readBytes(in, WritableUtils.readVInt(in)) || tag != this.tag) {
+					byte[] unscaled = new byte[length];
+					System.arraycopy(bytes, 0, unscaled, 0, length);
+					value = new BigDecimal(new BigInteger(unscaled), tag >> 2)
+							.toString();
+				}
+				break;
+			}
+			case NUMBER_STRING: {
+				if (readBytes(in, WritableUtils.readVInt(in)) || tag != this.tag) {
+					value = new String(bytes, 0, length, UTF8);
+				}
+				break;
+			}
+			default:
+				throw new IOException("Unknown number encoding " + tag);
+			}
+			this.tag = tag;
+			return value;
+		}
+
+		ByteBuffer readBinary(DataInput in) throws IOException {
+			int length = WritableUtils.readVInt(in);
+			if (length == COMPRESSED) {
+				return ByteBuffer.wrap(WritableUtils.readCompressedByteArray(in));
+			}
+
+			// binaries are read in place, unchanged values are not detected
+			if (bytes.length < length) {
+				bytes = new byte[Math.max(length, bytes.length * 2)];
+				buffer = ByteBuffer.wrap(bytes);
+			}
+			in.readFully(bytes, 0, length);
+			buffer.clear();
+			buffer.limit(length);
+			return buffer;
+		}
+
+		/**
+		 * Reads length bytes, keeping the bytes of the previous read for
+		 * comparison.
+		 * 
+		 * @return true if the bytes differ from the previous read
+		 */
+		private boolean readBytes(DataInput in, int length) throws IOException {
+			if (next.length < length) {
+				next = new byte[Math.max(length, next.length * 2)];
+			}
+			in.readFully(next, 0, length);
+
+			boolean changed = length != this.length || null == value
+					|| !equals(next, bytes, length);
+			byte[] swap = bytes;
+			bytes = next;
+			next = swap;
+			this.length = length;
+			return changed;
+		}
+
+		private static boolean equals(byte[] b1, byte[] b2, int length) {
+			for (int i = 0; i < length; i++) {
+				if (b1[i] != b2[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	public static void writeVersion(DataOutput out) throws IOException {
+		out.writeByte(VERSION_FLAG | VERSION);
+	}
+
+	/**
+	 * Reads the version written by {@link #writeVersion(DataOutput)}.
+	 * 
+	 * @param in
+	 *            Input to read from
+	 * @return null if values in this encoding follow, or for values written
+	 *         by an earlier release without a version, an input positioned at
+	 *         their start to read them with {@link AttributeValueIOUtils}
+	 * @throws IOException
+	 *             The version is not supported
+	 */
+	public static DataInput readVersion(DataInput in) throws IOException {
+		int b = in.readUnsignedByte();
+		if ((b & ~VERSION_MASK) != VERSION_FLAG) {
+			// the first byte of a length or count written by a release
+			// before the codec existed
+			return new DataInputStream(new SequenceInputStream(
+					new ByteArrayInputStream(new byte[] { (byte) b }),
+					toInputStream(in)));
+		}
+
+		int version = b & VERSION_MASK;
+		if (version != VERSION) {
+			throw new IOException("Unsupported encoding version " + version);
+		}
+		return null;
+	}
+
+	private static InputStream toInputStream(final DataInput in) {
+		if (in instanceof InputStream) {
+			return (InputStream) in;
+		}
+		return new InputStream() {
+			@Override
+			public int read() throws IOException {
+				try {
+					return in.readUnsignedByte();
+				} catch (EOFException e) {
+					return -1;
+				}
+			}
+		};
+	}
+
+	public static AttributeValue read(Types type, DataInput in)
+			throws IOException {
+		AttributeValue value = new AttributeValue();
+		switch (type) {
+		case STRING:
+			value.withS(Text.readString(in));
+			break;
+		case NUMBER:
+			value.withN(readNumber(in));
+			break;
+		case BINARY:
+			value.withB(readBinary(in));
+			break;
+		case STRING_SET:
+		case NUMBER_SET: {
+			int size = WritableUtils.readVInt(in);
+			List<String> values = new ArrayList<String>(size);
+			for (int i = 0; i < size; i++) {
+				values.add(type == Types.STRING_SET
+						? Text.readString(in)
+						: readNumber(in));
+			}
+			if (type == Types.STRING_SET) {
+				value.withSS(values);
+			} else {
+				value.withNS(values);
+			}
+			break;
+		}
+		case BINARY_SET: {
+			int size = WritableUtils.readVInt(in);
+			List<ByteBuffer> values = new ArrayList<ByteBuffer>(size);
+			for (int i = 0; i < size; i++) {
+				values.add(readBinary(in));
+			}
+			value.withBS(values);
+			break;
+		}
+		}
+
+		return value;
+	}
+
+	public static void write(Types type, AttributeValue value, DataOutput out)
+			throws IOException {
+		switch (type) {
+		case STRING:
+			Text.writeString(out, value.getS());
+			break;
+		case NUMBER:
+			writeNumber(value.getN(), out);
+			break;
+		case BINARY:
+			writeBinary(value.getB(), out);
+			break;
+		case STRING_SET: {
+			List<String> values = value.getSS();
+			WritableUtils.writeVInt(out, values.size());
+			for (String s : values) {
+				Text.writeString(out, s);
+			}
+			break;
+		}
+		case NUMBER_SET: {
+			List<String> values = value.getNS();
+			WritableUtils.writeVInt(out, values.size());
+			for (String s : values) {
+				writeNumber(s, out);
+			}
+			break;
+		}
+		case BINARY_SET: {
+			List<ByteBuffer> values = value.getBS();
+			WritableUtils.writeVInt(out, values.size());
+			for (ByteBuffer buf : values) {
+				writeBinary(buf, out);
+			}
+		}
+		}
+	}
+
+	public static Collection<AttributeValue> readCollection(Types type,
+			DataInput in) throws IOException {
+		int size = WritableUtils.readVInt(in);
+		List<AttributeValue> list = new ArrayList<AttributeValue>(size);
+		for (int i = 0; i < size; i++) {
+			list.add(read(type, in));
+		}
+
+		return list;
+	}
+
+	public static void writeCollection(Types type,
+			Collection<AttributeValue> values, DataOutput out)
+			throws IOException {
+		WritableUtils.writeVInt(out, values.size());
+		for (AttributeValue value : values) {
+			write(type, value, out);
+		}
+	}
+
+	/**
+	 * Writes a number as a tag holding its scale and how the unscaled value
+	 * follows. Numbers that BigDecimal would not print back exactly as given,
+	 * such as "1e5" or "-0", are written as strings.
+	 */
+	static void writeNumber(String number, DataOutput out) throws IOException {
+		BigDecimal decimal = null;
+		try {
+			decimal = new BigDecimal(number);
+		} catch (NumberFormatException e) {
+			// written as is
+		}
+
+		if (null == decimal || !decimal.toString().equals(number)
+				|| Math.abs(decimal.scale()) >= (1 << 28)) {
+			WritableUtils.writeVInt(out, NUMBER_STRING);
+			Text.writeString(out, number);
+			return;
+		}
+
+		BigInteger unscaled = decimal.unscaledValue();
+		if (unscaled.bitLength() < 64) {
+			WritableUtils.writeVInt(out, (decimal.scale() << 2) | NUMBER_LONG);
+			WritableUtils.writeVLong(out, unscaled.longValue());
+		} else {
+			WritableUtils.writeVInt(out, (decimal.scale() << 2) | NUMBER_BIG);
+			byte[] bytes = unscaled.toByteArray();
+			WritableUtils.writeVInt(out, bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	static String readNumber(DataInput in) throws IOException {
+		int tag = WritableUtils.readVInt(in);
+		int scale = tag >> 2;
+		switch (tag & 3) {
+		case NUMBER_LONG:
+			return BigDecimal.valueOf(WritableUtils.readVLong(in), scale)
+					.toString();
+		case NUMBER_BIG: {
+			byte[] bytes = new byte[WritableUtils.readVInt(in)];
+			in.readFully(bytes);
+			return new BigDecimal(new BigInteger(bytes), scale).toString();
+		}
+		case NUMBER_STRING:
+			return Text.readString(in);
+		default:
+			throw new IOException("Unknown number encoding " + tag);
+		}
+	}
+
+	static void writeBinary(ByteBuffer buf, DataOutput out) throws IOException {
+		int length = buf.remaining();
+		if (length > COMPRESS_THRESHOLD) {
+			DataOutputBuffer compressed = new DataOutputBuffer();
+			WritableUtils.writeCompressedByteArray(
+					compressed,
+					AttributeValueIOUtils.toByteArray(buf));
+			if (compressed.getLength() < length) {
+				WritableUtils.writeVInt(out, COMPRESSED);
+				out.write(compressed.getData(), 0, compressed.getLength());
+				return;
+			}
+		}
+
+		WritableUtils.writeVInt(out, length);
+		AttributeValueIOUtils.writeBytes(buf, out);
+	}
+
+	static ByteBuffer readBinary(DataInput in) throws IOException {
+		int length = WritableUtils.readVInt(in);
+		if (length == COMPRESSED) {
+			return ByteBuffer.wrap(WritableUtils.readCompressedByteArray(in));
+		}
+
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return ByteBuffer.wrap(bytes);
+	}
+
+}
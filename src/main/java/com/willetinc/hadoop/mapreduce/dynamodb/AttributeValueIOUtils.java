@@ -22,16 +22,22 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.WritableUtils;
 
 import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.Key;
 
 public class AttributeValueIOUtils {
 
+	/** Size of the chunks direct buffers are copied out in */
+	private static final int COPY_BUFFER_SIZE = 8192;
+
 	public static AttributeValue read(Types type, DataInput in)
 			throws IOException {
 		AttributeValue value = new AttributeValue();
@@ -46,28 +52,29 @@ public class AttributeValueIOUtils {
 			byte[] bytes = WritableUtils.readCompressedByteArray(in);
 			ByteBuffer buf = ByteBuffer.wrap(bytes);
 			value.withB(buf);
+			break;
 		case STRING_SET:
-		case NUMBER_SET:
+		case NUMBER_SET: {
+			int size = in.readInt();
+			List<String> values = new ArrayList<String>(size);
+			for (int i = 0; i < size; i++) {
+				values.add(Text.readString(in));
+			}
+			if (type == Types.STRING_SET) {
+				value.withSS(values);
+			} else {
+				value.withNS(values);
+			}
+			break;
+		}
 		case BINARY_SET: {
-			// handle sets
 			int size = in.readInt();
-			List<AttributeValue> values = new ArrayList<AttributeValue>(size);
+			List<ByteBuffer> values = new ArrayList<ByteBuffer>(size);
 			for (int i = 0; i < size; i++) {
-				switch (type) {
-				case STRING_SET:
-					values.add(read(Types.STRING, in));
-					break;
-				case NUMBER_SET:
-					values.add(read(Types.NUMBER, in));
-					break;
-				case BINARY_SET:
-					values.add(read(Types.BINARY, in));
-					break;
-				default:
-					throw new IOException(
-							"Nested sets of sets are not permitted");
-				}
+				values.add(ByteBuffer.wrap(WritableUtils
+						.readCompressedByteArray(in)));
 			}
+			value.withBS(values);
 			break;
 		}
 		}
@@ -85,7 +92,7 @@ public class AttributeValueIOUtils {
 			Text.writeString(out, value.getN());
 			break;
 		case BINARY: {
-			WritableUtils.writeCompressedByteArray(out, value.getB().array());
+			WritableUtils.writeCompressedByteArray(out, toByteArray(value.getB()));
 			break;
 		}
 		case STRING_SET: {
@@ -108,7 +115,7 @@ public class AttributeValueIOUtils {
 			List<ByteBuffer> values = value.getBS();
 			out.writeInt(values.size());
 			for (ByteBuffer buf : values) {
-				WritableUtils.writeCompressedByteArray(out, buf.array());
+				WritableUtils.writeCompressedByteArray(out, toByteArray(buf));
 			}
 		}
 		}
@@ -135,6 +142,87 @@ public class AttributeValueIOUtils {
 		}
 	}
 
+	/**
+	 * Writes an item as its number of attributes followed by the name, type
+	 * and value of every attribute.
+	 * 
+	 * @param item
+	 *            Item to write
+	 * @param out
+	 *            Output to write to
+	 */
+	public static void writeItem(Map<String, AttributeValue> item,
+			DataOutput out) throws IOException {
+		out.writeInt(item.size());
+		for (Map.Entry<String, AttributeValue> entry : item.entrySet()) {
+			Types type = typeOf(entry.getValue());
+			Text.writeString(out, entry.getKey());
+			out.writeInt(type.ordinal());
+			write(type, entry.getValue(), out);
+		}
+	}
+
+	/**
+	 * @param in
+	 *            Input written by {@link #writeItem(Map, DataOutput)}
+	 * @return Item read
+	 */
+	public static Map<String, AttributeValue> readItem(DataInput in)
+			throws IOException {
+		int size = in.readInt();
+		Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+		for (int i = 0; i < size; i++) {
+			String name = Text.readString(in);
+			Types type = Types.values()[in.readInt()];
+			item.put(name, read(type, in));
+		}
+		return item;
+	}
+
+	/**
+	 * Writes the elements of a primary key, each preceded by its type. A
+	 * missing element is written as a single false.
+	 * 
+	 * @param key
+	 *            Key to write
+	 * @param out
+	 *            Output to write to
+	 */
+	public static void writeKey(Key key, DataOutput out) throws IOException {
+		writeKeyElement(key.getHashKeyElement(), out);
+		writeKeyElement(key.getRangeKeyElement(), out);
+	}
+
+	/**
+	 * @param in
+	 *            Input written by {@link #writeKey(Key, DataOutput)}
+	 * @return Key read
+	 */
+	public static Key readKey(DataInput in) throws IOException {
+		AttributeValue hashKey = readKeyElement(in);
+		AttributeValue rangeKey = readKeyElement(in);
+		return new Key(hashKey, rangeKey);
+	}
+
+	private static AttributeValue readKeyElement(DataInput in)
+			throws IOException {
+		if (!in.readBoolean()) {
+			return null;
+		}
+		Types type = Types.values()[in.readInt()];
+		return read(type, in);
+	}
+
+	private static void writeKeyElement(AttributeValue value, DataOutput out)
+			throws IOException {
+		out.writeBoolean(null != value);
+		if (null != value) {
+			Types type = typeOf(value);
+			out.writeInt(type.ordinal());
+			write(type, value, out);
+		}
+	}
+
 	/**
 	 * <p>
 	 * Creates a string representation of the specified AttributeValue.
@@ -161,7 +249,7 @@ public class AttributeValueIOUtils {
 			return value.getN();
 		case BINARY:
 			ByteBuffer buf = value.getB();
-			return Base64.encodeBase64String(buf.array());
+			return Base64.encodeBase64String(toByteArray(buf));
 
 		default:
 			throw new IllegalArgumentException(
@@ -203,4 +291,198 @@ public class AttributeValueIOUtils {
 		}
 	}
 
+	/**
+	 * @param value
+	 *            Value of an attribute
+	 * @return Type of the value
+	 */
+	public static Types typeOf(AttributeValue value) {
+		if (null != value.getS())
+			return Types.STRING;
+		if (null != value.getN())
+			return Types.NUMBER;
+		if (null != value.getB())
+			return Types.BINARY;
+		if (null != value.getSS())
+			return Types.STRING_SET;
+		if (null != value.getNS())
+			return Types.NUMBER_SET;
+		if (null != value.getBS())
+			return Types.BINARY_SET;
+
+		throw new IllegalArgumentException("AttributeValue has no value");
+	}
+
+	/**
+	 * Copies an attribute value so that it shares no mutable state, such as
+	 * lists or buffers, with the original.
+	 * 
+	 * @param value
+	 *            Value to copy, may be null
+	 * @return Copy of value, null if value is null
+	 */
+	public static AttributeValue copyOf(AttributeValue value) {
+		if (null == value)
+			return null;
+
+		AttributeValue copy = new AttributeValue();
+		copy.setS(value.getS());
+		copy.setN(value.getN());
+		if (null != value.getB())
+			copy.setB(ByteBuffer.wrap(copyBytes(value.getB())));
+		if (null != value.getSS())
+			copy.setSS(new ArrayList<String>(value.getSS()));
+		if (null != value.getNS())
+			copy.setNS(new ArrayList<String>(value.getNS()));
+		if (null != value.getBS()) {
+			List<ByteBuffer> buffers = new ArrayList<ByteBuffer>(value
+					.getBS().size());
+			for (ByteBuffer buf : value.getBS()) {
+				buffers.add(ByteBuffer.wrap(copyBytes(buf)));
+			}
+			copy.setBS(buffers);
+		}
+		return copy;
+	}
+
+	/**
+	 * @param item
+	 *            Item to copy
+	 * @return Item holding a copy of every value of item
+	 */
+	public static Map<String, AttributeValue> copyOf(
+			Map<String, AttributeValue> item) {
+		Map<String, AttributeValue> copy = new HashMap<String, AttributeValue>();
+		for (Map.Entry<String, AttributeValue> entry : item.entrySet()) {
+			copy.put(entry.getKey(), copyOf(entry.getValue()));
+		}
+		return copy;
+	}
+
+	private static byte[] copyBytes(ByteBuffer buf) {
+		byte[] bytes = new byte[buf.remaining()];
+		buf.duplicate().get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Returns the bytes between the position and the limit of a buffer. The
+	 * backing array is returned as is when it holds exactly those bytes,
+	 * otherwise they are copied. The position of the buffer is not changed.
+	 * 
+	 * @param buf
+	 *            Buffer of a binary value, heap, direct or read-only
+	 * @return Remaining bytes of buf
+	 */
+	public static byte[] toByteArray(ByteBuffer buf) {
+		if (buf.hasArray() && buf.arrayOffset() == 0 && buf.position() == 0
+				&& buf.remaining() == buf.array().length) {
+			return buf.array();
+		}
+
+		return copyBytes(buf);
+	}
+
+	/**
+	 * Writes the bytes between the position and the limit of a buffer
+	 * without copying heap buffers. The position of the buffer is not
+	 * changed.
+	 * 
+	 * @param buf
+	 *            Buffer to write
+	 * @param out
+	 *            Output to write to
+	 */
+	public static void writeBytes(ByteBuffer buf, DataOutput out)
+			throws IOException {
+		if (buf.hasArray()) {
+			out.write(
+					buf.array(),
+					buf.arrayOffset() + buf.position(),
+					buf.remaining());
+			return;
+		}
+
+		// direct and read-only buffers are copied out in chunks
+		ByteBuffer src = buf.duplicate();
+		byte[] chunk = new byte[Math.min(src.remaining(), COPY_BUFFER_SIZE)];
+		while (src.hasRemaining()) {
+			int length = Math.min(src.remaining(), chunk.length);
+			src.get(chunk, 0, length);
+			out.write(chunk, 0, length);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Computes the approximate size of an item the way DynamoDB accounts for
+	 * it: the UTF-8 length of every attribute name plus the size of its value.
+	 * </p>
+	 * 
+	 * @param item
+	 *            Item to measure
+	 * @return Size of the item in bytes
+	 */
+	public static long sizeOf(Map<String, AttributeValue> item) {
+		long size = 0;
+		for (Map.Entry<String, AttributeValue> entry : item.entrySet()) {
+			size += utf8Length(entry.getKey());
+			size += sizeOf(entry.getValue());
+		}
+		return size;
+	}
+
+	/**
+	 * @param value
+	 *            Value to measure
+	 * @return Size of the value in bytes, 0 if value is null
+	 */
+	public static long sizeOf(AttributeValue value) {
+		if (null == value)
+			return 0;
+
+		long size = 0;
+		if (null != value.getS())
+			size += utf8Length(value.getS());
+		if (null != value.getN())
+			size += value.getN().length();
+		if (null != value.getB())
+			size += value.getB().remaining();
+		if (null != value.getSS()) {
+			for (String s : value.getSS()) {
+				size += utf8Length(s);
+			}
+		}
+		if (null != value.getNS()) {
+			for (String s : value.getNS()) {
+				size += s.length();
+			}
+		}
+		if (null != value.getBS()) {
+			for (ByteBuffer buf : value.getBS()) {
+				size += buf.remaining();
+			}
+		}
+		return size;
+	}
+
+	private static int utf8Length(String s) {
+		int length = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				length += 1;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c)) {
+				// surrogate pairs encode to 4 bytes
+				length += 4;
+				i++;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
 }
@@ -81,6 +81,18 @@ public class BigDecimalSplitter extends AbstractSplitter {
 		}
 	}
 
+	/**
+	 * @return Position of value within [minVal, maxVal] between 0 and 1
+	 */
+	static float fraction(BigDecimal minVal, BigDecimal maxVal, BigDecimal value) {
+		BigDecimal range = maxVal.subtract(minVal);
+		if (range.signum() <= 0) {
+			return -1;
+		}
+		float fraction = value.subtract(minVal).floatValue() / range.floatValue();
+		return Math.min(1.0f, Math.max(0.0f, fraction));
+	}
+
 	private static final BigDecimal MIN_INCREMENT = new BigDecimal(
 			10000 * Double.MIN_VALUE);
 
@@ -69,8 +69,10 @@ public class BinarySplitter extends BigDecimalSplitter {
 			AttributeValue maxRangeKeyValue,
 			int numRangeSplits) {
 
-		byte[] minBytes = minRangeKeyValue.getB().array();
-		byte[] maxBytes = maxRangeKeyValue.getB().array();
+		byte[] minBytes =
+				AttributeValueIOUtils.toByteArray(minRangeKeyValue.getB());
+		byte[] maxBytes =
+				AttributeValueIOUtils.toByteArray(maxRangeKeyValue.getB());
 
 		// If there is a common prefix between minString and maxString,
 		// establish it
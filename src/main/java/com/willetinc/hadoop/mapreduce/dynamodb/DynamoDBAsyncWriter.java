@@ -0,0 +1,262 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.Key;
+
+/**
+ * <p>
+ * Hands puts and deletes to a pool of sender threads so the caller keeps
+ * running while requests are in flight.
+ * </p>
+ * 
+ * <p>
+ * Every sender thread owns a bounded queue and a writer created by the
+ * {@link WriterFactory}. Requests are assigned to a sender by the hash of
+ * their key, so requests for the same key are written in the order they
+ * were made. {@link #put(Key, Map)} and {@link #delete(Key)} block while the
+ * sender's queue is full.
+ * </p>
+ * 
+ * <p>
+ * The first error of any sender, including interrupts and Errors, is
+ * rethrown by the next put, delete, flush or close. Once a sender failed,
+ * senders keep draining their queues and discard the requests in them.
+ * </p>
+ */
+public class DynamoDBAsyncWriter implements DynamoDBWriter {
+
+	private static final Log LOG = LogFactory.getLog(DynamoDBAsyncWriter.class);
+
+	/**
+	 * Creates the writer used by a sender thread.
+	 */
+	public interface WriterFactory {
+
+		DynamoDBWriter createWriter();
+
+	}
+
+	private static class Op {
+
+		final Key key;
+
+		final Map<String, AttributeValue> item;
+
+		final CountDownLatch flushed;
+
+		final boolean stop;
+
+		Op(Key key, Map<String, AttributeValue> item, CountDownLatch flushed,
+				boolean stop) {
+			this.key = key;
+			this.item = item;
+			this.flushed = flushed;
+			this.stop = stop;
+		}
+	}
+
+	private class Sender implements Runnable {
+
+		private final BlockingQueue<Op> queue;
+
+		private final DynamoDBWriter writer;
+
+		private final long idleFlushInterval;
+
+		Sender(BlockingQueue<Op> queue, DynamoDBWriter writer,
+				long idleFlushInterval) {
+			this.queue = queue;
+			this.writer = writer;
+			this.idleFlushInterval = idleFlushInterval;
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				Op op;
+				try {
+					op = (idleFlushInterval > 0) ? queue.poll(
+							idleFlushInterval,
+							TimeUnit.MILLISECONDS) : queue.take();
+				} catch (InterruptedException e) {
+					// keep draining, callers may be blocked on the queue
+					setError(e);
+					continue;
+				}
+				if (op == null) {
+					// nothing arrived in time, write the partial batch
+					send(null);
+				} else if (send(op)) {
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Sends an op unless a sender failed. Any failure is recorded, so
+		 * that the queue is still drained and waiting callers are released.
+		 * 
+		 * @return true if the sender should stop
+		 */
+		private boolean send(Op op) {
+			try {
+				if (error == null) {
+					if (op == null) {
+						writer.flush();
+					} else if (op.stop) {
+						writer.close();
+					} else if (op.flushed != null) {
+						writer.flush();
+					} else if (op.item != null) {
+						writer.put(op.key, op.item);
+					} else {
+						writer.delete(op.key);
+					}
+				}
+			} catch (Throwable e) {
+				setError(e);
+			} finally {
+				if (op != null && op.flushed != null) {
+					op.flushed.countDown();
+				}
+			}
+			return op != null && op.stop;
+		}
+	}
+
+	private final List<BlockingQueue<Op>> queues = new ArrayList<BlockingQueue<Op>>();
+
+	private final List<Thread> threads = new ArrayList<Thread>();
+
+	private volatile Throwable error;
+
+	private boolean closed = false;
+
+	/**
+	 * @param factory
+	 *            Creates the writer of each sender thread
+	 * @param numThreads
+	 *            Number of sender threads
+	 * @param queueSize
+	 *            Number of requests that may be queued across all senders
+	 * @param idleFlushInterval
+	 *            Milliseconds a sender waits for more requests before it
+	 *            writes a partial batch, 0 or less to wait for a full batch
+	 * @param name
+	 *            Prefix of the sender thread names
+	 */
+	public DynamoDBAsyncWriter(
+			WriterFactory factory,
+			int numThreads,
+			int queueSize,
+			long idleFlushInterval,
+			String name) {
+		numThreads = Math.max(1, numThreads);
+		int capacity = Math.max(1, queueSize / numThreads);
+		for (int i = 0; i < numThreads; i++) {
+			BlockingQueue<Op> queue = new ArrayBlockingQueue<Op>(capacity);
+			Thread thread = new Thread(new Sender(
+					queue,
+					factory.createWriter(),
+					idleFlushInterval), name + " " + i);
+			thread.setDaemon(true);
+			queues.add(queue);
+			threads.add(thread);
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+	}
+
+	@Override
+	public void put(Key key, Map<String, AttributeValue> item)
+			throws IOException,
+			InterruptedException {
+		enqueue(key, new Op(key, item, null, false));
+	}
+
+	@Override
+	public void delete(Key key) throws IOException, InterruptedException {
+		enqueue(key, new Op(key, null, null, false));
+	}
+
+	private void enqueue(Key key, Op op) throws IOException,
+			InterruptedException {
+		checkError();
+		if (closed) {
+			throw new IOException("Writer is closed");
+		}
+		int index = (key.hashCode() & Integer.MAX_VALUE) % queues.size();
+		queues.get(index).put(op);
+	}
+
+	@Override
+	public void flush() throws IOException, InterruptedException {
+		checkError();
+		CountDownLatch flushed = new CountDownLatch(queues.size());
+		for (BlockingQueue<Op> queue : queues) {
+			queue.put(new Op(null, null, flushed, false));
+		}
+		flushed.await();
+		checkError();
+	}
+
+	@Override
+	public void close() throws IOException, InterruptedException {
+		if (!closed) {
+			closed = true;
+			for (BlockingQueue<Op> queue : queues) {
+				queue.put(new Op(null, null, null, true));
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		}
+		checkError();
+	}
+
+	private synchronized void setError(Throwable e) {
+		if (error == null) {
+			LOG.error("Asynchronous write failed", e);
+			error = e;
+		}
+	}
+
+	private void checkError() throws IOException {
+		Throwable e = error;
+		if (e != null) {
+			if (e instanceof IOException) {
+				throw (IOException) e;
+			}
+			throw new IOException("Asynchronous write failed", e);
+		}
+	}
+}
@@ -0,0 +1,377 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.amazonaws.services.dynamodb.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodb.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodb.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodb.model.DeleteItemResult;
+import com.amazonaws.services.dynamodb.model.DeleteRequest;
+import com.amazonaws.services.dynamodb.model.Key;
+import com.amazonaws.services.dynamodb.model.PutItemRequest;
+import com.amazonaws.services.dynamodb.model.PutItemResult;
+import com.amazonaws.services.dynamodb.model.PutRequest;
+import com.amazonaws.services.dynamodb.model.WriteRequest;
+
+/**
+ * <p>
+ * Buffers puts and deletes of a table and writes them with BatchWriteItem.
+ * </p>
+ * 
+ * <p>
+ * A batch is written once it holds batchSize requests, when the oldest
+ * buffered request is older than the flush interval, or on
+ * {@link #flush()}. The flush interval is checked as requests are added. A
+ * batch may not address the same key twice, so the buffer is flushed before
+ * a key that it already holds is added again. It is also flushed before a
+ * request that would take the items of a batch over 1 MB.
+ * </p>
+ * 
+ * <p>
+ * Items larger than DynamoDB's 64 KB item limit are never sent. They are
+ * passed to the reject handler if one is set and fail the writer otherwise.
+ * Sizes are computed by {@link AttributeValueIOUtils#sizeOf(Map)}.
+ * </p>
+ * 
+ * <p>
+ * Items DynamoDB returns as UnprocessedItems are resubmitted after a backoff
+ * until all of them are written. Resubmissions wait for the throughput
+ * limiter like any other request and do not count as throttled requests. The
+ * writer fails once the retry policy's throttle attempts pass without a single
+ * item being processed. With a batch size of 1 every request is sent with
+ * PutItem or DeleteItem instead.
+ * </p>
+ * 
+ * <p>
+ * With a throughput limiter every request waits for capacity and is then
+ * debited with the write capacity DynamoDB reports as consumed.
+ * </p>
+ */
+public class DynamoDBBatchWriter implements DynamoDBWriter {
+
+	private static final Log LOG = LogFactory.getLog(DynamoDBBatchWriter.class);
+
+	/** Maximum number of requests DynamoDB accepts in one BatchWriteItem */
+	public static final int MAX_BATCH_SIZE = 25;
+
+	/** Maximum size of the items in one BatchWriteItem */
+	public static final long MAX_BATCH_BYTES = 1024 * 1024;
+
+	/** Maximum size of an item */
+	public static final long MAX_ITEM_BYTES = 64 * 1024;
+
+	private final AmazonDynamoDBClient client;
+
+	private final String tableName;
+
+	private final int batchSize;
+
+	private final long flushInterval;
+
+	private final DynamoDBRetryPolicy retryPolicy;
+
+	private final List<WriteRequest> buffer = new ArrayList<WriteRequest>();
+
+	private final Set<Key> bufferedKeys = new HashSet<Key>();
+
+	private long bufferedBytes;
+
+	private long firstBufferedTime;
+
+	private DynamoDBThroughputLimiter limiter;
+
+	private DynamoDBRejectHandler rejectHandler;
+
+	/**
+	 * @param client
+	 *            Client used to write
+	 * @param tableName
+	 *            Table written to
+	 * @param batchSize
+	 *            Number of requests per BatchWriteItem, at most 25
+	 * @param flushInterval
+	 *            Milliseconds a request may stay buffered, 0 or less to only
+	 *            write full batches
+	 * @param retryPolicy
+	 *            Policy retrying failed writes
+	 */
+	public DynamoDBBatchWriter(
+			AmazonDynamoDBClient client,
+			String tableName,
+			int batchSize,
+			long flushInterval,
+			DynamoDBRetryPolicy retryPolicy) {
+		this.client = client;
+		this.tableName = tableName;
+		this.batchSize = Math.max(1, Math.min(MAX_BATCH_SIZE, batchSize));
+		this.flushInterval = flushInterval;
+		this.retryPolicy = retryPolicy;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public DynamoDBThroughputLimiter getThroughputLimiter() {
+		return limiter;
+	}
+
+	/**
+	 * Paces writes against a share of the table's provisioned write
+	 * capacity. The limiter may be shared by several writers.
+	 * 
+	 * @param limiter
+	 *            Limiter debited with the consumed capacity of every write
+	 */
+	public void setThroughputLimiter(DynamoDBThroughputLimiter limiter) {
+		this.limiter = limiter;
+	}
+
+	public DynamoDBRejectHandler getRejectHandler() {
+		return rejectHandler;
+	}
+
+	/**
+	 * @param rejectHandler
+	 *            Handler of items too large to write, or null to fail on
+	 *            such items
+	 */
+	public void setRejectHandler(DynamoDBRejectHandler rejectHandler) {
+		this.rejectHandler = rejectHandler;
+	}
+
+	/**
+	 * Buffers a put of an item.
+	 * 
+	 * @param key
+	 *            Primary key of the item
+	 * @param item
+	 *            Item to put
+	 */
+	@Override
+	public void put(Key key, Map<String, AttributeValue> item)
+			throws IOException,
+			InterruptedException {
+		long size = AttributeValueIOUtils.sizeOf(item);
+		if (size > MAX_ITEM_BYTES) {
+			reject(key, item, size);
+			return;
+		}
+		add(key, new WriteRequest().withPutRequest(new PutRequest()
+				.withItem(item)), size);
+	}
+
+	/**
+	 * Buffers a delete of an item.
+	 * 
+	 * @param key
+	 *            Primary key of the item to delete
+	 */
+	@Override
+	public void delete(Key key) throws IOException, InterruptedException {
+		long size = AttributeValueIOUtils.sizeOf(key.getHashKeyElement())
+				+ AttributeValueIOUtils.sizeOf(key.getRangeKeyElement());
+		add(key, new WriteRequest().withDeleteRequest(new DeleteRequest()
+				.withKey(key)), size);
+	}
+
+	private void add(Key key, WriteRequest request, long size)
+			throws IOException,
+			InterruptedException {
+		if (bufferedKeys.contains(key)
+				|| bufferedBytes + size > MAX_BATCH_BYTES) {
+			flush();
+		}
+
+		if (buffer.isEmpty()) {
+			firstBufferedTime = currentTimeMillis();
+		}
+		buffer.add(request);
+		bufferedKeys.add(key);
+		bufferedBytes += size;
+
+		if (buffer.size() >= batchSize
+				|| (flushInterval > 0 && currentTimeMillis()
+						- firstBufferedTime >= flushInterval)) {
+			flush();
+		}
+	}
+
+	/**
+	 * Writes all buffered requests.
+	 */
+	@Override
+	public void flush() throws IOException, InterruptedException {
+		if (buffer.isEmpty()) {
+			return;
+		}
+
+		List<WriteRequest> batch = new ArrayList<WriteRequest>(buffer);
+		buffer.clear();
+		bufferedKeys.clear();
+		bufferedBytes = 0;
+
+		if (batchSize == 1) {
+			for (WriteRequest request : batch) {
+				writeItem(request);
+			}
+		} else {
+			writeBatch(batch);
+		}
+	}
+
+	/**
+	 * Flushes the buffer.
+	 */
+	@Override
+	public void close() throws IOException, InterruptedException {
+		flush();
+	}
+
+	private void reject(Key key, Map<String, AttributeValue> item, long size)
+			throws IOException {
+		retryPolicy.getCounters().increment(DynamoDBCounter.REJECTED_ITEMS, 1);
+		if (null == rejectHandler) {
+			throw new IOException("Item " + key + " of " + size
+					+ " bytes exceeds the maximum item size of "
+					+ MAX_ITEM_BYTES + " bytes");
+		}
+		rejectHandler.reject(key, item, size);
+	}
+
+	private void writeItem(WriteRequest request) throws InterruptedException {
+		acquire();
+		if (request.getPutRequest() != null) {
+			final PutItemRequest putItemRequest = new PutItemRequest()
+					.withTableName(tableName)
+					.withItem(request.getPutRequest().getItem());
+			retryPolicy.execute(new DynamoDBRetryPolicy.Request<PutItemResult>() {
+				@Override
+				public PutItemResult execute() {
+					PutItemResult result = client.putItem(putItemRequest);
+					consume(result.getConsumedCapacityUnits());
+					return result;
+				}
+			});
+		} else {
+			final DeleteItemRequest deleteItemRequest = new DeleteItemRequest()
+					.withTableName(tableName)
+					.withKey(request.getDeleteRequest().getKey());
+			retryPolicy.execute(new DynamoDBRetryPolicy.Request<DeleteItemResult>() {
+				@Override
+				public DeleteItemResult execute() {
+					DeleteItemResult result = client.deleteItem(deleteItemRequest);
+					consume(result.getConsumedCapacityUnits());
+					return result;
+				}
+			});
+		}
+	}
+
+	private void writeBatch(List<WriteRequest> batch)
+			throws IOException,
+			InterruptedException {
+		List<WriteRequest> pending = batch;
+		long delay = 0;
+		int attempts = 0;
+		while (true) {
+			acquire();
+			final Map<String, List<WriteRequest>> requestItems = new HashMap<String, List<WriteRequest>>();
+			requestItems.put(tableName, pending);
+			BatchWriteItemResult result = retryPolicy
+					.execute(new DynamoDBRetryPolicy.Request<BatchWriteItemResult>() {
+						@Override
+						public BatchWriteItemResult execute() {
+							BatchWriteItemResult response = client
+									.batchWriteItem(new BatchWriteItemRequest()
+											.withRequestItems(requestItems));
+							if (response.getResponses() != null
+									&& response.getResponses().get(tableName) != null) {
+								consume(response.getResponses().get(tableName)
+										.getConsumedCapacityUnits());
+							}
+							return response;
+						}
+					});
+
+			List<WriteRequest> unprocessed = getUnprocessedItems(result);
+			if (unprocessed.isEmpty()) {
+				return;
+			}
+
+			if (LOG.isDebugEnabled()) {
+				LOG.debug(String.format(
+						"%d of %d items unprocessed",
+						unprocessed.size(), pending.size()));
+			}
+			retryPolicy.getCounters().increment(
+					DynamoDBCounter.UNPROCESSED_ITEMS,
+					unprocessed.size());
+
+			// only fail when DynamoDB stops accepting any of the items
+			if (unprocessed.size() < pending.size()) {
+				attempts = 0;
+				delay = 0;
+			} else if (++attempts >= retryPolicy.getThrottleAttempts()) {
+				throw new IOException(unprocessed.size()
+						+ " items still unprocessed after " + attempts
+						+ " attempts");
+			}
+
+			delay = retryPolicy.backoff(delay);
+			pending = unprocessed;
+		}
+	}
+
+	private void acquire() throws InterruptedException {
+		if (limiter != null) {
+			limiter.acquire();
+		}
+	}
+
+	private void consume(Double consumedCapacityUnits) {
+		if (limiter != null && consumedCapacityUnits != null) {
+			limiter.consume(consumedCapacityUnits);
+		}
+	}
+
+	private List<WriteRequest> getUnprocessedItems(BatchWriteItemResult result) {
+		Map<String, List<WriteRequest>> unprocessedItems = result
+				.getUnprocessedItems();
+		if (unprocessedItems == null || unprocessedItems.get(tableName) == null) {
+			return new ArrayList<WriteRequest>();
+		}
+		return unprocessedItems.get(tableName);
+	}
+
+	protected long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+}
@@ -0,0 +1,261 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+
+import com.amazonaws.services.dynamodb.model.Key;
+
+/**
+ * <p>
+ * Persists the position of a record reader within its split so a later
+ * attempt of the same split can resume where the previous one stopped.
+ * </p>
+ * 
+ * <p>
+ * A checkpoint holds the number of records read and the exclusive start key
+ * of the next page. It is written to a temporary file of the attempt, the
+ * previous checkpoint is removed and the temporary file is renamed in its
+ * place. A task failing while writing leaves the previous checkpoint in
+ * place. A task failing between the removal and the rename leaves no
+ * checkpoint, so {@link #load()} then reads the newest complete temporary
+ * file of the split.
+ * </p>
+ * 
+ * <p>
+ * Checkpoints require map speculative execution to be disabled. Otherwise
+ * a new attempt could resume from the position of an attempt that is still
+ * running, and the records it skips would only be read by an attempt that
+ * may be killed. {@link #create(Configuration, TaskAttemptID)} returns no
+ * store while map speculative execution is enabled.
+ * </p>
+ */
+public class DynamoDBCheckpointStore {
+
+	private static final Log LOG = LogFactory
+			.getLog(DynamoDBCheckpointStore.class);
+
+	private static final int VERSION = 1;
+
+	private static final String SPECULATIVE_EXECUTION_PROPERTY = "mapred.map.tasks.speculative.execution";
+
+	private static final String TMP_SUFFIX = ".tmp";
+
+	/**
+	 * Position of a record reader.
+	 */
+	public static class Checkpoint {
+
+		private final long pos;
+
+		private final Key lastKey;
+
+		public Checkpoint(long pos, Key lastKey) {
+			this.pos = pos;
+			this.lastKey = lastKey;
+		}
+
+		/**
+		 * @return Number of records read before the checkpoint
+		 */
+		public long getPos() {
+			return pos;
+		}
+
+		/**
+		 * @return Exclusive start key of the next page
+		 */
+		public Key getLastKey() {
+			return lastKey;
+		}
+	}
+
+	private final FileSystem fs;
+
+	private final Path path;
+
+	private final Path tmp;
+
+	public DynamoDBCheckpointStore(FileSystem fs, Path path) {
+		this.fs = fs;
+		this.path = path;
+		this.tmp = path.suffix(TMP_SUFFIX);
+	}
+
+	/**
+	 * @param attempt
+	 *            Name of the attempt saving checkpoints, which names its
+	 *            temporary file
+	 */
+	public DynamoDBCheckpointStore(FileSystem fs, Path path, String attempt) {
+		this.fs = fs;
+		this.path = path;
+		this.tmp = path.suffix("." + attempt + TMP_SUFFIX);
+	}
+
+	/**
+	 * Creates the checkpoint store of the split read by a task.
+	 * 
+	 * @param conf
+	 *            Job configuration
+	 * @param taskAttemptId
+	 *            Attempt reading the split
+	 * @return Store or null if checkpoints are disabled or map speculative
+	 *         execution is enabled
+	 */
+	public static DynamoDBCheckpointStore create(
+			Configuration conf,
+			TaskAttemptID taskAttemptId) throws IOException {
+		String dir = new DynamoDBConfiguration(conf).getCheckpointDir();
+		if (null == dir || null == taskAttemptId) {
+			return null;
+		}
+		if (conf.getBoolean(SPECULATIVE_EXECUTION_PROPERTY, true)) {
+			LOG.warn("Checkpoints are disabled, they require "
+					+ SPECULATIVE_EXECUTION_PROPERTY + " to be false");
+			return null;
+		}
+
+		// all attempts of a map task read the same split
+		Path path = new Path(new Path(dir, taskAttemptId.getJobID().toString()),
+				"split-" + taskAttemptId.getTaskID().getId());
+		return new DynamoDBCheckpointStore(
+				path.getFileSystem(conf),
+				path,
+				taskAttemptId.toString());
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * @return Last saved checkpoint or null if there is none
+	 */
+	public Checkpoint load() throws IOException {
+		if (fs.exists(path)) {
+			return read(path);
+		}
+
+		// a save failed after removing the checkpoint, the newest temporary
+		// file that was written completely replaces it
+		FileStatus[] tmps = getTmpFiles();
+		if (null == tmps) {
+			return null;
+		}
+		Arrays.sort(tmps, new Comparator<FileStatus>() {
+			@Override
+			public int compare(FileStatus s1, FileStatus s2) {
+				long t1 = s1.getModificationTime();
+				long t2 = s2.getModificationTime();
+				return t1 > t2 ? -1 : (t1 < t2 ? 1 : 0);
+			}
+		});
+		for (FileStatus status : tmps) {
+			try {
+				Checkpoint checkpoint = read(status.getPath());
+				LOG.info("Recovered checkpoint from " + status.getPath());
+				return checkpoint;
+			} catch (IOException e) {
+				LOG.warn("Ignoring incomplete checkpoint " + status.getPath(), e);
+			}
+		}
+		return null;
+	}
+
+	private Checkpoint read(Path file) throws IOException {
+		FSDataInputStream in = fs.open(file);
+		try {
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported checkpoint version "
+						+ version + " in " + file);
+			}
+			long pos = in.readLong();
+			return new Checkpoint(pos, AttributeValueIOUtils.readKey(in));
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @return Temporary files of all attempts of the split, null if there are
+	 *         none
+	 */
+	private FileStatus[] getTmpFiles() throws IOException {
+		// the dot keeps split-1 from matching split-10
+		return fs.globStatus(new Path(
+				path.getParent(),
+				path.getName() + ".*" + TMP_SUFFIX));
+	}
+
+	/**
+	 * Replaces the current checkpoint.
+	 * 
+	 * @param checkpoint
+	 *            Position to save
+	 */
+	public void save(Checkpoint checkpoint) throws IOException {
+		FSDataOutputStream out = fs.create(tmp, true);
+		try {
+			out.writeInt(VERSION);
+			out.writeLong(checkpoint.getPos());
+			AttributeValueIOUtils.writeKey(checkpoint.getLastKey(), out);
+		} finally {
+			out.close();
+		}
+
+		if (fs.exists(path)) {
+			fs.delete(path, false);
+		}
+		if (!fs.rename(tmp, path)) {
+			throw new IOException("Failed to rename " + tmp + " to " + path);
+		}
+
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Saved checkpoint at record " + checkpoint.getPos()
+					+ " to " + path);
+		}
+	}
+
+	/**
+	 * Removes the checkpoint and any temporary files once the split has been
+	 * read completely.
+	 */
+	public void delete() throws IOException {
+		fs.delete(path, false);
+		FileStatus[] tmps = getTmpFiles();
+		if (null != tmps) {
+			for (FileStatus status : tmps) {
+				fs.delete(status.getPath(), false);
+			}
+		}
+	}
+
+}
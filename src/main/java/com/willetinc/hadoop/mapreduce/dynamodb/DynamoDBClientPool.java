@@ -0,0 +1,180 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+
+import com.amazonaws.services.dynamodb.AmazonDynamoDBClient;
+
+/**
+ * <p>
+ * Shares AmazonDynamoDBClients, and with them their HTTP connections,
+ * between the record readers and writers running in the same JVM.
+ * </p>
+ * 
+ * <p>
+ * Clients are keyed by endpoint, credentials and maximum number of
+ * connections, and reference counted. Every client returned by
+ * {@link #acquire(DynamoDBConfiguration)} must be handed back to
+ * {@link #release(AmazonDynamoDBClient)} instead of being shut down. A
+ * client nobody holds is kept for the configured idle timeout so the next
+ * task of a reused JVM finds its connections open, and is shut down by a
+ * later acquire or release once the timeout passed.
+ * </p>
+ */
+public class DynamoDBClientPool {
+
+	private static final Log LOG = LogFactory.getLog(DynamoDBClientPool.class);
+
+	private static final DynamoDBClientPool INSTANCE = new DynamoDBClientPool();
+
+	private static class Entry {
+
+		final AmazonDynamoDBClient client;
+
+		int references = 0;
+
+		long idleSince;
+
+		long idleTimeout;
+
+		Entry(AmazonDynamoDBClient client) {
+			this.client = client;
+		}
+	}
+
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	private final Map<AmazonDynamoDBClient, Entry> clients = new IdentityHashMap<AmazonDynamoDBClient, Entry>();
+
+	DynamoDBClientPool() {
+	}
+
+	public static DynamoDBClientPool getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @param dbConf
+	 *            Configuration holding the endpoint and credentials
+	 * @return Shared client, or a new client if pooling is disabled
+	 */
+	public synchronized AmazonDynamoDBClient acquire(DynamoDBConfiguration dbConf) {
+		Configuration conf = dbConf.getConf();
+		String accessKey = conf.get(DynamoDBConfiguration.ACCESS_KEY_PROPERTY);
+		String secretKey = conf.get(DynamoDBConfiguration.SECRET_KEY_PROPERTY);
+		String endpoint = conf.get(DynamoDBConfiguration.DYNAMODB_ENDPOINT);
+		int maxConnections = dbConf.getClientMaxConnections();
+
+		if (!dbConf.isClientPoolEnabled()) {
+			return createClient(accessKey, secretKey, endpoint, maxConnections);
+		}
+
+		long idleTimeout = dbConf.getClientIdleTimeout();
+		evictIdleClients();
+
+		String key = endpoint + "|" + maxConnections + "|" + accessKey + "|"
+				+ secretKey;
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			entry = new Entry(createClient(
+					accessKey,
+					secretKey,
+					endpoint,
+					maxConnections));
+			entries.put(key, entry);
+			clients.put(entry.client, entry);
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Created shared client for endpoint: " + endpoint);
+			}
+		}
+
+		entry.references++;
+		entry.idleTimeout = idleTimeout;
+		return entry.client;
+	}
+
+	/**
+	 * Returns a client obtained from {@link #acquire(DynamoDBConfiguration)}.
+	 * Clients that are not pooled are shut down.
+	 * 
+	 * @param client
+	 *            Client to release
+	 */
+	public void release(AmazonDynamoDBClient client) {
+		if (null == client) {
+			return;
+		}
+
+		synchronized (this) {
+			Entry entry = clients.get(client);
+			if (entry != null) {
+				if (entry.references > 0 && --entry.references == 0) {
+					entry.idleSince = currentTimeMillis();
+				}
+				evictIdleClients();
+				return;
+			}
+		}
+
+		client.shutdown();
+	}
+
+	/**
+	 * @return Number of clients currently pooled
+	 */
+	synchronized int size() {
+		return entries.size();
+	}
+
+	private void evictIdleClients() {
+		long now = currentTimeMillis();
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			Entry entry = iterator.next();
+			if (entry.references == 0
+					&& now - entry.idleSince >= entry.idleTimeout) {
+				iterator.remove();
+				clients.remove(entry.client);
+				entry.client.shutdown();
+			}
+		}
+	}
+
+	protected AmazonDynamoDBClient createClient(
+			String accessKey,
+			String secretKey,
+			String endpoint,
+			int maxConnections) {
+		return DynamoDBConfiguration.createAmazonDynamoDBClient(
+				accessKey,
+				secretKey,
+				endpoint,
+				maxConnections);
+	}
+
+	protected long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.Key;
+
+/**
+ * <p>
+ * Keeps only the latest put or delete of every key and passes them on to
+ * another writer. Writes replaced by a later write of the same key are never
+ * sent and are counted as {@link DynamoDBCounter#COALESCED_WRITES}.
+ * </p>
+ * 
+ * <p>
+ * Buffered writes are passed on, in the order their keys were first
+ * written, once maxSize keys are buffered, when the oldest buffered write
+ * is older than the window, or on {@link #flush()}. The window is checked as
+ * writes are added.
+ * </p>
+ */
+public class DynamoDBCoalescingWriter implements DynamoDBWriter {
+
+	private final DynamoDBWriter writer;
+
+	private final int maxSize;
+
+	private final long window;
+
+	private final DynamoDBCounters counters;
+
+	/** Latest item per key, null for a delete */
+	private final Map<Key, Map<String, AttributeValue>> buffer = new LinkedHashMap<Key, Map<String, AttributeValue>>();
+
+	private long firstBufferedTime;
+
+	/**
+	 * @param writer
+	 *            Writer the remaining writes are passed on to
+	 * @param maxSize
+	 *            Number of keys buffered before writes are passed on
+	 * @param window
+	 *            Milliseconds a write may stay buffered, 0 or less to only
+	 *            limit the number of keys
+	 * @param counters
+	 *            Counters incremented with coalesced writes
+	 */
+	public DynamoDBCoalescingWriter(
+			DynamoDBWriter writer,
+			int maxSize,
+			long window,
+			DynamoDBCounters counters) {
+		this.writer = writer;
+		this.maxSize = Math.max(1, maxSize);
+		this.window = window;
+		this.counters = counters;
+	}
+
+	@Override
+	public void put(Key key, Map<String, AttributeValue> item)
+			throws IOException,
+			InterruptedException {
+		add(key, item);
+	}
+
+	@Override
+	public void delete(Key key) throws IOException, InterruptedException {
+		add(key, null);
+	}
+
+	private void add(Key key, Map<String, AttributeValue> item)
+			throws IOException,
+			InterruptedException {
+		if (buffer.isEmpty()) {
+			firstBufferedTime = currentTimeMillis();
+		}
+		if (buffer.containsKey(key)) {
+			counters.increment(DynamoDBCounter.COALESCED_WRITES, 1);
+		}
+		buffer.put(key, item);
+
+		if (buffer.size() >= maxSize
+				|| (window > 0 && currentTimeMillis() - firstBufferedTime >= window)) {
+			drain();
+		}
+	}
+
+	private void drain() throws IOException, InterruptedException {
+		for (Map.Entry<Key, Map<String, AttributeValue>> entry : buffer
+				.entrySet()) {
+			if (null == entry.getValue()) {
+				writer.delete(entry.getKey());
+			} else {
+				writer.put(entry.getKey(), entry.getValue());
+			}
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Passes on all buffered writes and flushes the underlying writer.
+	 */
+	@Override
+	public void flush() throws IOException, InterruptedException {
+		drain();
+		writer.flush();
+	}
+
+	/**
+	 * Passes on all buffered writes and closes the underlying writer.
+	 */
+	@Override
+	public void close() throws IOException, InterruptedException {
+		try {
+			drain();
+		} finally {
+			writer.close();
+		}
+	}
+
+	protected long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+}
@@ -16,11 +16,23 @@
 
 package com.willetinc.hadoop.mapreduce.dynamodb;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.apache.hadoop.conf.Configuration;
 
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.services.dynamodb.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.ComparisonOperator;
+import com.amazonaws.services.dynamodb.model.Condition;
 import com.willetinc.hadoop.mapreduce.dynamodb.DynamoDBScanInputFormat.NullDynamoDBWritable;
 import com.willetinc.hadoop.mapreduce.dynamodb.io.DynamoDBKeyWritable;
 
@@ -54,6 +66,110 @@ public class DynamoDBConfiguration {
 	
 	public static final String RANGE_KEY_INTERPOLATE_MAX_VALUE_PROPERTY = "mapreduce.dynamodb.query.rangekey.interpolate.maxvalue";
 	
+	public static final String CLIENT_POOL_ENABLED_PROPERTY = "mapreduce.dynamodb.client.pool.enabled";
+	
+	public static final String CLIENT_MAX_CONNECTIONS_PROPERTY = "mapreduce.dynamodb.client.max.connections";
+	
+	public static final int DEFAULT_CLIENT_MAX_CONNECTIONS = ClientConfiguration.DEFAULT_MAX_CONNECTIONS;
+	
+	public static final String CLIENT_IDLE_TIMEOUT_PROPERTY = "mapreduce.dynamodb.client.idle.timeout";
+	
+	public static final long DEFAULT_CLIENT_IDLE_TIMEOUT = 60000;
+	
+	public static final String RETRY_BASE_DELAY_PROPERTY = "mapreduce.dynamodb.retry.delay.base";
+	
+	public static final long DEFAULT_RETRY_BASE_DELAY = 50;
+	
+	public static final String RETRY_MAX_DELAY_PROPERTY = "mapreduce.dynamodb.retry.delay.max";
+	
+	public static final long DEFAULT_RETRY_MAX_DELAY = 20000;
+	
+	public static final String RETRY_THROTTLE_ATTEMPTS_PROPERTY = "mapreduce.dynamodb.retry.throttle.attempts";
+	
+	public static final int DEFAULT_RETRY_THROTTLE_ATTEMPTS = 15;
+	
+	public static final String RETRY_TRANSIENT_ATTEMPTS_PROPERTY = "mapreduce.dynamodb.retry.transient.attempts";
+	
+	public static final int DEFAULT_RETRY_TRANSIENT_ATTEMPTS = 5;
+	
+	public static final String RETRY_BUDGET_PROPERTY = "mapreduce.dynamodb.retry.budget";
+	
+	public static final long DEFAULT_RETRY_BUDGET = 10000;
+	
+	public static final String SCAN_FILTER_PROPERTY = "mapreduce.dynamodb.scan.filter";
+	
+	public static final String QUERY_FILTER_PROPERTY = "mapreduce.dynamodb.query.filter";
+	
+	public static final String SCAN_SPLIT_SIZE_PROPERTY = "mapreduce.dynamodb.scan.split.size";
+	
+	public static final long DEFAULT_SCAN_SPLIT_SIZE = 1024L * 1024L * 1024L;
+	
+	public static final String PREFETCH_ENABLED_PROPERTY = "mapreduce.dynamodb.input.prefetch.enabled";
+	
+	public static final String PREFETCH_PAGES_PROPERTY = "mapreduce.dynamodb.input.prefetch.pages";
+	
+	public static final int DEFAULT_PREFETCH_PAGES = 2;
+	
+	public static final String PREFETCH_BYTES_PROPERTY = "mapreduce.dynamodb.input.prefetch.bytes";
+	
+	public static final long DEFAULT_PREFETCH_BYTES = 4L * 1024L * 1024L;
+	
+	public static final String PROJECTION_ENABLED_PROPERTY = "mapreduce.dynamodb.input.projection.enabled";
+	
+	public static final String READ_THROUGHPUT_PERCENT_PROPERTY = "mapreduce.dynamodb.throughput.read.percent";
+	
+	public static final String PAGE_LIMIT_PROPERTY = "mapreduce.dynamodb.input.page.limit";
+	
+	public static final String PAGE_TARGET_LATENCY_PROPERTY = "mapreduce.dynamodb.input.page.latency";
+	
+	public static final String WRITE_BATCH_SIZE_PROPERTY = "mapreduce.dynamodb.output.batch.size";
+	
+	public static final int DEFAULT_WRITE_BATCH_SIZE = DynamoDBBatchWriter.MAX_BATCH_SIZE;
+	
+	public static final String WRITE_FLUSH_INTERVAL_PROPERTY = "mapreduce.dynamodb.output.flush.interval";
+	
+	public static final String WRITE_THREADS_PROPERTY = "mapreduce.dynamodb.output.threads";
+	
+	public static final String WRITE_QUEUE_SIZE_PROPERTY = "mapreduce.dynamodb.output.queue.size";
+	
+	public static final int DEFAULT_WRITE_QUEUE_SIZE = 1000;
+	
+	public static final String WRITE_SPILL_PROPERTY = "mapreduce.dynamodb.output.spill";
+	
+	public static final String WRITE_SPILL_SEGMENT_SIZE_PROPERTY = "mapreduce.dynamodb.output.spill.segment.size";
+	
+	public static final int DEFAULT_WRITE_SPILL_SEGMENT_SIZE = 10000;
+	
+	public static final String WRITE_INTERLEAVE_SIZE_PROPERTY = "mapreduce.dynamodb.output.interleave.size";
+	
+	public static final String WRITE_COALESCE_SIZE_PROPERTY = "mapreduce.dynamodb.output.coalesce.size";
+	
+	public static final String WRITE_COALESCE_WINDOW_PROPERTY = "mapreduce.dynamodb.output.coalesce.window";
+	
+	public static final String DIGEST_INPUT_PROPERTY = "mapreduce.dynamodb.output.digest.input";
+	
+	public static final String DIGEST_OUTPUT_PROPERTY = "mapreduce.dynamodb.output.digest.output";
+	
+	public static final String REJECT_HANDLER_PROPERTY = "mapreduce.dynamodb.output.reject.handler";
+	
+	public static final String COUNTER_ATTRIBUTE_PROPERTY = "mapreduce.dynamodb.output.counter.attribute";
+	
+	public static final String DEFAULT_COUNTER_ATTRIBUTE = "count";
+	
+	public static final String COUNTER_CACHE_SIZE_PROPERTY = "mapreduce.dynamodb.output.counter.size";
+	
+	public static final int DEFAULT_COUNTER_CACHE_SIZE = 10000;
+	
+	public static final String WRITE_THROUGHPUT_PERCENT_PROPERTY = "mapreduce.dynamodb.throughput.write.percent";
+	
+	public static final String OUTPUT_STAGED_PROPERTY = "mapreduce.dynamodb.output.staged";
+	
+	public static final String CHECKPOINT_DIR_PROPERTY = "mapreduce.dynamodb.input.checkpoint.dir";
+	
+	public static final String CHECKPOINT_INTERVAL_PROPERTY = "mapreduce.dynamodb.input.checkpoint.interval";
+	
+	public static final long DEFAULT_CHECKPOINT_INTERVAL = 60000;
+	
 	public static void setCredentals(
 			Configuration conf, 
 			String accessKey, 
@@ -62,6 +178,84 @@ public class DynamoDBConfiguration {
 		conf.set(SECRET_KEY_PROPERTY, secretKey);
 	}
 
+	/**
+	 * <p>
+	 * Adds a condition on an attribute to the filter stored under the
+	 * specified property. Values are encoded with AttributeValueIOUtils in the
+	 * same way as the range key condition. A later condition on the same
+	 * attribute replaces the earlier one.
+	 * </p>
+	 * 
+	 * <pre>
+	 * property             = attribute names
+	 * property.name.type     = Types ordinal
+	 * property.name.operator = ComparisonOperator ordinal
+	 * property.name.values   = encoded values
+	 * </pre>
+	 */
+	static void addFilterCondition(
+			Configuration conf,
+			String property,
+			String attribute,
+			Types type,
+			ComparisonOperator operator,
+			Collection<AttributeValue> values) {
+		Set<String> attributes = new LinkedHashSet<String>(
+				conf.getStringCollection(property));
+		attributes.add(attribute);
+		conf.setStrings(property, attributes.toArray(new String[] {}));
+
+		String prefix = property + "." + attribute;
+		conf.setInt(prefix + ".type", type.ordinal());
+		conf.setInt(prefix + ".operator", operator.ordinal());
+
+		List<String> encodedValues = new ArrayList<String>();
+		for (AttributeValue value : values) {
+			encodedValues.add(AttributeValueIOUtils.toString(type, value));
+		}
+		conf.setStrings(
+				prefix + ".values",
+				encodedValues.toArray(new String[] {}));
+	}
+
+	/**
+	 * @return Conditions stored under the specified property by
+	 *         addFilterCondition, keyed by attribute name
+	 */
+	static Map<String, Condition> getFilterConditions(
+			Configuration conf,
+			String property) {
+		Map<String, Condition> conditions = new LinkedHashMap<String, Condition>();
+		for (String attribute : conf.getStringCollection(property)) {
+			String prefix = property + "." + attribute;
+			Types type = getFilterType(conf, property, attribute);
+			ComparisonOperator operator = ComparisonOperator.values()[conf
+					.getInt(prefix + ".operator", ComparisonOperator.EQ.ordinal())];
+
+			List<AttributeValue> values = new ArrayList<AttributeValue>();
+			for (String encodedValue : conf.getStringCollection(prefix + ".values")) {
+				values.add(AttributeValueIOUtils.valueOf(type, encodedValue));
+			}
+
+			conditions.put(attribute, new Condition()
+					.withComparisonOperator(operator)
+					.withAttributeValueList(values));
+		}
+		return conditions;
+	}
+
+	/**
+	 * @return Type of the values of a condition stored by addFilterCondition
+	 */
+	static Types getFilterType(
+			Configuration conf,
+			String property,
+			String attribute) {
+		return Types.values()[conf.getInt(
+				property + "." + attribute + ".type",
+				Types.STRING.ordinal())];
+	}
+
 	private Configuration conf;
 
 	public DynamoDBConfiguration(Configuration conf) {
@@ -72,20 +266,76 @@ public class DynamoDBConfiguration {
 		return conf;
 	}
 
+	/**
+	 * Creates a new client owned by the caller, who must shut it down. Record
+	 * readers and writers share clients through DynamoDBClientPool instead.
+	 */
 	public AmazonDynamoDBClient getAmazonDynamoDBClient() {
-		String accessKey = conf.get(ACCESS_KEY_PROPERTY);
-		String secretKey = conf.get(SECRET_KEY_PROPERTY);
+		return createAmazonDynamoDBClient(
+				conf.get(ACCESS_KEY_PROPERTY),
+				conf.get(SECRET_KEY_PROPERTY),
+				conf.get(DYNAMODB_ENDPOINT),
+				getClientMaxConnections());
+	}
+	
+	static AmazonDynamoDBClient createAmazonDynamoDBClient(
+			String accessKey,
+			String secretKey,
+			String endpoint,
+			int maxConnections) {
 		AWSCredentials credentials = new BasicAWSCredentials(accessKey,
 				secretKey);
+		ClientConfiguration clientConfiguration = new ClientConfiguration()
+				.withMaxConnections(maxConnections);
 		
-		AmazonDynamoDBClient client = new AmazonDynamoDBClient(credentials);
-		String endpoint = conf.get(DYNAMODB_ENDPOINT);
+		AmazonDynamoDBClient client = new AmazonDynamoDBClient(
+				credentials,
+				clientConfiguration);
 		if(null != endpoint) {
 			client.setEndpoint(endpoint);
 		}
 		return client;
 	}
 	
+	/**
+	 * @return Maximum number of open HTTP connections per client
+	 */
+	public int getClientMaxConnections() {
+		return conf.getInt(
+				CLIENT_MAX_CONNECTIONS_PROPERTY,
+				DEFAULT_CLIENT_MAX_CONNECTIONS);
+	}
+	
+	public void setClientMaxConnections(int maxConnections) {
+		conf.setInt(CLIENT_MAX_CONNECTIONS_PROPERTY, maxConnections);
+	}
+	
+	/**
+	 * @return true if record readers and writers in the same JVM share
+	 *         clients
+	 */
+	public boolean isClientPoolEnabled() {
+		return conf.getBoolean(CLIENT_POOL_ENABLED_PROPERTY, true);
+	}
+	
+	public void setClientPoolEnabled(boolean enabled) {
+		conf.setBoolean(CLIENT_POOL_ENABLED_PROPERTY, enabled);
+	}
+	
+	/**
+	 * @return Milliseconds a pooled client may stay unused before it is shut
+	 *         down
+	 */
+	public long getClientIdleTimeout() {
+		return conf.getLong(
+				CLIENT_IDLE_TIMEOUT_PROPERTY,
+				DEFAULT_CLIENT_IDLE_TIMEOUT);
+	}
+	
+	public void setClientIdleTimeout(long millis) {
+		conf.setLong(CLIENT_IDLE_TIMEOUT_PROPERTY, millis);
+	}
+	
 	public String getDynamoDBEndpoint() {
 		return conf.get(DYNAMODB_ENDPOINT);
 	}
@@ -111,6 +361,473 @@ public class DynamoDBConfiguration {
 				DynamoDBKeyWritable.class);
 	}
 
+	/**
+	 * @return Target number of table bytes read by a single scan split
+	 */
+	public long getScanSplitSize() {
+		return conf.getLong(SCAN_SPLIT_SIZE_PROPERTY, DEFAULT_SCAN_SPLIT_SIZE);
+	}
+
+	public void setScanSplitSize(long splitSize) {
+		conf.setLong(SCAN_SPLIT_SIZE_PROPERTY, splitSize);
+	}
+
+	/**
+	 * @return true if record readers fetch the next page in the background
+	 */
+	public boolean isPrefetchEnabled() {
+		return conf.getBoolean(PREFETCH_ENABLED_PROPERTY, false);
+	}
+
+	public void setPrefetchEnabled(boolean enabled) {
+		conf.setBoolean(PREFETCH_ENABLED_PROPERTY, enabled);
+	}
+
+	/**
+	 * @return Maximum number of pages buffered ahead of the record reader
+	 */
+	public int getPrefetchPages() {
+		return conf.getInt(PREFETCH_PAGES_PROPERTY, DEFAULT_PREFETCH_PAGES);
+	}
+
+	public void setPrefetchPages(int pages) {
+		conf.setInt(PREFETCH_PAGES_PROPERTY, pages);
+	}
+
+	/**
+	 * @return Maximum number of item bytes buffered ahead of the record reader
+	 */
+	public long getPrefetchBytes() {
+		return conf.getLong(PREFETCH_BYTES_PROPERTY, DEFAULT_PREFETCH_BYTES);
+	}
+
+	public void setPrefetchBytes(long bytes) {
+		conf.setLong(PREFETCH_BYTES_PROPERTY, bytes);
+	}
+
+	/**
+	 * @return true if Scan and Query requests only fetch the attributes
+	 *         declared by the input class
+	 */
+	public boolean isProjectionEnabled() {
+		return conf.getBoolean(PROJECTION_ENABLED_PROPERTY, false);
+	}
+
+	/**
+	 * Sends the field names of the input class as AttributesToGet. Other
+	 * attributes are never fetched, so an input class that overrides
+	 * readFields(Map) to read attributes it does not declare sees them as
+	 * null and must leave projection disabled.
+	 * 
+	 * @param enabled
+	 *            true to only fetch the attributes declared by the input class
+	 */
+	public void setProjectionEnabled(boolean enabled) {
+		conf.setBoolean(PROJECTION_ENABLED_PROPERTY, enabled);
+	}
+
+	/**
+	 * @return Percentage of the input table's provisioned read capacity
+	 *         shared by all map tasks, where 100 is all of it. Reads are not
+	 *         limited when this is 0 or less.
+	 * @throws IllegalArgumentException
+	 *             if the configured percentage is above 100
+	 */
+	public float getReadThroughputPercent() {
+		return checkPercent(
+				READ_THROUGHPUT_PERCENT_PROPERTY,
+				conf.getFloat(READ_THROUGHPUT_PERCENT_PROPERTY, 0));
+	}
+
+	/**
+	 * @param percent
+	 *            Percentage of the provisioned read capacity, in (0, 100], or
+	 *            0 to not limit reads
+	 */
+	public void setReadThroughputPercent(float percent) {
+		conf.setFloat(
+				READ_THROUGHPUT_PERCENT_PROPERTY,
+				checkPercent(READ_THROUGHPUT_PERCENT_PROPERTY, percent));
+	}
+
+	private static float checkPercent(String property, float percent) {
+		if (percent > 100) {
+			throw new IllegalArgumentException(property
+					+ " must be a percentage between 0 and 100: " + percent);
+		}
+		return percent;
+	}
+
+	/**
+	 * @return Percentage of the output table's provisioned write capacity
+	 *         shared by all tasks writing to it, where 100 is all of it.
+	 *         Writes are not limited when this is 0 or less.
+	 * @throws IllegalArgumentException
+	 *             if the configured percentage is above 100
+	 */
+	public float getWriteThroughputPercent() {
+		return checkPercent(
+				WRITE_THROUGHPUT_PERCENT_PROPERTY,
+				conf.getFloat(WRITE_THROUGHPUT_PERCENT_PROPERTY, 0));
+	}
+
+	/**
+	 * @param percent
+	 *            Percentage of the provisioned write capacity, in (0, 100],
+	 *            or 0 to not limit writes
+	 */
+	public void setWriteThroughputPercent(float percent) {
+		conf.setFloat(
+				WRITE_THROUGHPUT_PERCENT_PROPERTY,
+				checkPercent(WRITE_THROUGHPUT_PERCENT_PROPERTY, percent));
+	}
+
+	/**
+	 * @return true if task output is staged on local disk and only written
+	 *         to the table when the task attempt commits
+	 */
+	public boolean isOutputStaged() {
+		return conf.getBoolean(OUTPUT_STAGED_PROPERTY, false);
+	}
+
+	/**
+	 * Stages task output on local disk until the task attempt commits, so
+	 * that failed and speculative attempts never write to the table. Staged
+	 * output is written when the task commits, after the task itself has
+	 * finished.
+	 * 
+	 * @param staged
+	 *            true to stage output
+	 */
+	public void setOutputStaged(boolean staged) {
+		conf.setBoolean(OUTPUT_STAGED_PROPERTY, staged);
+	}
+
+	/**
+	 * @return Minimum delay in milliseconds before retrying a failed request
+	 */
+	public long getRetryBaseDelay() {
+		return conf.getLong(RETRY_BASE_DELAY_PROPERTY, DEFAULT_RETRY_BASE_DELAY);
+	}
+
+	public void setRetryBaseDelay(long millis) {
+		conf.setLong(RETRY_BASE_DELAY_PROPERTY, millis);
+	}
+
+	/**
+	 * @return Maximum delay in milliseconds before retrying a failed request
+	 */
+	public long getRetryMaxDelay() {
+		return conf.getLong(RETRY_MAX_DELAY_PROPERTY, DEFAULT_RETRY_MAX_DELAY);
+	}
+
+	public void setRetryMaxDelay(long millis) {
+		conf.setLong(RETRY_MAX_DELAY_PROPERTY, millis);
+	}
+
+	/**
+	 * @return Maximum attempts of a request rejected for exceeding the
+	 *         provisioned throughput
+	 */
+	public int getRetryThrottleAttempts() {
+		return conf.getInt(
+				RETRY_THROTTLE_ATTEMPTS_PROPERTY,
+				DEFAULT_RETRY_THROTTLE_ATTEMPTS);
+	}
+
+	public void setRetryThrottleAttempts(int attempts) {
+		conf.setInt(RETRY_THROTTLE_ATTEMPTS_PROPERTY, attempts);
+	}
+
+	/**
+	 * @return Maximum attempts of a request that failed with a server or
+	 *         network error
+	 */
+	public int getRetryTransientAttempts() {
+		return conf.getInt(
+				RETRY_TRANSIENT_ATTEMPTS_PROPERTY,
+				DEFAULT_RETRY_TRANSIENT_ATTEMPTS);
+	}
+
+	public void setRetryTransientAttempts(int attempts) {
+		conf.setInt(RETRY_TRANSIENT_ATTEMPTS_PROPERTY, attempts);
+	}
+
+	/**
+	 * @return Maximum number of retries across all requests of a task
+	 */
+	public long getRetryBudget() {
+		return conf.getLong(RETRY_BUDGET_PROPERTY, DEFAULT_RETRY_BUDGET);
+	}
+
+	public void setRetryBudget(long retries) {
+		conf.setLong(RETRY_BUDGET_PROPERTY, retries);
+	}
+
+	/**
+	 * @return Limit of the first Scan or Query request of each reader, 0 to
+	 *         let DynamoDB return up to 1 MB per request
+	 */
+	public int getPageLimit() {
+		return conf.getInt(PAGE_LIMIT_PROPERTY, 0);
+	}
+
+	public void setPageLimit(int limit) {
+		conf.setInt(PAGE_LIMIT_PROPERTY, limit);
+	}
+
+	/**
+	 * @return Latency in milliseconds the page limit is adjusted towards, 0
+	 *         to keep the page limit fixed
+	 */
+	public long getPageTargetLatency() {
+		return conf.getLong(PAGE_TARGET_LATENCY_PROPERTY, 0);
+	}
+
+	public void setPageTargetLatency(long millis) {
+		conf.setLong(PAGE_TARGET_LATENCY_PROPERTY, millis);
+	}
+
+	/**
+	 * @return Directory the record readers persist their position to, null
+	 *         when checkpoints are disabled
+	 */
+	public String getCheckpointDir() {
+		return conf.get(CHECKPOINT_DIR_PROPERTY);
+	}
+
+	/**
+	 * <p>
+	 * Enables checkpoints. Every record reader periodically saves the key of
+	 * the last page it has handed to the mapper under
+	 * <code>dir/&lt;job id&gt;/&lt;split&gt;</code>, and a later attempt of
+	 * the same split resumes from there instead of rereading the split.
+	 * </p>
+	 * 
+	 * <p>
+	 * Records read by a failed attempt are not read again, so this is only
+	 * suitable for jobs whose mappers write their results directly, e.g. map
+	 * only jobs using DynamoDBOutputFormat. Output collected by a failed
+	 * attempt through the framework is discarded and would be lost.
+	 * </p>
+	 * 
+	 * <p>
+	 * Checkpoints are only saved while mapred.map.tasks.speculative.execution
+	 * is false. Two attempts of a split running at once would otherwise
+	 * resume from each other's position.
+	 * </p>
+	 */
+	public void setCheckpointDir(String dir) {
+		conf.set(CHECKPOINT_DIR_PROPERTY, dir);
+	}
+
+	/**
+	 * @return Minimum number of milliseconds between checkpoints
+	 */
+	public long getCheckpointInterval() {
+		return conf.getLong(
+				CHECKPOINT_INTERVAL_PROPERTY,
+				DEFAULT_CHECKPOINT_INTERVAL);
+	}
+
+	public void setCheckpointInterval(long millis) {
+		conf.setLong(CHECKPOINT_INTERVAL_PROPERTY, millis);
+	}
+
+	/**
+	 * @return Number of items written per BatchWriteItem request, at most
+	 *         25. Items are written one PutItem at a time if this is 1.
+	 */
+	public int getWriteBatchSize() {
+		return conf.getInt(WRITE_BATCH_SIZE_PROPERTY, DEFAULT_WRITE_BATCH_SIZE);
+	}
+
+	public void setWriteBatchSize(int batchSize) {
+		conf.setInt(WRITE_BATCH_SIZE_PROPERTY, batchSize);
+	}
+
+	/**
+	 * @return Milliseconds an item may stay buffered before its batch is
+	 *         written, 0 to only write full batches
+	 */
+	public long getWriteFlushInterval() {
+		return conf.getLong(WRITE_FLUSH_INTERVAL_PROPERTY, 0);
+	}
+
+	public void setWriteFlushInterval(long millis) {
+		conf.setLong(WRITE_FLUSH_INTERVAL_PROPERTY, millis);
+	}
+
+	/**
+	 * @return Number of threads sending writes in the background, 0 to write
+	 *         from the task thread. Each thread needs a connection of the
+	 *         client, see {@link #getClientMaxConnections()}.
+	 */
+	public int getWriteThreads() {
+		return conf.getInt(WRITE_THREADS_PROPERTY, 0);
+	}
+
+	public void setWriteThreads(int threads) {
+		conf.setInt(WRITE_THREADS_PROPERTY, threads);
+	}
+
+	/**
+	 * @return Number of items that may wait for a sender thread before
+	 *         writes block, or are spilled if spilling is enabled
+	 */
+	public int getWriteQueueSize() {
+		return conf.getInt(WRITE_QUEUE_SIZE_PROPERTY, DEFAULT_WRITE_QUEUE_SIZE);
+	}
+
+	public void setWriteQueueSize(int size) {
+		conf.setInt(WRITE_QUEUE_SIZE_PROPERTY, size);
+	}
+
+	/**
+	 * @return true if writes the table cannot take right away are spilled to
+	 *         local disk instead of blocking the task
+	 */
+	public boolean isWriteSpillEnabled() {
+		return conf.getBoolean(WRITE_SPILL_PROPERTY, false);
+	}
+
+	/**
+	 * Spills writes to local disk once the write queue is full, so a task
+	 * writing to a throttled table finishes computing at full speed and then
+	 * waits for the spilled writes. The queue size is set with
+	 * {@link #setWriteQueueSize(int)}.
+	 * 
+	 * @param enabled
+	 *            true to spill writes
+	 */
+	public void setWriteSpillEnabled(boolean enabled) {
+		conf.setBoolean(WRITE_SPILL_PROPERTY, enabled);
+	}
+
+	/**
+	 * @return Number of writes per spill file
+	 */
+	public int getWriteSpillSegmentSize() {
+		return conf.getInt(
+				WRITE_SPILL_SEGMENT_SIZE_PROPERTY,
+				DEFAULT_WRITE_SPILL_SEGMENT_SIZE);
+	}
+
+	public void setWriteSpillSegmentSize(int size) {
+		conf.setInt(WRITE_SPILL_SEGMENT_SIZE_PROPERTY, size);
+	}
+
+	/**
+	 * @return Number of writes reordered at a time to spread them across hash
+	 *         keys, 0 or less to write in the order records are written
+	 */
+	public int getWriteInterleaveSize() {
+		return conf.getInt(WRITE_INTERLEAVE_SIZE_PROPERTY, 0);
+	}
+
+	public void setWriteInterleaveSize(int size) {
+		conf.setInt(WRITE_INTERLEAVE_SIZE_PROPERTY, size);
+	}
+
+	/**
+	 * @return Number of keys of which only the latest write is kept before
+	 *         writes are sent, 0 or less if writes are not coalesced
+	 */
+	public int getWriteCoalesceSize() {
+		return conf.getInt(WRITE_COALESCE_SIZE_PROPERTY, 0);
+	}
+
+	public void setWriteCoalesceSize(int size) {
+		conf.setInt(WRITE_COALESCE_SIZE_PROPERTY, size);
+	}
+
+	/**
+	 * @return Milliseconds a coalesced write may wait for a later write of
+	 *         the same key, 0 or less to only limit the number of keys
+	 */
+	public long getWriteCoalesceWindow() {
+		return conf.getLong(WRITE_COALESCE_WINDOW_PROPERTY, 0);
+	}
+
+	public void setWriteCoalesceWindow(long millis) {
+		conf.setLong(WRITE_COALESCE_WINDOW_PROPERTY, millis);
+	}
+
+	/**
+	 * @return Directory holding the item digests of the previous run, or
+	 *         null to write every item
+	 */
+	public String getDigestInputPath() {
+		return conf.get(DIGEST_INPUT_PROPERTY);
+	}
+
+	/**
+	 * Skips puts of items whose digest in the given directory is unchanged.
+	 * The directory must be the digest output of a successful run with the
+	 * same number of tasks and the same partitioner, since every task only
+	 * reads the digests of the task with its own index.
+	 * 
+	 * @param path
+	 *            Digest output directory of the previous run
+	 */
+	public void setDigestInputPath(String path) {
+		conf.set(DIGEST_INPUT_PROPERTY, path);
+	}
+
+	/**
+	 * @return Directory the item digests of this run are saved to, or null
+	 *         to not save digests
+	 */
+	public String getDigestOutputPath() {
+		return conf.get(DIGEST_OUTPUT_PROPERTY);
+	}
+
+	public void setDigestOutputPath(String path) {
+		conf.set(DIGEST_OUTPUT_PROPERTY, path);
+	}
+
+	/**
+	 * @return Handler of items DynamoDB would reject, or null to fail the task
+	 *         on such items
+	 */
+	public Class<? extends DynamoDBRejectHandler> getRejectHandlerClass() {
+		return conf.getClass(
+				REJECT_HANDLER_PROPERTY,
+				null,
+				DynamoDBRejectHandler.class);
+	}
+
+	public void setRejectHandlerClass(
+			Class<? extends DynamoDBRejectHandler> handlerClass) {
+		conf.setClass(
+				REJECT_HANDLER_PROPERTY,
+				handlerClass,
+				DynamoDBRejectHandler.class);
+	}
+
+	/**
+	 * @return Numeric attribute DynamoDBCounterOutputFormat adds values to
+	 */
+	public String getCounterAttribute() {
+		return conf.get(COUNTER_ATTRIBUTE_PROPERTY, DEFAULT_COUNTER_ATTRIBUTE);
+	}
+
+	public void setCounterAttribute(String attributeName) {
+		conf.set(COUNTER_ATTRIBUTE_PROPERTY, attributeName);
+	}
+
+	/**
+	 * @return Number of keys DynamoDBCounterOutputFormat sums values of
+	 *         before the sums are written
+	 */
+	public int getCounterCacheSize() {
+		return conf.getInt(COUNTER_CACHE_SIZE_PROPERTY, DEFAULT_COUNTER_CACHE_SIZE);
+	}
+
+	public void setCounterCacheSize(int size) {
+		conf.setInt(COUNTER_CACHE_SIZE_PROPERTY, size);
+	}
+
 	public String getOutputTableName() {
 		return conf.get(OUTPUT_TABLE_NAME_PROPERTY);
 	}
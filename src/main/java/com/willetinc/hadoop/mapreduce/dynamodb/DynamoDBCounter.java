@@ -0,0 +1,30 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+/**
+ * Hadoop counters reported by DynamoDB record readers and writers.
+ */
+public enum DynamoDBCounter {
+	RETRIES,
+	THROTTLED_REQUESTS,
+	BACKOFF_MILLIS,
+	UNPROCESSED_ITEMS,
+	COALESCED_WRITES,
+	REJECTED_ITEMS,
+	UNCHANGED_ITEMS
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+import com.amazonaws.services.dynamodb.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.Key;
+
+/**
+ * Commits counter deltas staged by {@link DynamoDBCounterOutputFormat}. The
+ * deltas are summed per key and added to the table with UpdateItem ADD
+ * actions when the task attempt commits.
+ */
+public class DynamoDBCounterOutputCommitter extends DynamoDBOutputCommitter {
+
+	/**
+	 * Adds the counter attribute of replayed puts to a counter writer.
+	 */
+	private static class CounterReplayWriter implements DynamoDBWriter {
+
+		private final DynamoDBCounterWriter writer;
+
+		private final String attributeName;
+
+		public CounterReplayWriter(
+				DynamoDBCounterWriter writer,
+				String attributeName) {
+			this.writer = writer;
+			this.attributeName = attributeName;
+		}
+
+		@Override
+		public void put(Key key, Map<String, AttributeValue> item)
+				throws IOException,
+				InterruptedException {
+			AttributeValue delta = item.get(attributeName);
+			if (null == delta || null == delta.getN()) {
+				throw new IOException("Staged counter delta has no "
+						+ attributeName + " attribute");
+			}
+			writer.add(key, Long.parseLong(delta.getN()));
+		}
+
+		@Override
+		public void delete(Key key) throws IOException {
+			throw new IOException("Counters cannot be deleted");
+		}
+
+		@Override
+		public void flush() throws InterruptedException {
+			writer.flush();
+		}
+
+		@Override
+		public void close() throws InterruptedException {
+			writer.close();
+		}
+
+	}
+
+	@Override
+	DynamoDBWriter createWriter(
+			AmazonDynamoDBClient client,
+			String tableName,
+			DynamoDBConfiguration dbConf,
+			DynamoDBRetryPolicy retryPolicy,
+			TaskAttemptContext context) {
+		return new CounterReplayWriter(
+				DynamoDBCounterOutputFormat.createCounterWriter(
+						client,
+						dbConf,
+						retryPolicy),
+				dbConf.getCounterAttribute());
+	}
+
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapred.InvalidJobConfException;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+import com.amazonaws.services.dynamodb.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.willetinc.hadoop.mapreduce.dynamodb.io.DynamoDBKeyWritable;
+
+/**
+ * <p>
+ * Adds the values written for a key to a numeric attribute of the item with
+ * that key, creating the item if needed. The attribute is set with
+ * {@link DynamoDBConfiguration#setCounterAttribute(String)}.
+ * </p>
+ * 
+ * <p>
+ * Values are summed per key in the record writer, like a combiner would,
+ * and written with UpdateItem ADD actions. See {@link DynamoDBCounterWriter}.
+ * </p>
+ * 
+ * <p>
+ * ADD is not idempotent, so counters are only exact for a single committed
+ * attempt of each task. When output is staged (see
+ * {@link DynamoDBConfiguration#setOutputStaged(boolean)}) the values are
+ * only added by the attempt that commits, in
+ * {@link DynamoDBCounterOutputCommitter}. A commit that fails part way is
+ * still added again by the next attempt. Otherwise every attempt adds its
+ * values as it runs, so jobs with speculative execution of the writing
+ * tasks are refused, and the values of a failed attempt are added again by
+ * its retry.
+ * </p>
+ */
+public class DynamoDBCounterOutputFormat<K extends DynamoDBKeyWritable>
+		extends OutputFormat<K, LongWritable> {
+
+	private static final String MAP_SPECULATIVE_EXECUTION_PROPERTY = "mapred.map.tasks.speculative.execution";
+
+	private static final String REDUCE_SPECULATIVE_EXECUTION_PROPERTY = "mapred.reduce.tasks.speculative.execution";
+
+	/**
+	 * Refuses speculative execution of the tasks writing the counters,
+	 * unless output is staged.
+	 */
+	@Override
+	public void checkOutputSpecs(JobContext context)
+			throws IOException,
+			InterruptedException {
+		Configuration conf = context.getConfiguration();
+		if (new DynamoDBConfiguration(conf).isOutputStaged()) {
+			return;
+		}
+		String property = context.getNumReduceTasks() == 0
+				? MAP_SPECULATIVE_EXECUTION_PROPERTY
+				: REDUCE_SPECULATIVE_EXECUTION_PROPERTY;
+		if (conf.getBoolean(property, true)) {
+			throw new InvalidJobConfException(
+					"Speculative attempts would add counter values twice, "
+							+ "set " + property + " to false or stage output");
+		}
+	}
+
+	@Override
+	public OutputCommitter getOutputCommitter(TaskAttemptContext context)
+			throws IOException,
+			InterruptedException {
+		return new DynamoDBCounterOutputCommitter();
+	}
+
+	public class DynamoDBCounterRecordWriter extends RecordWriter<K, LongWritable> {
+
+		private final AmazonDynamoDBClient client;
+
+		private final DynamoDBCounterWriter writer;
+
+		private final DynamoDBRetryPolicy retryPolicy;
+
+		public DynamoDBCounterRecordWriter(
+				AmazonDynamoDBClient client,
+				DynamoDBCounterWriter writer,
+				DynamoDBRetryPolicy retryPolicy) {
+			this.client = client;
+			this.writer = writer;
+			this.retryPolicy = retryPolicy;
+		}
+
+		@Override
+		public void write(K key, LongWritable value)
+				throws IOException,
+				InterruptedException {
+			writer.add(DynamoDBOutputFormat.getKey(key), value.get());
+		}
+
+		@Override
+		public void close(TaskAttemptContext context)
+				throws IOException,
+				InterruptedException {
+			try {
+				writer.close();
+			} finally {
+				retryPolicy.getCounters().log();
+				DynamoDBClientPool.getInstance().release(client);
+			}
+		}
+
+	}
+
+	/**
+	 * Stages each value as a put of the counter attribute, for
+	 * {@link DynamoDBCounterOutputCommitter} to add on commit.
+	 */
+	public class DynamoDBStagedCounterRecordWriter extends RecordWriter<K, LongWritable> {
+
+		private final DynamoDBStagedWriter writer;
+
+		private final String attributeName;
+
+		public DynamoDBStagedCounterRecordWriter(
+				DynamoDBStagedWriter writer,
+				String attributeName) {
+			this.writer = writer;
+			this.attributeName = attributeName;
+		}
+
+		@Override
+		public void write(K key, LongWritable value) throws IOException {
+			writer.put(
+					DynamoDBOutputFormat.getKey(key),
+					Collections.singletonMap(
+							attributeName,
+							new AttributeValue().withN(Long.toString(value
+									.get()))));
+		}
+
+		@Override
+		public void close(TaskAttemptContext context) throws IOException {
+			writer.close();
+		}
+
+	}
+
+	@Override
+	public RecordWriter<K, LongWritable> getRecordWriter(
+			TaskAttemptContext context)
+			throws IOException,
+			InterruptedException {
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(
+				context.getConfiguration());
+		if (dbConf.isOutputStaged()) {
+			// added to the table by DynamoDBCounterOutputCommitter.commitTask
+			return new DynamoDBStagedCounterRecordWriter(
+					new DynamoDBStagedWriter(
+							FileSystem.getLocal(context.getConfiguration()),
+							DynamoDBOutputCommitter
+									.getStagingFileForWrite(context)),
+					dbConf.getCounterAttribute());
+		}
+		return getRecordWriter(
+				DynamoDBClientPool.getInstance().acquire(dbConf),
+				dbConf,
+				new DynamoDBCounters(context));
+	}
+
+	RecordWriter<K, LongWritable> getRecordWriter(
+			AmazonDynamoDBClient client,
+			DynamoDBConfiguration dbConf,
+			DynamoDBCounters counters) {
+		DynamoDBRetryPolicy retryPolicy = new DynamoDBRetryPolicy(dbConf, counters);
+		DynamoDBCounterWriter writer;
+		// the record writer releases the client once it is created
+		try {
+			writer = createCounterWriter(client, dbConf, retryPolicy);
+		} catch (RuntimeException e) {
+			DynamoDBClientPool.getInstance().release(client);
+			throw e;
+		}
+		return new DynamoDBCounterRecordWriter(client, writer, retryPolicy);
+	}
+
+	/**
+	 * Creates the counter writer configured for a job.
+	 */
+	static DynamoDBCounterWriter createCounterWriter(
+			AmazonDynamoDBClient client,
+			DynamoDBConfiguration dbConf,
+			DynamoDBRetryPolicy retryPolicy) {
+		String tableName = dbConf.getOutputTableName();
+		DynamoDBCounterWriter writer = new DynamoDBCounterWriter(
+				client,
+				tableName,
+				dbConf.getCounterAttribute(),
+				dbConf.getCounterCacheSize(),
+				dbConf.getWriteFlushInterval(),
+				retryPolicy);
+		writer.setThroughputLimiter(DynamoDBOutputFormat.createWriteLimiter(
+				client,
+				tableName,
+				dbConf));
+		return writer;
+	}
+
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodb.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodb.model.AttributeAction;
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.AttributeValueUpdate;
+import com.amazonaws.services.dynamodb.model.Key;
+import com.amazonaws.services.dynamodb.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodb.model.UpdateItemResult;
+
+/**
+ * <p>
+ * Adds deltas to a numeric attribute of items with UpdateItem ADD actions.
+ * </p>
+ * 
+ * <p>
+ * Deltas are summed per key in memory, so that any number of increments of
+ * a key between flushes costs a single write. Sums are written once
+ * maxSize keys are held, when the oldest sum is older than the flush
+ * interval, or on {@link #flush()}. The flush interval is checked as deltas
+ * are added.
+ * </p>
+ * 
+ * <p>
+ * ADD is not idempotent. A request that fails after DynamoDB applied it is
+ * retried and counted twice, and so are the deltas of any other attempt
+ * writing the same values. Counters are only exact for a single committed
+ * attempt, see {@link DynamoDBCounterOutputFormat}.
+ * </p>
+ */
+public class DynamoDBCounterWriter {
+
+	private final AmazonDynamoDBClient client;
+
+	private final String tableName;
+
+	private final String attributeName;
+
+	private final int maxSize;
+
+	private final long flushInterval;
+
+	private final DynamoDBRetryPolicy retryPolicy;
+
+	private final Map<Key, long[]> sums = new HashMap<Key, long[]>();
+
+	private long firstBufferedTime;
+
+	private DynamoDBThroughputLimiter limiter;
+
+	/**
+	 * @param client
+	 *            Client used to write
+	 * @param tableName
+	 *            Table written to
+	 * @param attributeName
+	 *            Numeric attribute the deltas are added to
+	 * @param maxSize
+	 *            Number of keys summed before the sums are written
+	 * @param flushInterval
+	 *            Milliseconds a sum may stay unwritten, 0 or less to only
+	 *            limit the number of keys
+	 * @param retryPolicy
+	 *            Policy retrying failed writes
+	 */
+	public DynamoDBCounterWriter(
+			AmazonDynamoDBClient client,
+			String tableName,
+			String attributeName,
+			int maxSize,
+			long flushInterval,
+			DynamoDBRetryPolicy retryPolicy) {
+		this.client = client;
+		this.tableName = tableName;
+		this.attributeName = attributeName;
+		this.maxSize = Math.max(1, maxSize);
+		this.flushInterval = flushInterval;
+		this.retryPolicy = retryPolicy;
+	}
+
+	public DynamoDBThroughputLimiter getThroughputLimiter() {
+		return limiter;
+	}
+
+	/**
+	 * @param limiter
+	 *            Limiter debited with the consumed capacity of every write
+	 */
+	public void setThroughputLimiter(DynamoDBThroughputLimiter limiter) {
+		this.limiter = limiter;
+	}
+
+	/**
+	 * Adds a delta to the sum of a key.
+	 * 
+	 * @param key
+	 *            Primary key of the item
+	 * @param delta
+	 *            Amount added to the item's counter attribute
+	 */
+	public void add(Key key, long delta) throws InterruptedException {
+		if (sums.isEmpty()) {
+			firstBufferedTime = currentTimeMillis();
+		}
+		long[] sum = sums.get(key);
+		if (null == sum) {
+			sum = new long[1];
+			sums.put(key, sum);
+		}
+		sum[0] += delta;
+
+		if (sums.size() >= maxSize
+				|| (flushInterval > 0 && currentTimeMillis()
+						- firstBufferedTime >= flushInterval)) {
+			flush();
+		}
+	}
+
+	/**
+	 * Writes all sums. Keys whose deltas sum to 0 are not written.
+	 */
+	public void flush() throws InterruptedException {
+		for (Map.Entry<Key, long[]> entry : sums.entrySet()) {
+			if (entry.getValue()[0] != 0) {
+				update(entry.getKey(), entry.getValue()[0]);
+			}
+		}
+		sums.clear();
+	}
+
+	public void close() throws InterruptedException {
+		flush();
+	}
+
+	private void update(Key key, long sum) throws InterruptedException {
+		Map<String, AttributeValueUpdate> updates = new HashMap<String, AttributeValueUpdate>();
+		updates.put(attributeName, new AttributeValueUpdate()
+				.withAction(AttributeAction.ADD)
+				.withValue(new AttributeValue().withN(Long.toString(sum))));
+		final UpdateItemRequest request = new UpdateItemRequest()
+				.withTableName(tableName)
+				.withKey(key)
+				.withAttributeUpdates(updates);
+
+		if (limiter != null) {
+			limiter.acquire();
+		}
+		retryPolicy.execute(new DynamoDBRetryPolicy.Request<UpdateItemResult>() {
+			@Override
+			public UpdateItemResult execute() {
+				UpdateItemResult result = client.updateItem(request);
+				if (limiter != null
+						&& result.getConsumedCapacityUnits() != null) {
+					limiter.consume(result.getConsumedCapacityUnits());
+				}
+				return result;
+			}
+		});
+	}
+
+	protected long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+}
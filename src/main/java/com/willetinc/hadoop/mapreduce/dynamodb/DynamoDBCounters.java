@@ -0,0 +1,87 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+/**
+ * <p>
+ * Reports DynamoDBCounter values for a task.
+ * </p>
+ * 
+ * <p>
+ * Hadoop only exposes counters through a TaskInputOutputContext. Record
+ * readers are initialized with one, but record writers and committers may be
+ * handed a plain TaskAttemptContext, so values are also totalled locally and
+ * can be logged when the task finishes.
+ * </p>
+ */
+public class DynamoDBCounters {
+
+	private static final Log LOG = LogFactory.getLog(DynamoDBCounters.class);
+
+	private final AtomicLongArray values = new AtomicLongArray(
+			DynamoDBCounter.values().length);
+
+	private volatile TaskInputOutputContext<?, ?, ?, ?> context;
+
+	public DynamoDBCounters() {
+	}
+
+	public DynamoDBCounters(TaskAttemptContext context) {
+		setContext(context);
+	}
+
+	public void setContext(TaskAttemptContext context) {
+		if (context instanceof TaskInputOutputContext) {
+			this.context = (TaskInputOutputContext<?, ?, ?, ?>) context;
+		}
+	}
+
+	public void increment(DynamoDBCounter counter, long amount) {
+		values.addAndGet(counter.ordinal(), amount);
+		TaskInputOutputContext<?, ?, ?, ?> taskContext = context;
+		if (taskContext != null) {
+			taskContext.getCounter(counter).increment(amount);
+		}
+	}
+
+	public long getValue(DynamoDBCounter counter) {
+		return values.get(counter.ordinal());
+	}
+
+	/**
+	 * Logs non-zero counter values.
+	 */
+	public void log() {
+		StringBuilder sb = new StringBuilder();
+		for (DynamoDBCounter counter : DynamoDBCounter.values()) {
+			long value = getValue(counter);
+			if (value != 0) {
+				sb.append(' ').append(counter).append('=').append(value);
+			}
+		}
+		if (sb.length() > 0) {
+			LOG.info("DynamoDB counters:" + sb);
+		}
+	}
+}
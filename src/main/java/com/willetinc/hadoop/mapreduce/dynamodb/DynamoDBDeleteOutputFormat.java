@@ -0,0 +1,71 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import java.io.IOException;
+
+import com.amazonaws.services.dynamodb.AmazonDynamoDBClient;
+import com.willetinc.hadoop.mapreduce.dynamodb.io.DynamoDBKeyWritable;
+
+/**
+ * <p>
+ * Deletes the item with the primary key of every key written. Values are
+ * ignored.
+ * </p>
+ * 
+ * <p>
+ * Deletes are sent exactly like the puts of {@link DynamoDBOutputFormat},
+ * in BatchWriteItem requests of up to 25 DeleteRequests with unprocessed
+ * items retried, and are paced, staged and sent from background threads by
+ * the same settings.
+ * </p>
+ */
+public class DynamoDBDeleteOutputFormat<K extends DynamoDBKeyWritable, V>
+		extends DynamoDBOutputFormat<K, V> {
+
+	public class DynamoDBDeleteRecordWriter extends DynamoDBRecordWriter {
+
+		public DynamoDBDeleteRecordWriter(AmazonDynamoDBClient client,
+				String tableName, DynamoDBWriter writer,
+				DynamoDBRetryPolicy retryPolicy) {
+			super(client, tableName, writer, retryPolicy);
+		}
+
+		@Override
+		public void write(K key, V value)
+				throws IOException,
+				InterruptedException {
+			getWriter().delete(getKey(key));
+		}
+
+	}
+
+	@Override
+	protected DynamoDBRecordWriter createRecordWriter(
+			AmazonDynamoDBClient client,
+			String tableName,
+			DynamoDBWriter writer,
+			DynamoDBRetryPolicy retryPolicy) {
+		return new DynamoDBDeleteRecordWriter(
+				client,
+				tableName,
+				writer,
+				retryPolicy);
+	}
+
+}
@@ -0,0 +1,245 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.Key;
+
+/**
+ * <p>
+ * Digests of the items a task wrote, sorted by the digest of their key. A
+ * run writing with {@link DynamoDBDigestWriter} saves the digests of every
+ * item it put so that the next run can skip items that have not changed.
+ * </p>
+ * 
+ * <p>
+ * Digests are the first 8 bytes of the MD5 of the key or item encoded by
+ * {@link AttributeValueIOUtils}, with attributes in name order. A file holds
+ * a version, the number of entries and the sorted key and item digest
+ * pairs.
+ * </p>
+ */
+public class DynamoDBDigestStore {
+
+	private static final int VERSION = 1;
+
+	private final long[] keyDigests;
+
+	private final long[] itemDigests;
+
+	private DynamoDBDigestStore(long[] keyDigests, long[] itemDigests) {
+		this.keyDigests = keyDigests;
+		this.itemDigests = itemDigests;
+	}
+
+	public int size() {
+		return keyDigests.length;
+	}
+
+	/**
+	 * @return true if the store holds the key digest with the item digest
+	 */
+	public boolean contains(long keyDigest, long itemDigest) {
+		int index = Arrays.binarySearch(keyDigests, keyDigest);
+		return index >= 0 && itemDigests[index] == itemDigest;
+	}
+
+	/**
+	 * Reads a digest store.
+	 * 
+	 * @param fs
+	 *            File system holding the store
+	 * @param path
+	 *            File written by {@link Builder#write(FileSystem, Path)}
+	 * @return Digest store
+	 */
+	public static DynamoDBDigestStore read(FileSystem fs, Path path)
+			throws IOException {
+		FSDataInputStream in = fs.open(path);
+		try {
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported digest store version "
+						+ version + " in " + path);
+			}
+			int size = in.readInt();
+			long[] keyDigests = new long[size];
+			long[] itemDigests = new long[size];
+			for (int i = 0; i < size; i++) {
+				keyDigests[i] = in.readLong();
+				itemDigests[i] = in.readLong();
+			}
+			return new DynamoDBDigestStore(keyDigests, itemDigests);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @return Digest of a primary key
+	 */
+	public static long digest(Key key) throws IOException {
+		DataOutputBuffer out = new DataOutputBuffer();
+		AttributeValueIOUtils.writeKey(key, out);
+		return digest(out);
+	}
+
+	/**
+	 * @return Digest of an item, independent of its attribute order
+	 */
+	public static long digest(Map<String, AttributeValue> item)
+			throws IOException {
+		DataOutputBuffer out = new DataOutputBuffer();
+		AttributeValueIOUtils.writeItem(
+				new TreeMap<String, AttributeValue>(item),
+				out);
+		return digest(out);
+	}
+
+	private static long digest(DataOutputBuffer out) {
+		MessageDigest md5;
+		try {
+			md5 = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		md5.update(out.getData(), 0, out.getLength());
+		byte[] hash = md5.digest();
+		long digest = 0;
+		for (int i = 0; i < 8; i++) {
+			digest = (digest << 8) | (hash[i] & 0xff);
+		}
+		return digest;
+	}
+
+	/**
+	 * Collects the digests of the items written by a task. When a key is
+	 * added more than once the last digest wins.
+	 */
+	public static class Builder {
+
+		/** Item digest recorded for deleted keys, which are not stored */
+		private static final long DELETED = 0;
+
+		private long[] keyDigests = new long[1024];
+
+		private long[] itemDigests = new long[1024];
+
+		private int size = 0;
+
+		public void put(long keyDigest, long itemDigest) {
+			if (size == keyDigests.length) {
+				keyDigests = Arrays.copyOf(keyDigests, size * 2);
+				itemDigests = Arrays.copyOf(itemDigests, size * 2);
+			}
+			keyDigests[size] = keyDigest;
+			itemDigests[size] = itemDigest;
+			size++;
+		}
+
+		public void delete(long keyDigest) {
+			put(keyDigest, DELETED);
+		}
+
+		/**
+		 * Sorts the digests and writes them, keeping only the last digest
+		 * added for a key.
+		 * 
+		 * @return Number of digests written
+		 */
+		public int write(FileSystem fs, Path path) throws IOException {
+			// stable, so the last digest of a key stays last
+			mergeSort(
+					keyDigests,
+					itemDigests,
+					new long[size],
+					new long[size],
+					0,
+					size);
+
+			int count = 0;
+			for (int i = 0; i < size; i++) {
+				boolean last = i + 1 == size
+						|| keyDigests[i + 1] != keyDigests[i];
+				if (last && itemDigests[i] != DELETED) {
+					keyDigests[count] = keyDigests[i];
+					itemDigests[count] = itemDigests[i];
+					count++;
+				}
+			}
+			size = count;
+
+			DataOutputStream out = fs.create(path, true);
+			try {
+				out.writeInt(VERSION);
+				out.writeInt(count);
+				for (int i = 0; i < count; i++) {
+					out.writeLong(keyDigests[i]);
+					out.writeLong(itemDigests[i]);
+				}
+			} finally {
+				out.close();
+			}
+			return count;
+		}
+
+		private static void mergeSort(
+				long[] keys,
+				long[] values,
+				long[] keyBuffer,
+				long[] valueBuffer,
+				int from,
+				int to) {
+			if (to - from < 2) {
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			mergeSort(keys, values, keyBuffer, valueBuffer, from, middle);
+			mergeSort(keys, values, keyBuffer, valueBuffer, middle, to);
+
+			int i = from;
+			int j = middle;
+			int k = from;
+			while (i < middle || j < to) {
+				if (j == to || (i < middle && keys[i] <= keys[j])) {
+					keyBuffer[k] = keys[i];
+					valueBuffer[k++] = values[i++];
+				} else {
+					keyBuffer[k] = keys[j];
+					valueBuffer[k++] = values[j++];
+				}
+			}
+			System.arraycopy(keyBuffer, from, keys, from, to - from);
+			System.arraycopy(valueBuffer, from, values, from, to - from);
+		}
+	}
+
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.Key;
+
+/**
+ * <p>
+ * Skips puts of items that are unchanged since the previous run and saves
+ * the digests of this run's items for the next one. See
+ * {@link DynamoDBDigestStore}.
+ * </p>
+ * 
+ * <p>
+ * A put is skipped and counted as {@link DynamoDBCounter#UNCHANGED_ITEMS}
+ * when the previous run's store holds the same digest for its key. The new
+ * store is written to a temporary file of the attempt once the underlying
+ * writer has been closed successfully, and then published by renaming it to
+ * the task's digest file. With staged output the writes only happen when the
+ * attempt commits, so DynamoDBOutputCommitter publishes the digests then.
+ * Publishing fails if the task's digest file exists, since it would hold
+ * the digests of another attempt or of an earlier run.
+ * </p>
+ */
+public class DynamoDBDigestWriter implements DynamoDBWriter {
+
+	private static final Log LOG = LogFactory.getLog(DynamoDBDigestWriter.class);
+
+	private final DynamoDBWriter writer;
+
+	private final DynamoDBDigestStore previous;
+
+	private final FileSystem fs;
+
+	private final Path output;
+
+	private final Path tmp;
+
+	private final DynamoDBCounters counters;
+
+	private final DynamoDBDigestStore.Builder builder = new DynamoDBDigestStore.Builder();
+
+	private boolean publishOnClose = true;
+
+	/**
+	 * @param writer
+	 *            Writer changed items are passed on to
+	 * @param previous
+	 *            Digests of the previous run, or null to write every item
+	 * @param fs
+	 *            File system the new digests are written to
+	 * @param output
+	 *            File the new digests are written to, or null to not save
+	 *            digests
+	 * @param tmp
+	 *            Temporary file the new digests are written to first
+	 * @param counters
+	 *            Counters incremented with skipped items
+	 */
+	public DynamoDBDigestWriter(
+			DynamoDBWriter writer,
+			DynamoDBDigestStore previous,
+			FileSystem fs,
+			Path output,
+			Path tmp,
+			DynamoDBCounters counters) {
+		this.writer = writer;
+		this.previous = previous;
+		this.fs = fs;
+		this.output = output;
+		this.tmp = tmp;
+		this.counters = counters;
+	}
+
+	/**
+	 * @param publish
+	 *            true to publish the digests on close, false to leave them in
+	 *            the temporary file for {@link #publish(FileSystem, Path, Path)}
+	 */
+	public void setPublishOnClose(boolean publish) {
+		this.publishOnClose = publish;
+	}
+
+	@Override
+	public void put(Key key, Map<String, AttributeValue> item)
+			throws IOException,
+			InterruptedException {
+		long keyDigest = DynamoDBDigestStore.digest(key);
+		long itemDigest = DynamoDBDigestStore.digest(item);
+		builder.put(keyDigest, itemDigest);
+		if (previous != null && previous.contains(keyDigest, itemDigest)) {
+			counters.increment(DynamoDBCounter.UNCHANGED_ITEMS, 1);
+			return;
+		}
+		writer.put(key, item);
+	}
+
+	@Override
+	public void delete(Key key) throws IOException, InterruptedException {
+		builder.delete(DynamoDBDigestStore.digest(key));
+		writer.delete(key);
+	}
+
+	@Override
+	public void flush() throws IOException, InterruptedException {
+		writer.flush();
+	}
+
+	/**
+	 * Closes the underlying writer and then saves the digests.
+	 */
+	@Override
+	public void close() throws IOException, InterruptedException {
+		writer.close();
+		if (null == output) {
+			return;
+		}
+
+		int count = builder.write(fs, tmp);
+		if (!publishOnClose) {
+			LOG.info("Wrote " + count + " item digests to " + tmp);
+			return;
+		}
+		publish(fs, tmp, output);
+		LOG.info("Saved " + count + " item digests to " + output);
+	}
+
+	/**
+	 * Publishes the digests an attempt wrote to its temporary file.
+	 * 
+	 * @param fs
+	 *            File system holding the digests
+	 * @param tmp
+	 *            Temporary file of the attempt
+	 * @param output
+	 *            Digest file of the task
+	 * @throws IOException
+	 *             The digest file exists or could not be renamed
+	 */
+	public static void publish(FileSystem fs, Path tmp, Path output)
+			throws IOException {
+		if (fs.exists(output) || !fs.rename(tmp, output)) {
+			fs.delete(tmp, false);
+			throw new IOException("Failed to publish item digests to "
+					+ output + ", the file exists");
+		}
+	}
+
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import org.apache.hadoop.mapreduce.Partitioner;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.willetinc.hadoop.mapreduce.dynamodb.io.DynamoDBKeyWritable;
+
+/**
+ * <p>
+ * Partitions records by their hash key value only, scrambled so that
+ * neighbouring hash keys go to different reducers.
+ * </p>
+ * 
+ * <p>
+ * All items of a hash key reach the same reducer, and sorted reducer input
+ * no longer means that every reducer writes the same narrow band of hash
+ * keys at the same time. Combine with
+ * {@link DynamoDBConfiguration#setWriteInterleaveSize(int)} to also spread
+ * the writes of each reducer across hash keys.
+ * </p>
+ */
+public class DynamoDBHashKeyPartitioner<K extends DynamoDBKeyWritable, V>
+		extends Partitioner<K, V> {
+
+	@Override
+	public int getPartition(K key, V value, int numPartitions) {
+		return (hash(key.getHashKeyValue()) & Integer.MAX_VALUE)
+				% numPartitions;
+	}
+
+	/**
+	 * @return Well mixed hash of a hash key value
+	 */
+	static int hash(AttributeValue hashKey) {
+		int h = null == hashKey ? 0 : hashKey.hashCode();
+		// MurmurHash3 finalizer
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+}
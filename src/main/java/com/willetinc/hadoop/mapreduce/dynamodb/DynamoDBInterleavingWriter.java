@@ -0,0 +1,140 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.Key;
+
+/**
+ * <p>
+ * Reorders puts and deletes so that consecutive writes go to different hash
+ * keys, spreading sorted output across DynamoDB partitions.
+ * </p>
+ * 
+ * <p>
+ * Up to windowSize writes are buffered and grouped by hash key. When the
+ * window is full, or on {@link #flush()}, they are passed on taking one
+ * write of every hash key in turn. Writes of the same hash key keep their
+ * order.
+ * </p>
+ */
+public class DynamoDBInterleavingWriter implements DynamoDBWriter {
+
+	private static class Op {
+
+		final Key key;
+
+		final Map<String, AttributeValue> item;
+
+		Op(Key key, Map<String, AttributeValue> item) {
+			this.key = key;
+			this.item = item;
+		}
+	}
+
+	private final DynamoDBWriter writer;
+
+	private final int windowSize;
+
+	private final Map<AttributeValue, LinkedList<Op>> groups = new LinkedHashMap<AttributeValue, LinkedList<Op>>();
+
+	private int size = 0;
+
+	/**
+	 * @param writer
+	 *            Writer the reordered writes are passed on to
+	 * @param windowSize
+	 *            Number of writes reordered at a time
+	 */
+	public DynamoDBInterleavingWriter(DynamoDBWriter writer, int windowSize) {
+		this.writer = writer;
+		this.windowSize = Math.max(1, windowSize);
+	}
+
+	@Override
+	public void put(Key key, Map<String, AttributeValue> item)
+			throws IOException,
+			InterruptedException {
+		add(new Op(key, item));
+	}
+
+	@Override
+	public void delete(Key key) throws IOException, InterruptedException {
+		add(new Op(key, null));
+	}
+
+	private void add(Op op) throws IOException, InterruptedException {
+		LinkedList<Op> group = groups.get(op.key.getHashKeyElement());
+		if (null == group) {
+			group = new LinkedList<Op>();
+			groups.put(op.key.getHashKeyElement(), group);
+		}
+		group.add(op);
+
+		if (++size >= windowSize) {
+			drain();
+		}
+	}
+
+	private void drain() throws IOException, InterruptedException {
+		while (!groups.isEmpty()) {
+			Iterator<LinkedList<Op>> it = groups.values().iterator();
+			while (it.hasNext()) {
+				LinkedList<Op> group = it.next();
+				Op op = group.removeFirst();
+				if (op.item != null) {
+					writer.put(op.key, op.item);
+				} else {
+					writer.delete(op.key);
+				}
+				if (group.isEmpty()) {
+					it.remove();
+				}
+			}
+		}
+		size = 0;
+	}
+
+	/**
+	 * Passes on all buffered writes and flushes the underlying writer.
+	 */
+	@Override
+	public void flush() throws IOException, InterruptedException {
+		drain();
+		writer.flush();
+	}
+
+	/**
+	 * Passes on all buffered writes and closes the underlying writer.
+	 */
+	@Override
+	public void close() throws IOException, InterruptedException {
+		try {
+			drain();
+		} finally {
+			writer.close();
+		}
+	}
+
+}
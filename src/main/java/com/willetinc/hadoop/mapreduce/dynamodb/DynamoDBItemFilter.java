@@ -0,0 +1,301 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.ComparisonOperator;
+import com.amazonaws.services.dynamodb.model.Condition;
+
+/**
+ * <p>
+ * Evaluates filter conditions against items on the client.
+ * </p>
+ * 
+ * <p>
+ * The 2011-12-05 Query API has no QueryFilter parameter, so query filters are
+ * applied by the record reader before items reach the mapper. Conditions
+ * follow the semantics of a Scan filter: a value of a different type than the
+ * condition never matches, except for NE and NOT_CONTAINS.
+ * </p>
+ */
+public class DynamoDBItemFilter {
+
+	private final Map<String, Condition> conditions;
+
+	private final Map<String, Types> types;
+
+	/**
+	 * @param conditions
+	 *            Conditions keyed by attribute name
+	 * @param types
+	 *            Type of each condition's values keyed by attribute name
+	 */
+	public DynamoDBItemFilter(
+			Map<String, Condition> conditions,
+			Map<String, Types> types) {
+		this.conditions = conditions;
+		this.types = types;
+	}
+
+	public boolean isEmpty() {
+		return conditions.isEmpty();
+	}
+
+	/**
+	 * @return Names of the attributes the conditions are evaluated against
+	 */
+	public Set<String> getAttributeNames() {
+		return conditions.keySet();
+	}
+
+	/**
+	 * Removes items that do not match every condition.
+	 * 
+	 * @param items
+	 *            Items to filter in place
+	 */
+	public void filter(Collection<Map<String, AttributeValue>> items) {
+		Iterator<Map<String, AttributeValue>> iterator = items.iterator();
+		while (iterator.hasNext()) {
+			if (!matches(iterator.next())) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return true if the item matches every condition
+	 */
+	public boolean matches(Map<String, AttributeValue> item) {
+		for (Map.Entry<String, Condition> entry : conditions.entrySet()) {
+			String attribute = entry.getKey();
+			if (!matches(
+					item.get(attribute),
+					types.get(attribute),
+					entry.getValue())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static boolean matches(
+			AttributeValue value,
+			Types type,
+			Condition condition) {
+		ComparisonOperator operator = ComparisonOperator.fromValue(condition
+				.getComparisonOperator());
+		List<AttributeValue> operands = condition.getAttributeValueList();
+
+		switch (operator) {
+		case NULL:
+			return value == null;
+		case NOT_NULL:
+			return value != null;
+		case NE:
+			return !isScalar(value, type)
+					|| compare(type, value, operands.get(0)) != 0;
+		case CONTAINS:
+			return contains(value, type, operands.get(0));
+		case NOT_CONTAINS:
+			return value == null || !contains(value, type, operands.get(0));
+		default:
+			break;
+		}
+
+		if (!isScalar(value, type)) {
+			return false;
+		}
+
+		switch (operator) {
+		case EQ:
+			return compare(type, value, operands.get(0)) == 0;
+		case LT:
+			return compare(type, value, operands.get(0)) < 0;
+		case LE:
+			return compare(type, value, operands.get(0)) <= 0;
+		case GT:
+			return compare(type, value, operands.get(0)) > 0;
+		case GE:
+			return compare(type, value, operands.get(0)) >= 0;
+		case BETWEEN:
+			return compare(type, value, operands.get(0)) >= 0
+					&& compare(type, value, operands.get(1)) <= 0;
+		case IN:
+			for (AttributeValue operand : operands) {
+				if (compare(type, value, operand) == 0) {
+					return true;
+				}
+			}
+			return false;
+		case BEGINS_WITH:
+			if (type == Types.STRING) {
+				return value.getS().startsWith(operands.get(0).getS());
+			} else if (type == Types.BINARY) {
+				ByteBuffer buf = value.getB();
+				ByteBuffer prefix = operands.get(0).getB();
+				return buf.remaining() >= prefix.remaining()
+						&& indexOf(buf, prefix) == 0;
+			}
+			return false;
+		default:
+			throw new IllegalArgumentException("Unsupported operator: "
+					+ operator);
+		}
+	}
+
+	private static boolean isScalar(AttributeValue value, Types type) {
+		if (value == null)
+			return false;
+
+		switch (type) {
+		case STRING:
+			return value.getS() != null;
+		case NUMBER:
+			return value.getN() != null;
+		case BINARY:
+			return value.getB() != null;
+		default:
+			return false;
+		}
+	}
+
+	private static boolean contains(
+			AttributeValue value,
+			Types type,
+			AttributeValue operand) {
+		if (value == null)
+			return false;
+
+		switch (type) {
+		case STRING:
+			if (value.getS() != null) {
+				return value.getS().contains(operand.getS());
+			}
+			return value.getSS() != null
+					&& value.getSS().contains(operand.getS());
+		case NUMBER:
+			if (value.getNS() != null) {
+				BigDecimal number = new BigDecimal(operand.getN());
+				for (String n : value.getNS()) {
+					if (number.compareTo(new BigDecimal(n)) == 0) {
+						return true;
+					}
+				}
+			}
+			return false;
+		case BINARY:
+			if (value.getB() != null) {
+				return indexOf(value.getB(), operand.getB()) >= 0;
+			}
+			return value.getBS() != null
+					&& value.getBS().contains(operand.getB());
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Compares values in DynamoDB order: numbers numerically, strings by
+	 * UTF-8 bytes (equivalent to code point order) and binaries as unsigned
+	 * bytes.
+	 */
+	static int compare(Types type, AttributeValue a, AttributeValue b) {
+		switch (type) {
+		case STRING:
+			return compareCodePoints(a.getS(), b.getS());
+		case NUMBER:
+			return new BigDecimal(a.getN()).compareTo(new BigDecimal(b.getN()));
+		case BINARY:
+			return compareUnsigned(a.getB(), b.getB());
+		default:
+			throw new IllegalArgumentException(
+					"Only String, Number and Binary types are supported");
+		}
+	}
+
+	private static int compareCodePoints(String a, String b) {
+		int i = 0;
+		int j = 0;
+		while (i < a.length() && j < b.length()) {
+			int ca = a.codePointAt(i);
+			int cb = b.codePointAt(j);
+			if (ca != cb) {
+				return ca < cb ? -1 : 1;
+			}
+			i += Character.charCount(ca);
+			j += Character.charCount(cb);
+		}
+		return (a.length() - i) - (b.length() - j);
+	}
+
+	private static int compareUnsigned(ByteBuffer a, ByteBuffer b) {
+		int length = Math.min(a.remaining(), b.remaining());
+		for (int i = 0; i < length; i++) {
+			int ba = a.get(a.position() + i) & 0xFF;
+			int bb = b.get(b.position() + i) & 0xFF;
+			if (ba != bb) {
+				return ba - bb;
+			}
+		}
+		return a.remaining() - b.remaining();
+	}
+
+	private static int indexOf(ByteBuffer buf, ByteBuffer pattern) {
+		int n = buf.remaining();
+		int m = pattern.remaining();
+		outer: for (int i = 0; i <= n - m; i++) {
+			for (int j = 0; j < m; j++) {
+				if (buf.get(buf.position() + i + j) != pattern
+						.get(pattern.position() + j)) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return Filter for the conditions stored under the specified property
+	 */
+	public static DynamoDBItemFilter create(
+			Configuration conf,
+			String property) {
+		Map<String, Condition> conditions = DynamoDBConfiguration
+				.getFilterConditions(conf, property);
+		Map<String, Types> types = new HashMap<String, Types>();
+		for (String attribute : conditions.keySet()) {
+			types.put(attribute, DynamoDBConfiguration.getFilterType(
+					conf,
+					property,
+					attribute));
+		}
+		return new DynamoDBItemFilter(conditions, types);
+	}
+}
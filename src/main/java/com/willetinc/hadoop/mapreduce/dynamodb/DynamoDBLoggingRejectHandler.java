@@ -0,0 +1,41 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.Key;
+
+/**
+ * Logs the key and size of rejected items and drops them.
+ */
+public class DynamoDBLoggingRejectHandler implements DynamoDBRejectHandler {
+
+	private static final Log LOG = LogFactory
+			.getLog(DynamoDBLoggingRejectHandler.class);
+
+	@Override
+	public void reject(Key key, Map<String, AttributeValue> item, long size) {
+		LOG.warn("Dropped item " + key + " of " + size + " bytes");
+	}
+
+}
@@ -0,0 +1,238 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalDirAllocator;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.util.DiskChecker.DiskErrorException;
+
+import com.amazonaws.services.dynamodb.AmazonDynamoDBClient;
+
+/**
+ * <p>
+ * Commits output written to a DynamoDB table. Unlike FileOutputCommitter no
+ * output path is needed.
+ * </p>
+ * 
+ * <p>
+ * Output is normally written directly to the table by the record writer, in
+ * which case there is nothing to commit. When output is staged (see
+ * {@link DynamoDBConfiguration#setOutputStaged(boolean)}) the record writer
+ * writes to a file in the task's local directories instead, and the file is
+ * only replayed against the table by the attempt the JobTracker allows to
+ * commit. Output of failed, killed and speculative attempts is discarded.
+ * </p>
+ */
+public class DynamoDBOutputCommitter extends OutputCommitter {
+
+	private static final Log LOG = LogFactory
+			.getLog(DynamoDBOutputCommitter.class);
+
+	private static final String STAGED_FILE = "staged";
+
+	private static final LocalDirAllocator LOCAL_DIRS = new LocalDirAllocator(
+			"mapred.local.dir");
+
+	@Override
+	public void setupJob(JobContext context) throws IOException {
+	}
+
+	@Override
+	public void setupTask(TaskAttemptContext context) throws IOException {
+	}
+
+	@Override
+	public boolean needsTaskCommit(TaskAttemptContext context)
+			throws IOException {
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(
+				context.getConfiguration());
+		return dbConf.isOutputStaged()
+				&& null != getStagingFileToRead(context);
+	}
+
+	@Override
+	public void commitTask(TaskAttemptContext context) throws IOException {
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(
+				context.getConfiguration());
+		AmazonDynamoDBClient client = DynamoDBClientPool.getInstance()
+				.acquire(dbConf);
+		try {
+			commitTask(context, client, dbConf);
+		} finally {
+			DynamoDBClientPool.getInstance().release(client);
+		}
+	}
+
+	/**
+	 * Replays the task's staged output against the output table.
+	 */
+	void commitTask(
+			TaskAttemptContext context,
+			AmazonDynamoDBClient client,
+			DynamoDBConfiguration dbConf) throws IOException {
+		Path path = getStagingFileToRead(context);
+		if (null == path) {
+			throw new IOException("No staged output found for "
+					+ context.getTaskAttemptID());
+		}
+		FileSystem fs = FileSystem.getLocal(context.getConfiguration());
+
+		String tableName = dbConf.getOutputTableName();
+		DynamoDBRetryPolicy retryPolicy = new DynamoDBRetryPolicy(
+				dbConf,
+				new DynamoDBCounters(context));
+		// a long replay would otherwise hit the task timeout
+		retryPolicy.setProgressable(context);
+		DynamoDBWriter writer = createWriter(
+				client,
+				tableName,
+				dbConf,
+				retryPolicy,
+				context);
+		try {
+			long count = DynamoDBStagedWriter.replay(
+					fs,
+					path,
+					writer,
+					context);
+			writer.close();
+			LOG.info("Committed " + count + " staged records to "
+					+ tableName);
+			publishDigests(context, dbConf);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted committing " + path, e);
+		} finally {
+			retryPolicy.getCounters().log();
+		}
+
+		fs.delete(path.getParent(), true);
+	}
+
+	/**
+	 * Creates the writer a task's staged output is replayed to.
+	 */
+	DynamoDBWriter createWriter(
+			AmazonDynamoDBClient client,
+			String tableName,
+			DynamoDBConfiguration dbConf,
+			DynamoDBRetryPolicy retryPolicy,
+			TaskAttemptContext context) throws IOException {
+		return DynamoDBOutputFormat.createWriter(
+				client,
+				tableName,
+				dbConf,
+				retryPolicy,
+				context);
+	}
+
+	/**
+	 * Publishes the item digests the attempt's record writer left for the
+	 * commit, once its writes are in the table.
+	 */
+	private static void publishDigests(
+			TaskAttemptContext context,
+			DynamoDBConfiguration dbConf) throws IOException {
+		String output = dbConf.getDigestOutputPath();
+		if (null == output) {
+			return;
+		}
+		Path tmp = DynamoDBOutputFormat.getDigestTmpFile(
+				output,
+				context.getTaskAttemptID());
+		FileSystem fs = tmp.getFileSystem(context.getConfiguration());
+		if (fs.exists(tmp)) {
+			Path digests = DynamoDBOutputFormat.getDigestFile(
+					output,
+					context.getTaskAttemptID());
+			DynamoDBDigestWriter.publish(fs, tmp, digests);
+			LOG.info("Published item digests to " + digests);
+		}
+	}
+
+	@Override
+	public void abortTask(TaskAttemptContext context) throws IOException {
+		Path path = getStagingFileToRead(context);
+		if (null != path) {
+			FileSystem.getLocal(context.getConfiguration()).delete(
+					path.getParent(),
+					true);
+		}
+
+		// digests of writes that were never made
+		String output = new DynamoDBConfiguration(context.getConfiguration())
+				.getDigestOutputPath();
+		if (null != output) {
+			Path tmp = DynamoDBOutputFormat.getDigestTmpFile(
+					output,
+					context.getTaskAttemptID());
+			tmp.getFileSystem(context.getConfiguration()).delete(tmp, false);
+		}
+	}
+
+	/**
+	 * @return Local file a task attempt's output is staged in
+	 */
+	static Path getStagingFileForWrite(TaskAttemptContext context)
+			throws IOException {
+		return getLocalPathForWrite(context, STAGED_FILE);
+	}
+
+	/**
+	 * @param name
+	 *            Name of the path within the task attempt's local directory
+	 * @return Local path for temporary files of a task attempt's output
+	 */
+	static Path getLocalPathForWrite(TaskAttemptContext context, String name)
+			throws IOException {
+		return LOCAL_DIRS.getLocalPathForWrite(
+				"dynamodb/" + context.getTaskAttemptID() + "/" + name,
+				context.getConfiguration());
+	}
+
+	/**
+	 * @return Local file a task attempt's output was staged in or null if
+	 *         the attempt staged no output
+	 */
+	private static Path getStagingFileToRead(TaskAttemptContext context)
+			throws IOException {
+		// LocalDirAllocator.ifExists fails before the allocator has been
+		// initialized, as in a task cleanup attempt
+		try {
+			return LOCAL_DIRS.getLocalPathToRead(
+					getStagingPath(context.getTaskAttemptID()),
+					context.getConfiguration());
+		} catch (DiskErrorException e) {
+			return null;
+		}
+	}
+
+	private static String getStagingPath(TaskAttemptID attemptId) {
+		return "dynamodb/" + attemptId + "/" + STAGED_FILE;
+	}
+
+}
@@ -20,17 +20,27 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.apache.hadoop.mapreduce.lib.output.FileOutputCommitter;
-import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.FileAlreadyExistsException;
+import org.apache.hadoop.mapred.InvalidJobConfException;
 import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.OutputCommitter;
 import org.apache.hadoop.mapreduce.OutputFormat;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskID;
+import org.apache.hadoop.util.ReflectionUtils;
 
 import com.amazonaws.services.dynamodb.AmazonDynamoDBClient;
 import com.amazonaws.services.dynamodb.model.AttributeValue;
-import com.amazonaws.services.dynamodb.model.PutItemRequest;
+import com.amazonaws.services.dynamodb.model.Key;
+import com.willetinc.hadoop.mapreduce.dynamodb.io.AttributeValueWritable;
+import com.willetinc.hadoop.mapreduce.dynamodb.io.DynamoDBItemWritable;
 import com.willetinc.hadoop.mapreduce.dynamodb.io.DynamoDBKeyWritable;
 
 /**
@@ -39,20 +49,51 @@ import com.willetinc.hadoop.mapreduce.dynamodb.io.DynamoDBKeyWritable;
 public class DynamoDBOutputFormat<K extends DynamoDBKeyWritable, V> extends
 		OutputFormat<K, V> {
 
+	private static final Log LOG = LogFactory.getLog(DynamoDBOutputFormat.class);
+
 	@Override
 	public void checkOutputSpecs(JobContext context)
 			throws IOException,
 			InterruptedException {
+		checkDigestOutput(new DynamoDBConfiguration(context.getConfiguration()));
+	}
+
+	/**
+	 * Fails when the digest output directory exists or is the digest input
+	 * directory. Digests left in it by an earlier run would be kept and make
+	 * the next run skip items that changed.
+	 */
+	static void checkDigestOutput(DynamoDBConfiguration dbConf)
+			throws IOException {
+		String output = dbConf.getDigestOutputPath();
+		if (null == output) {
+			return;
+		}
 
+		Configuration conf = dbConf.getConf();
+		Path outputPath = new Path(output);
+		FileSystem fs = outputPath.getFileSystem(conf);
+		outputPath = fs.makeQualified(outputPath);
+		String input = dbConf.getDigestInputPath();
+		if (null != input) {
+			Path inputPath = new Path(input);
+			inputPath = inputPath.getFileSystem(conf).makeQualified(inputPath);
+			if (inputPath.equals(outputPath)) {
+				throw new InvalidJobConfException("Digest output directory "
+						+ output + " is the digest input directory");
+			}
+		}
+		if (fs.exists(outputPath)) {
+			throw new FileAlreadyExistsException("Digest output directory "
+					+ output + " already exists");
+		}
 	}
 
 	@Override
 	public OutputCommitter getOutputCommitter(TaskAttemptContext context)
 			throws IOException,
 			InterruptedException {
-		return new FileOutputCommitter(
-				FileOutputFormat.getOutputPath(context),
-				context);
+		return new DynamoDBOutputCommitter();
 	}
 
 	public class DynamoDBRecordWriter extends RecordWriter<K, V> {
@@ -61,21 +102,48 @@ public class DynamoDBOutputFormat<K extends DynamoDBKeyWritable, V> extends
 
 		private String tableName;
 
+		private DynamoDBRetryPolicy retryPolicy;
+
+		private DynamoDBWriter writer;
+
 		public DynamoDBRecordWriter() {
 		};
 
 		public DynamoDBRecordWriter(AmazonDynamoDBClient client,
 				String tableName) {
+			this(client, tableName, new DynamoDBRetryPolicy(
+					new DynamoDBConfiguration(new Configuration(false)),
+					new DynamoDBCounters()));
+		}
+
+		private DynamoDBRecordWriter(AmazonDynamoDBClient client,
+				String tableName, DynamoDBRetryPolicy retryPolicy) {
+			this(client, tableName, new DynamoDBBatchWriter(
+					client,
+					tableName,
+					1,
+					0,
+					retryPolicy), retryPolicy);
+		}
+
+		public DynamoDBRecordWriter(AmazonDynamoDBClient client,
+				String tableName, DynamoDBWriter writer,
+				DynamoDBRetryPolicy retryPolicy) {
 			this.client = client;
 			this.tableName = tableName;
+			this.retryPolicy = retryPolicy;
+			this.writer = writer;
 		}
 
 		@Override
 		public void close(TaskAttemptContext context)
 				throws IOException,
 				InterruptedException {
-			if (null != client) {
-				client.shutdown();
+			try {
+				writer.close();
+			} finally {
+				retryPolicy.getCounters().log();
+				DynamoDBClientPool.getInstance().release(client);
 			}
 		}
 		
@@ -87,17 +155,22 @@ public class DynamoDBOutputFormat<K extends DynamoDBKeyWritable, V> extends
 			return tableName;
 		}
 
+		public DynamoDBWriter getWriter() {
+			return writer;
+		}
+
 		@Override
 		public void write(K key, V value)
 				throws IOException,
 				InterruptedException {
 			Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
 			key.write(item);
+			if (isReuseValues(key)) {
+				// writers buffer the item past the next readFields
+				item = AttributeValueIOUtils.copyOf(item);
+			}
 
-			PutItemRequest putItemRequest = new PutItemRequest().withTableName(
-					tableName).withItem(item);
-
-			client.putItem(putItemRequest);
+			writer.put(getKey(key), item);
 		}
 
 	}
@@ -108,9 +181,309 @@ public class DynamoDBOutputFormat<K extends DynamoDBKeyWritable, V> extends
 			InterruptedException {
 		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(
 				context.getConfiguration());
-		return new DynamoDBRecordWriter(
-				dbConf.getAmazonDynamoDBClient(),
-				dbConf.getOutputTableName());
+		if (dbConf.isOutputStaged()) {
+			// written to the table by DynamoDBOutputCommitter.commitTask
+			DynamoDBCounters counters = new DynamoDBCounters(context);
+			return createRecordWriter(
+					null,
+					dbConf.getOutputTableName(),
+					createDigestWriter(
+							new DynamoDBStagedWriter(
+									FileSystem.getLocal(context.getConfiguration()),
+									DynamoDBOutputCommitter
+											.getStagingFileForWrite(context)),
+							dbConf,
+							context,
+							counters),
+					new DynamoDBRetryPolicy(dbConf, counters));
+		}
+		return getRecordWriter(
+				DynamoDBClientPool.getInstance().acquire(dbConf),
+				dbConf,
+				new DynamoDBCounters(context),
+				context);
+	}
+
+	RecordWriter<K, V> getRecordWriter(
+			AmazonDynamoDBClient client,
+			DynamoDBConfiguration dbConf,
+			DynamoDBCounters counters) throws IOException {
+		return getRecordWriter(client, dbConf, counters, null);
+	}
+
+	RecordWriter<K, V> getRecordWriter(
+			AmazonDynamoDBClient client,
+			DynamoDBConfiguration dbConf,
+			DynamoDBCounters counters,
+			TaskAttemptContext context) throws IOException {
+		String tableName = dbConf.getOutputTableName();
+		DynamoDBRetryPolicy retryPolicy = new DynamoDBRetryPolicy(dbConf, counters);
+		// the record writer releases the client once it is created
+		try {
+			DynamoDBWriter writer = createWriter(
+					client,
+					tableName,
+					dbConf,
+					retryPolicy,
+					context);
+			if (null != context) {
+				writer = createDigestWriter(writer, dbConf, context, counters);
+			}
+			return createRecordWriter(client, tableName, writer, retryPolicy);
+		} catch (IOException e) {
+			DynamoDBClientPool.getInstance().release(client);
+			throw e;
+		} catch (RuntimeException e) {
+			DynamoDBClientPool.getInstance().release(client);
+			throw e;
+		}
+	}
+
+	/**
+	 * Creates the record writer passing records to a configured writer.
+	 * Subclasses may override this to write records differently.
+	 */
+	protected DynamoDBRecordWriter createRecordWriter(
+			AmazonDynamoDBClient client,
+			String tableName,
+			DynamoDBWriter writer,
+			DynamoDBRetryPolicy retryPolicy) {
+		return new DynamoDBRecordWriter(client, tableName, writer, retryPolicy);
+	}
+
+	static DynamoDBWriter createWriter(
+			AmazonDynamoDBClient client,
+			String tableName,
+			DynamoDBConfiguration dbConf,
+			DynamoDBRetryPolicy retryPolicy) throws IOException {
+		return createWriter(client, tableName, dbConf, retryPolicy, null);
+	}
+
+	/**
+	 * Creates the writer configured for a job, which batches writes, sends
+	 * them from background threads, spills them to local disk, interleaves
+	 * hash keys and coalesces writes of the same key if enabled.
+	 * 
+	 * @param client
+	 *            Client used to write
+	 * @param tableName
+	 *            Table written to
+	 * @param dbConf
+	 *            DynamoDB job configuration
+	 * @param retryPolicy
+	 *            Policy retrying failed writes, shared by all threads
+	 * @param context
+	 *            Task attempt writing, or null to never spill writes
+	 * @return Configured writer
+	 */
+	static DynamoDBWriter createWriter(
+			final AmazonDynamoDBClient client,
+			final String tableName,
+			DynamoDBConfiguration dbConf,
+			final DynamoDBRetryPolicy retryPolicy,
+			TaskAttemptContext context) throws IOException {
+		final int batchSize = dbConf.getWriteBatchSize();
+		final long flushInterval = dbConf.getWriteFlushInterval();
+		final DynamoDBThroughputLimiter limiter = createWriteLimiter(
+				client,
+				tableName,
+				dbConf);
+		Class<? extends DynamoDBRejectHandler> rejectHandlerClass = dbConf
+				.getRejectHandlerClass();
+		final DynamoDBRejectHandler rejectHandler = null == rejectHandlerClass ? null
+				: ReflectionUtils.newInstance(rejectHandlerClass, dbConf.getConf());
+		int threads = dbConf.getWriteThreads();
+		DynamoDBWriter writer;
+		if (threads <= 0) {
+			DynamoDBBatchWriter batchWriter = new DynamoDBBatchWriter(
+					client,
+					tableName,
+					batchSize,
+					flushInterval,
+					retryPolicy);
+			batchWriter.setThroughputLimiter(limiter);
+			batchWriter.setRejectHandler(rejectHandler);
+			writer = batchWriter;
+		} else {
+			writer = new DynamoDBAsyncWriter(
+					new DynamoDBAsyncWriter.WriterFactory() {
+						@Override
+						public DynamoDBWriter createWriter() {
+							DynamoDBBatchWriter writer = new DynamoDBBatchWriter(
+									client,
+									tableName,
+									batchSize,
+									flushInterval,
+									retryPolicy);
+							writer.setThroughputLimiter(limiter);
+							writer.setRejectHandler(rejectHandler);
+							return writer;
+						}
+					},
+					threads,
+					dbConf.getWriteQueueSize(),
+					flushInterval,
+					"DynamoDB writer " + tableName);
+		}
+
+		if (null != context && dbConf.isWriteSpillEnabled()) {
+			writer = new DynamoDBSpillWriter(
+					writer,
+					FileSystem.getLocal(dbConf.getConf()),
+					DynamoDBOutputCommitter.getLocalPathForWrite(
+							context,
+							"spill"),
+					dbConf.getWriteQueueSize(),
+					dbConf.getWriteSpillSegmentSize(),
+					context,
+					"DynamoDB spill " + tableName);
+		}
+
+		int interleaveSize = dbConf.getWriteInterleaveSize();
+		if (interleaveSize > 0) {
+			writer = new DynamoDBInterleavingWriter(writer, interleaveSize);
+		}
+
+		int coalesceSize = dbConf.getWriteCoalesceSize();
+		if (coalesceSize > 0) {
+			writer = new DynamoDBCoalescingWriter(
+					writer,
+					coalesceSize,
+					dbConf.getWriteCoalesceWindow(),
+					retryPolicy.getCounters());
+		}
+		return writer;
+	}
+
+	/**
+	 * Wraps a writer to skip items unchanged since the previous run and to
+	 * save the item digests of this run, if either is configured. A task
+	 * reads and writes the digests named after its type and index.
+	 * 
+	 * @return Digest writer, or writer if digests are not used
+	 */
+	static DynamoDBWriter createDigestWriter(
+			DynamoDBWriter writer,
+			DynamoDBConfiguration dbConf,
+			TaskAttemptContext context,
+			DynamoDBCounters counters) throws IOException {
+		String input = dbConf.getDigestInputPath();
+		String output = dbConf.getDigestOutputPath();
+		if (null == input && null == output) {
+			return writer;
+		}
+
+		Configuration conf = dbConf.getConf();
+		TaskAttemptID attemptId = context.getTaskAttemptID();
+
+		DynamoDBDigestStore previous = null;
+		if (null != input) {
+			Path path = getDigestFile(input, attemptId);
+			FileSystem fs = path.getFileSystem(conf);
+			if (fs.exists(path)) {
+				previous = DynamoDBDigestStore.read(fs, path);
+				LOG.info("Read " + previous.size() + " item digests from "
+						+ path);
+			} else {
+				LOG.info("No item digests in " + path
+						+ ", writing every item");
+			}
+		}
+
+		FileSystem fs = null;
+		Path outputFile = null;
+		Path tmp = null;
+		if (null != output) {
+			outputFile = getDigestFile(output, attemptId);
+			tmp = getDigestTmpFile(output, attemptId);
+			fs = outputFile.getFileSystem(conf);
+		}
+		DynamoDBDigestWriter digestWriter = new DynamoDBDigestWriter(
+				writer,
+				previous,
+				fs,
+				outputFile,
+				tmp,
+				counters);
+		// staged digests are published by DynamoDBOutputCommitter.commitTask
+		digestWriter.setPublishOnClose(!dbConf.isOutputStaged());
+		return digestWriter;
+	}
+
+	/**
+	 * @return File holding the digests of a task in a digest directory
+	 */
+	static Path getDigestFile(String dir, TaskAttemptID attemptId) {
+		TaskID taskId = attemptId.getTaskID();
+		return new Path(dir, String.format(
+				"digest-%s-%05d",
+				taskId.isMap() ? "m" : "r",
+				taskId.getId()));
+	}
+
+	/**
+	 * @return File an attempt writes its digests to before they are published
+	 */
+	static Path getDigestTmpFile(String dir, TaskAttemptID attemptId) {
+		return new Path(dir, "_" + attemptId);
+	}
+
+	/**
+	 * Creates the limiter pacing a task's writes if a write throughput
+	 * percentage is configured. The provisioned write capacity is divided
+	 * between the reduce tasks, or between the map tasks of a map only job.
+	 * 
+	 * @return Write limiter or null if writes are not limited
+	 */
+	static DynamoDBThroughputLimiter createWriteLimiter(
+			AmazonDynamoDBClient client,
+			String tableName,
+			DynamoDBConfiguration dbConf) {
+		float percent = dbConf.getWriteThroughputPercent();
+		if (percent <= 0) {
+			return null;
+		}
+
+		Configuration conf = dbConf.getConf();
+		int numTasks = conf.getInt("mapred.reduce.tasks", 1);
+		if (numTasks <= 0) {
+			numTasks = conf.getInt("mapred.map.tasks", 1);
+		}
+		return DynamoDBThroughputLimiter.create(
+				client,
+				tableName,
+				percent / 100,
+				numTasks,
+				false);
+	}
+
+	/**
+	 * @param key
+	 *            Record written to the table
+	 * @return Primary key of the record
+	 */
+	static Key getKey(DynamoDBKeyWritable key) {
+		if (isReuseValues(key)) {
+			// writers keep keys in hash structures, copy recycled values
+			return new Key(
+					AttributeValueIOUtils.copyOf(key.getHashKeyValue()),
+					key.hasRangeKey() ? AttributeValueIOUtils.copyOf(key
+							.getRangeKeyValue()) : null);
+		}
+		return new Key(key.getHashKeyValue(), key.hasRangeKey() ? key
+				.getRangeKeyValue() : null);
+	}
+
+	/**
+	 * @return true if the values of key may be changed by its next readFields
+	 * @see AttributeValueWritable#setReuseValues(boolean)
+	 */
+	static boolean isReuseValues(DynamoDBKeyWritable key) {
+		if (key instanceof DynamoDBItemWritable) {
+			return ((DynamoDBItemWritable) key).isReuseValues();
+		}
+		return key.getHashKey().isReuseValues()
+				|| (key.hasRangeKey() && key.getRangeKey().isReuseValues());
 	}
 
 	/**
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.Key;
+
+/**
+ * A single page of items returned by a Scan or Query request.
+ */
+public class DynamoDBPage {
+
+	private final List<Map<String, AttributeValue>> items;
+
+	private final Key lastEvaluatedKey;
+
+	private final Double consumedCapacityUnits;
+
+	private final int scannedCount;
+
+	private long size = -1;
+
+	public DynamoDBPage(
+			List<Map<String, AttributeValue>> items,
+			Key lastEvaluatedKey) {
+		this(items, lastEvaluatedKey, null);
+	}
+
+	public DynamoDBPage(
+			List<Map<String, AttributeValue>> items,
+			Key lastEvaluatedKey,
+			Double consumedCapacityUnits) {
+		this(items, lastEvaluatedKey, consumedCapacityUnits, -1);
+	}
+
+	/**
+	 * @param scannedCount
+	 *            Number of items evaluated before filters removed items, less
+	 *            than 0 if unknown
+	 */
+	public DynamoDBPage(
+			List<Map<String, AttributeValue>> items,
+			Key lastEvaluatedKey,
+			Double consumedCapacityUnits,
+			int scannedCount) {
+		this.items = items;
+		this.lastEvaluatedKey = lastEvaluatedKey;
+		this.consumedCapacityUnits = consumedCapacityUnits;
+		this.scannedCount = scannedCount;
+	}
+
+	public List<Map<String, AttributeValue>> getItems() {
+		return items;
+	}
+
+	/**
+	 * @return Key to continue reading from or null if this is the last page
+	 */
+	public Key getLastEvaluatedKey() {
+		return lastEvaluatedKey;
+	}
+
+	/**
+	 * @return Read capacity units consumed by the request or null if unknown
+	 */
+	public Double getConsumedCapacityUnits() {
+		return consumedCapacityUnits;
+	}
+
+	/**
+	 * @return Number of items read from the table for this page, including
+	 *         items a scan filter or query filter removed
+	 */
+	public int getScannedCount() {
+		return Math.max(items.size(), scannedCount);
+	}
+
+	/**
+	 * @return Approximate size of the items in this page in bytes
+	 */
+	public long getSize() {
+		if (size < 0) {
+			long total = 0;
+			for (Map<String, AttributeValue> item : items) {
+				total += AttributeValueIOUtils.sizeOf(item);
+			}
+			size = total;
+		}
+		return size;
+	}
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.amazonaws.services.dynamodb.model.Key;
+
+/**
+ * <p>
+ * Fetches pages of a Scan or Query on a background thread so the next page
+ * is already available when the record reader drains the current one.
+ * </p>
+ * 
+ * <p>
+ * Fetched pages are held in a queue bounded both by a number of pages and by
+ * an approximate number of bytes. A single page is always admitted so pages
+ * larger than the byte limit cannot stall the reader.
+ * </p>
+ */
+public class DynamoDBPagePrefetcher implements Runnable {
+
+	private static final Log LOG = LogFactory
+			.getLog(DynamoDBPagePrefetcher.class);
+
+	/**
+	 * Source of pages read by the prefetcher.
+	 */
+	public interface PageFetcher {
+
+		DynamoDBPage fetchPage(Key exclusiveStartKey)
+				throws InterruptedException;
+
+	}
+
+	private final PageFetcher fetcher;
+
+	private final int maxPages;
+
+	private final long maxBytes;
+
+	private final LinkedList<DynamoDBPage> pages = new LinkedList<DynamoDBPage>();
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition notEmpty = lock.newCondition();
+
+	private final Condition notFull = lock.newCondition();
+
+	private long queuedBytes = 0;
+
+	private boolean finished = false;
+
+	private boolean closed = false;
+
+	private Throwable error;
+
+	private Key startKey;
+
+	private Thread thread;
+
+	public DynamoDBPagePrefetcher(
+			PageFetcher fetcher,
+			Key startKey,
+			int maxPages,
+			long maxBytes) {
+		this.fetcher = fetcher;
+		this.startKey = startKey;
+		this.maxPages = Math.max(1, maxPages);
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Starts fetching pages on a daemon thread.
+	 * 
+	 * @param name
+	 *            Name of the background thread
+	 */
+	public void start(String name) {
+		thread = new Thread(this, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public void run() {
+		Key exclusiveStartKey = startKey;
+		try {
+			do {
+				DynamoDBPage page = fetcher.fetchPage(exclusiveStartKey);
+				if (!put(page)) {
+					return;
+				}
+				exclusiveStartKey = page.getLastEvaluatedKey();
+			} while (exclusiveStartKey != null);
+		} catch (InterruptedException e) {
+			// closed while waiting for space in the queue
+		} catch (Throwable t) {
+			lock.lock();
+			try {
+				if (!closed) {
+					LOG.error("Error prefetching page", t);
+					error = t;
+				}
+			} finally {
+				lock.unlock();
+			}
+		} finally {
+			lock.lock();
+			try {
+				finished = true;
+				notEmpty.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	private boolean put(DynamoDBPage page) throws InterruptedException {
+		long size = page.getSize();
+		lock.lock();
+		try {
+			while (!closed
+					&& !pages.isEmpty()
+					&& (pages.size() >= maxPages || queuedBytes + size > maxBytes)) {
+				notFull.await();
+			}
+
+			if (closed) {
+				return false;
+			}
+
+			pages.addLast(page);
+			queuedBytes += size;
+			notEmpty.signalAll();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Blocks until the next page is available.
+	 * 
+	 * @return Next page in key order
+	 * @throws IOException
+	 *             No further pages will be fetched
+	 * @throws InterruptedException
+	 *             Interrupted while waiting for a page
+	 */
+	public DynamoDBPage next() throws IOException, InterruptedException {
+		lock.lock();
+		try {
+			while (pages.isEmpty() && !finished) {
+				notEmpty.await();
+			}
+
+			if (pages.isEmpty()) {
+				if (error instanceof RuntimeException) {
+					throw (RuntimeException) error;
+				} else if (error instanceof Error) {
+					throw (Error) error;
+				} else if (error != null) {
+					throw new IOException(error);
+				}
+				throw new IOException("No more pages to fetch");
+			}
+
+			DynamoDBPage page = pages.removeFirst();
+			queuedBytes -= page.getSize();
+			notFull.signalAll();
+			return page;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stops the background thread and discards queued pages.
+	 */
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			pages.clear();
+			queuedBytes = 0;
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * <p>
+ * Adjusts the Limit of Scan and Query requests so pages take about a target
+ * time to return.
+ * </p>
+ * 
+ * <p>
+ * After every page the limit is scaled by the ratio of the target latency to
+ * the observed latency, by at most a factor of two in either direction. The
+ * limit only grows when the previous page was full, and never beyond the
+ * number of items that fit into the 1 MB DynamoDB returns per request. A
+ * throttled request halves the limit, smoothing capacity consumption while
+ * the table is at its provisioned throughput.
+ * </p>
+ * 
+ * <p>
+ * The limit counts the items DynamoDB reads, before a scan filter or query
+ * filter removes items. The items a page returns are taken as a sample of
+ * the items read to estimate their size. Until a page returned an item the
+ * size is unknown and the limit does not grow.
+ * </p>
+ * 
+ * <p>
+ * Pages may be fetched by the prefetch thread, so all methods are
+ * synchronized.
+ * </p>
+ */
+public class DynamoDBPageSizeController {
+
+	private static final Log LOG = LogFactory
+			.getLog(DynamoDBPageSizeController.class);
+
+	/** Maximum response size of a Scan or Query request */
+	static final long MAX_PAGE_BYTES = 1024L * 1024L;
+
+	private static final double MAX_FACTOR = 2.0;
+
+	private final long targetLatency;
+
+	private int limit;
+
+	private long itemSize = 0;
+
+	/**
+	 * @param initialLimit
+	 *            Limit of the first request
+	 * @param targetLatency
+	 *            Target latency in milliseconds, the limit stays fixed if this
+	 *            is 0 or less
+	 */
+	public DynamoDBPageSizeController(int initialLimit, long targetLatency) {
+		if (initialLimit <= 0) {
+			throw new IllegalArgumentException("Limit must be greater than 0");
+		}
+		this.limit = initialLimit;
+		this.targetLatency = targetLatency;
+	}
+
+	/**
+	 * @return Limit of the next request
+	 */
+	public synchronized int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Adjusts the limit after a page was read.
+	 * 
+	 * @param page
+	 *            Page returned by DynamoDB
+	 * @param latency
+	 *            Time in milliseconds the request took
+	 */
+	public synchronized void update(DynamoDBPage page, long latency) {
+		if (targetLatency <= 0) {
+			return;
+		}
+
+		double factor = (double) targetLatency / Math.max(1, latency);
+		factor = Math.min(MAX_FACTOR, Math.max(1.0 / MAX_FACTOR, factor));
+
+		int items = page.getItems().size();
+		if (items > 0) {
+			itemSize = Math.max(1, page.getSize() / items);
+		}
+
+		boolean full = page.getLastEvaluatedKey() != null;
+		if (factor > 1.0 && (!full || itemSize == 0)) {
+			// a page that ended early says nothing about larger pages, and
+			// without an item size the 1 MB cap is unknown
+			return;
+		}
+
+		int next = Math.max(1, (int) (limit * factor));
+		if (factor > 1.0) {
+			next = (int) Math.min(next, Math.max(limit, MAX_PAGE_BYTES
+					/ itemSize));
+		}
+		setLimit(next, latency + " ms");
+	}
+
+	/**
+	 * Halves the limit after a request was throttled.
+	 */
+	public synchronized void throttled() {
+		if (targetLatency <= 0) {
+			return;
+		}
+		setLimit(Math.max(1, limit / 2), "throttling");
+	}
+
+	private void setLimit(int next, String reason) {
+		if (next != limit && LOG.isDebugEnabled()) {
+			LOG.debug(String.format("Changing Limit from %d to %d (%s)",
+					limit, next, reason));
+		}
+		limit = next;
+	}
+}
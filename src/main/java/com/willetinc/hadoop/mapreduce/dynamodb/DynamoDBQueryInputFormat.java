@@ -19,10 +19,13 @@ package com.willetinc.hadoop.mapreduce.dynamodb;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
@@ -36,6 +39,7 @@ import org.apache.hadoop.mapreduce.TaskAttemptContext;
 
 import com.amazonaws.services.dynamodb.model.AttributeValue;
 import com.amazonaws.services.dynamodb.model.ComparisonOperator;
+import com.amazonaws.services.dynamodb.model.Condition;
 import com.willetinc.hadoop.mapreduce.dynamodb.io.DynamoDBKeyWritable;
 
 public class DynamoDBQueryInputFormat<T extends DynamoDBKeyWritable> 
@@ -81,33 +85,36 @@ public class DynamoDBQueryInputFormat<T extends DynamoDBKeyWritable>
 		}
 
 		/**
-		 * @return The total row count in this split
+		 * Splits are only read by the tasks of the job that wrote them, so
+		 * unlike the writables there is no layout of earlier releases to
+		 * read.
 		 */
-		@Override
-		public long getLength() throws IOException {
-			return 0; // unfortunately, we don't know this.
-		}
-
 		@Override
 		public void readFields(DataInput in) throws IOException {
-			this.hashKeyType = Types.values()[in.readInt()];
-			this.hashKeyValue = AttributeValueIOUtils.read(hashKeyType, in);
-			this.rangeKeyType = Types.values()[in.readInt()];
+			super.readFields(in);
+			if (null != AttributeValueCodec.readVersion(in)) {
+				throw new IOException("Query split written by an earlier release");
+			}
+			this.hashKeyType = Types.values()[in.readByte()];
+			this.hashKeyValue = AttributeValueCodec.read(hashKeyType, in);
+			this.rangeKeyType = Types.values()[in.readByte()];
 			this.rangeKeyValues =
-					AttributeValueIOUtils.readCollection(rangeKeyType, in);
-			this.rangeKeyOperator = ComparisonOperator.values()[in.readInt()];
+					AttributeValueCodec.readCollection(rangeKeyType, in);
+			this.rangeKeyOperator = ComparisonOperator.values()[in.readByte()];
 		}
 
 		@Override
 		public void write(DataOutput out) throws IOException {
-			out.writeInt(hashKeyType.ordinal());
-			AttributeValueIOUtils.write(hashKeyType, hashKeyValue, out);
-			out.writeInt(rangeKeyType.ordinal());
-			AttributeValueIOUtils.writeCollection(
+			super.write(out);
+			AttributeValueCodec.writeVersion(out);
+			out.writeByte(hashKeyType.ordinal());
+			AttributeValueCodec.write(hashKeyType, hashKeyValue, out);
+			out.writeByte(rangeKeyType.ordinal());
+			AttributeValueCodec.writeCollection(
 					rangeKeyType,
 					rangeKeyValues,
 					out);
-			out.writeInt(rangeKeyOperator.ordinal());
+			out.writeByte(rangeKeyOperator.ordinal());
 		}
 
 		public AttributeValue getHashKeyValue() {
@@ -143,6 +150,48 @@ public class DynamoDBQueryInputFormat<T extends DynamoDBKeyWritable>
 		public Collection<AttributeValue> getRangeKeyValues() {
 			return rangeKeyValues;
 		}
+
+		/**
+		 * Computes how far a range key is into this split. Only BETWEEN
+		 * conditions on Number and String range keys, as generated by range
+		 * key interpolation, are supported.
+		 * 
+		 * @param rangeKey
+		 *            Range key of an item in this split
+		 * @return Fraction of the split's range key interval preceding
+		 *         rangeKey, or -1 if it cannot be computed
+		 */
+		public float getRangeFraction(AttributeValue rangeKey) {
+			if (null == rangeKey
+					|| rangeKeyOperator != ComparisonOperator.BETWEEN
+					|| rangeKeyValues.size() != 2) {
+				return -1;
+			}
+
+			Iterator<AttributeValue> bounds = rangeKeyValues.iterator();
+			AttributeValue min = bounds.next();
+			AttributeValue max = bounds.next();
+			switch (rangeKeyType) {
+			case NUMBER:
+				if (null == rangeKey.getN()) {
+					return -1;
+				}
+				return BigDecimalSplitter.fraction(
+						new BigDecimal(min.getN()),
+						new BigDecimal(max.getN()),
+						new BigDecimal(rangeKey.getN()));
+			case STRING:
+				if (null == rangeKey.getS()) {
+					return -1;
+				}
+				return new TextSplitter().fraction(
+						min.getS(),
+						max.getS(),
+						rangeKey.getS());
+			default:
+				return -1;
+			}
+		}
 	}
 	
 	private DynamoDBConfiguration dbConf;
@@ -172,6 +221,9 @@ public class DynamoDBQueryInputFormat<T extends DynamoDBKeyWritable>
 		Types rangeKeyType = DynamoDBQueryInputFormat.getRangeKeyType(conf);
 
 		DynamoDBSplitter splitter = getSplitter(rangeKeyType);
+		// DescribeTable only reports the size of the whole table, which says
+		// nothing about a single HashKey, so query splits have no size
+		// estimates and readers report progress from the RangeKey instead
 		return splitter.split(conf);
 	}
 
@@ -180,7 +232,7 @@ public class DynamoDBQueryInputFormat<T extends DynamoDBKeyWritable>
 		case STRING:
 			return new TextSplitter();
 		case NUMBER:
-			new BigDecimalSplitter();
+			return new BigDecimalSplitter();
 		case BINARY:
 			return new BinarySplitter();
 		default:
@@ -199,7 +251,7 @@ public class DynamoDBQueryInputFormat<T extends DynamoDBKeyWritable>
 				(DynamoDBQueryInputSplit) inputSplit,
 				inputClass, 
 				context.getConfiguration(), 
-				dbConf.getAmazonDynamoDBClient(), 
+				DynamoDBClientPool.getInstance().acquire(dbConf), 
 				dbConf, 
 				tableName);
 	}
@@ -395,4 +447,47 @@ public class DynamoDBQueryInputFormat<T extends DynamoDBKeyWritable>
 		setRangeKeyInterpolateMinValue(conf, type, minValue);
 		setRangeKeyInterpolateMaxValue(conf, type, maxValue);
 	}
+
+	/**
+	 * <p>
+	 * Adds a condition on a non-key attribute to the query filter.
+	 * </p>
+	 * 
+	 * <p>
+	 * The 2011-12-05 Query API has no QueryFilter parameter, so the condition
+	 * is evaluated by the record reader and non-matching items are dropped
+	 * before they reach the mapper.
+	 * </p>
+	 * 
+	 * @param conf
+	 *            Hadoop configuration
+	 * @param attribute
+	 *            Name of the attribute to filter on
+	 * @param type
+	 *            Type of the condition values
+	 * @param operator
+	 *            Comparison operator
+	 * @param values
+	 *            Condition values, empty for NULL and NOT_NULL
+	 */
+	public static void setQueryFilter(
+			Configuration conf,
+			String attribute,
+			Types type,
+			ComparisonOperator operator,
+			Collection<AttributeValue> values) {
+		DynamoDBConfiguration.addFilterCondition(
+				conf,
+				DynamoDBConfiguration.QUERY_FILTER_PROPERTY,
+				attribute,
+				type,
+				operator,
+				values);
+	}
+
+	public static Map<String, Condition> getQueryFilter(Configuration conf) {
+		return DynamoDBConfiguration.getFilterConditions(
+				conf,
+				DynamoDBConfiguration.QUERY_FILTER_PROPERTY);
+	}
 }
@@ -16,12 +16,18 @@
 
 package com.willetinc.hadoop.mapreduce.dynamodb;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 
 import com.amazonaws.services.dynamodb.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodb.model.AttributeValue;
 import com.amazonaws.services.dynamodb.model.Condition;
+import com.amazonaws.services.dynamodb.model.Key;
 import com.amazonaws.services.dynamodb.model.QueryRequest;
 import com.amazonaws.services.dynamodb.model.QueryResult;
 import com.willetinc.hadoop.mapreduce.dynamodb.DynamoDBQueryInputFormat.DynamoDBQueryInputSplit;
@@ -33,7 +39,13 @@ public class DynamoDBQueryRecordReader<T extends DynamoDBKeyWritable> extends
 	private static final Log LOG = LogFactory
 			.getLog(DynamoDBQueryRecordReader.class);
 	
-	private QueryRequest queryRequest;
+	private AttributeValue hashKeyValue;
+	
+	private Condition rangeKeyCondition;
+	
+	private List<String> attributesToGet;
+	
+	private DynamoDBItemFilter queryFilter;
 
 	public DynamoDBQueryRecordReader(DynamoDBQueryInputSplit inputSplit,
 			Class<T> valueClass, Configuration conf,
@@ -41,34 +53,84 @@ public class DynamoDBQueryRecordReader<T extends DynamoDBKeyWritable> extends
 			String table) {
 		super(inputSplit, valueClass, conf, client, dbConf, table);
 		
-		queryRequest = new QueryRequest()
-			.withTableName(getTableName())
-			.withHashKeyValue(inputSplit.getHashKeyValue());
+		hashKeyValue = inputSplit.getHashKeyValue();
 		
 		// configure range key if it exists
 		if(inputSplit.hasRangeKey()) {
-			Condition condition = new Condition()
+			rangeKeyCondition = new Condition()
 				.withComparisonOperator(inputSplit.getRangeKeyOperator())
 				.withAttributeValueList(inputSplit.getRangeKeyValues());
-			queryRequest.setRangeKeyCondition(condition);
 		}
 		
+		queryFilter = DynamoDBItemFilter.create(
+				conf,
+				DynamoDBConfiguration.QUERY_FILTER_PROPERTY);
+		
+		// only fetch the attributes declared by the input class and the
+		// attributes needed to evaluate the query filter
+		attributesToGet = getAttributesToGet();
+		if(attributesToGet != null) {
+			for(String attribute : queryFilter.getAttributeNames()) {
+				if(!attributesToGet.contains(attribute)) {
+					attributesToGet.add(attribute);
+				}
+			}
+		}
 	}
 
+	/**
+	 * Reports progress from the position of the current item's RangeKey
+	 * within the split when the split is a RangeKey interval. Query splits
+	 * have no size estimates, since the size of a single HashKey is unknown,
+	 * so progress of other splits stays 0 until the split is read.
+	 */
 	@Override
-	protected void executeQuery() {
+	protected float estimateProgress() {
+		DynamoDBQueryInputSplit split = (DynamoDBQueryInputSplit) getSplit();
+		if (split != null && value != null && value.hasRangeKey()) {
+			float fraction = split.getRangeFraction(value.getRangeKeyValue());
+			if (fraction >= 0) {
+				return fraction;
+			}
+		}
+		return super.estimateProgress();
+	}
+
+	@Override
+	protected DynamoDBPage fetchPage(Key exclusiveStartKey) {
 		if (LOG.isDebugEnabled()) {
 			LOG.debug(String.format(
 					"Querying table: %s from ExclusiveStartKey: %s",
-					getTableName(), getLastKey()));
+					getTableName(), exclusiveStartKey));
 		}
 		
-		if (getLastKey() != null) {
-			queryRequest.setExclusiveStartKey(getLastKey());
+		// a new request per page, pages may be fetched by the prefetch thread
+		QueryRequest queryRequest = new QueryRequest()
+			.withTableName(getTableName())
+			.withHashKeyValue(hashKeyValue);
+		if(rangeKeyCondition != null) {
+			queryRequest.setRangeKeyCondition(rangeKeyCondition);
 		}
+		if(attributesToGet != null) {
+			queryRequest.setAttributesToGet(attributesToGet);
+		}
+		if(exclusiveStartKey != null) {
+			queryRequest.setExclusiveStartKey(exclusiveStartKey);
+		}
+		queryRequest.setLimit(getPageLimit());
 
 		QueryResult result = getClient().query(queryRequest);
-		setLastKey(result.getLastEvaluatedKey());
-		setIterator(result.getItems().iterator());
+		Key lastEvaluatedKey = result.getLastEvaluatedKey();
+		List<Map<String, AttributeValue>> items = result.getItems();
+		int scannedCount = items.size();
+		if(!queryFilter.isEmpty()) {
+			items = new ArrayList<Map<String, AttributeValue>>(items);
+			queryFilter.filter(items);
+		}
+		return new DynamoDBPage(
+				items,
+				lastEvaluatedKey,
+				result.getConsumedCapacityUnits(),
+				scannedCount);
 	}
 }
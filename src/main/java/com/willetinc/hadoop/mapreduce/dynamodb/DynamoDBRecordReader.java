@@ -18,8 +18,11 @@ package com.willetinc.hadoop.mapreduce.dynamodb;
 
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.mapreduce.InputSplit;
@@ -27,14 +30,18 @@ import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.util.ReflectionUtils;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.dynamodb.AmazonDynamoDBClient;
 import com.amazonaws.services.dynamodb.model.AttributeValue;
 import com.amazonaws.services.dynamodb.model.Key;
+import com.willetinc.hadoop.mapreduce.dynamodb.io.DynamoDBItemWritable;
 import com.willetinc.hadoop.mapreduce.dynamodb.io.DynamoDBKeyWritable;
 
 public abstract class DynamoDBRecordReader<T extends DynamoDBKeyWritable>
 		extends RecordReader<LongWritable, T> {
 	
+	private static final Log LOG = LogFactory.getLog(DynamoDBRecordReader.class);
+	
 	private Class<T> valueClass;
 
 	private DynamoDBScanInputFormat.DynamoDBInputSplit split;
@@ -57,6 +64,26 @@ public abstract class DynamoDBRecordReader<T extends DynamoDBKeyWritable>
 	
 	private Key lastKey = null;
 	
+	private DynamoDBPagePrefetcher prefetcher;
+	
+	private DynamoDBThroughputLimiter limiter;
+	
+	private final DynamoDBCounters counters = new DynamoDBCounters();
+	
+	private final DynamoDBRetryPolicy retryPolicy;
+	
+	private final DynamoDBPageSizeController pageSizeController;
+	
+	private DynamoDBCheckpointStore checkpointStore;
+	
+	private long lastCheckpointTime;
+	
+	private long bytesRead = 0;
+	
+	private long filteredItems = 0;
+	
+	private boolean done = false;
+	
 	public DynamoDBRecordReader(
 			DynamoDBScanInputFormat.DynamoDBInputSplit split,
 			Class<T> valueClass, 
@@ -70,6 +97,12 @@ public abstract class DynamoDBRecordReader<T extends DynamoDBKeyWritable>
 		this.client = client;
 		this.dbConf = dbConf;
 		this.tableName = table;
+		this.retryPolicy = new DynamoDBRetryPolicy(dbConf, counters);
+		
+		int pageLimit = dbConf.getPageLimit();
+		this.pageSizeController = (pageLimit > 0) ? new DynamoDBPageSizeController(
+				pageLimit,
+				dbConf.getPageTargetLatency()) : null;
 	}
 	
 	@Override
@@ -82,36 +115,190 @@ public abstract class DynamoDBRecordReader<T extends DynamoDBKeyWritable>
 			value = createValue();
 		}
 		
-		if(iterator == null) {
+		// fetch pages until an item is available or the last page was read
+		while(iterator == null || !iterator.hasNext()) {
+			if(iterator != null && lastKey == null) {
+				done = true;
+				deleteCheckpoint();
+				return false;
+			}
+			if(iterator != null) {
+				// every record of the previous page has been processed
+				saveCheckpoint();
+			}
 			executeQuery();
 		}
 		
 		key.set(pos);
+		value.readFields(iterator.next());
+		pos++;
 		
-		if(iterator.hasNext()) {
-			value.readFields(iterator.next());
+		return true;
+	}
+	
+	/**
+	 * Reads the page following lastKey, either directly or from the
+	 * background prefetcher when prefetching is enabled.
+	 */
+	protected void executeQuery() throws IOException, InterruptedException {
+		DynamoDBPage page;
+		if(dbConf.isPrefetchEnabled()) {
+			if(prefetcher == null) {
+				prefetcher = new DynamoDBPagePrefetcher(
+						new DynamoDBPagePrefetcher.PageFetcher() {
+							@Override
+							public DynamoDBPage fetchPage(Key exclusiveStartKey)
+									throws InterruptedException {
+								return readPage(exclusiveStartKey);
+							}
+						},
+						lastKey,
+						dbConf.getPrefetchPages(),
+						dbConf.getPrefetchBytes());
+				prefetcher.start("DynamoDB prefetch " + tableName);
+			}
+			page = prefetcher.next();
 		} else {
-			iterator = null;
+			page = readPage(lastKey);
 		}
 		
-		pos++;
+		bytesRead += page.getSize();
+		filteredItems += page.getScannedCount() - page.getItems().size();
+		setLastKey(page.getLastEvaluatedKey());
+		setIterator(page.getItems().iterator());
+	}
+	
+	/**
+	 * Fetches a page, retrying transient failures and pacing requests to this
+	 * task's share of the table's provisioned read capacity when a read limit
+	 * is configured.
+	 */
+	private DynamoDBPage readPage(final Key exclusiveStartKey)
+			throws InterruptedException {
+		DynamoDBThroughputLimiter readLimiter = getLimiter();
+		if (readLimiter != null) {
+			readLimiter.acquire();
+		}
+		
+		DynamoDBPage page = retryPolicy.execute(
+				new DynamoDBRetryPolicy.Request<DynamoDBPage>() {
+					@Override
+					public DynamoDBPage execute() {
+						if (pageSizeController == null) {
+							return fetchPage(exclusiveStartKey);
+						}
+						
+						long start = System.currentTimeMillis();
+						DynamoDBPage page;
+						try {
+							page = fetchPage(exclusiveStartKey);
+						} catch (AmazonClientException e) {
+							if (DynamoDBRetryPolicy.classify(e) == DynamoDBRetryPolicy.ErrorClass.THROTTLING) {
+								pageSizeController.throttled();
+							}
+							throw e;
+						}
+						pageSizeController.update(
+								page,
+								System.currentTimeMillis() - start);
+						return page;
+					}
+				});
 		
-		return (lastKey != null || iterator.hasNext());
+		if (readLimiter != null && page.getConsumedCapacityUnits() != null) {
+			readLimiter.consume(page.getConsumedCapacityUnits());
+		}
+		return page;
 	}
 	
-	protected abstract void executeQuery();
+	private synchronized DynamoDBThroughputLimiter getLimiter() {
+		float percent = dbConf.getReadThroughputPercent();
+		if (limiter == null && percent > 0) {
+			// the job's split count is the number of map tasks sharing the table
+			limiter = DynamoDBThroughputLimiter.create(
+					client,
+					tableName,
+					percent / 100,
+					conf.getInt("mapred.map.tasks", 1),
+					true);
+		}
+		return limiter;
+	}
+	
+	/**
+	 * @return Limit of the next Scan or Query request, null if no limit is
+	 *         configured
+	 */
+	protected Integer getPageLimit() {
+		return (pageSizeController == null) ? null : pageSizeController
+				.getLimit();
+	}
+	
+	/**
+	 * Executes a single Scan or Query request. May be called from the
+	 * prefetch thread, so implementations must not modify reader state.
+	 * 
+	 * @param exclusiveStartKey
+	 *            Key to continue reading from or null for the first page
+	 * @return Page of items
+	 */
+	protected abstract DynamoDBPage fetchPage(Key exclusiveStartKey);
 
 	@Override
 	public void initialize(InputSplit inputSplit, TaskAttemptContext context)
 			throws IOException, InterruptedException {
-		// do nothing
+		counters.setContext(context);
+		
+		checkpointStore = DynamoDBCheckpointStore.create(
+				conf,
+				context.getTaskAttemptID());
+		if (checkpointStore != null) {
+			DynamoDBCheckpointStore.Checkpoint checkpoint = checkpointStore.load();
+			if (checkpoint != null) {
+				LOG.info("Resuming split at record " + checkpoint.getPos()
+						+ " from " + checkpointStore.getPath());
+				pos = checkpoint.getPos();
+				lastKey = checkpoint.getLastKey();
+			}
+			lastCheckpointTime = System.currentTimeMillis();
+		}
+	}
+	
+	private void saveCheckpoint() {
+		if (checkpointStore == null) {
+			return;
+		}
+		
+		long now = System.currentTimeMillis();
+		if (now - lastCheckpointTime < dbConf.getCheckpointInterval()) {
+			return;
+		}
+		
+		try {
+			checkpointStore.save(
+					new DynamoDBCheckpointStore.Checkpoint(pos, lastKey));
+		} catch (IOException e) {
+			// a missed checkpoint only costs rereading more of the split
+			LOG.warn("Failed to save checkpoint to "
+					+ checkpointStore.getPath(), e);
+		}
+		lastCheckpointTime = now;
+	}
+	
+	private void deleteCheckpoint() throws IOException {
+		if (checkpointStore != null) {
+			checkpointStore.delete();
+			checkpointStore = null;
+		}
 	}
 	
 	@Override
 	public void close() throws IOException {
-		if (client != null) {
-			client.shutdown();
+		if (prefetcher != null) {
+			prefetcher.close();
 		}
+		counters.log();
+		DynamoDBClientPool.getInstance().release(client);
 	}
 	
 	@Override
@@ -134,13 +321,62 @@ public abstract class DynamoDBRecordReader<T extends DynamoDBKeyWritable>
 
 	@Override
 	public float getProgress() throws IOException, InterruptedException {
-		return pos / Long.MAX_VALUE;
+		if (done) {
+			return 1.0f;
+		}
+		return Math.min(1.0f, Math.max(0.0f, estimateProgress()));
+	}
+
+	/**
+	 * Estimates progress from the items and bytes read so far and the size of
+	 * the split estimated by the split planner. Items removed by a scan filter
+	 * or query filter count as read, since the estimate covers every item of
+	 * the split. Bytes only count items that passed the filters, so the
+	 * estimate from bytes stays low when a filter is set.
+	 * 
+	 * @return Fraction of the split read so far
+	 */
+	protected float estimateProgress() {
+		if (split == null) {
+			return 0;
+		}
+		if (split.getEstimatedItems() > 0) {
+			return (float) (pos + filteredItems) / split.getEstimatedItems();
+		}
+		if (split.getEstimatedBytes() > 0) {
+			return (float) bytesRead / split.getEstimatedBytes();
+		}
+		return 0;
+	}
+
+	protected long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * @return Attribute names declared by the input class when projection is
+	 *         enabled, null to fetch all attributes
+	 */
+	protected List<String> getAttributesToGet() {
+		if (!dbConf.isProjectionEnabled()) {
+			return null;
+		}
+		
+		T projection = createValue();
+		if (!(projection instanceof DynamoDBItemWritable)) {
+			return null;
+		}
+		return ((DynamoDBItemWritable) projection).getFieldNames();
 	}
 
 	public T createValue() {
 		return ReflectionUtils.newInstance(valueClass, conf);
 	}
 
+	protected DynamoDBCounters getCounters() {
+		return counters;
+	}
+
 	protected Class<T> getValueClass() {
 		return valueClass;
 	}
@@ -0,0 +1,47 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.Key;
+
+/**
+ * Receives items the output format cannot write because DynamoDB would
+ * reject them, such as items larger than 64 KB. Set with
+ * {@link DynamoDBConfiguration#setRejectHandlerClass(Class)}. A handler is
+ * shared by all threads writing for a task and must be thread safe.
+ */
+public interface DynamoDBRejectHandler {
+
+	/**
+	 * @param key
+	 *            Primary key of the item
+	 * @param item
+	 *            Item that was not written
+	 * @param size
+	 *            Size of the item in bytes
+	 * @throws IOException
+	 *             to fail the task
+	 */
+	void reject(Key key, Map<String, AttributeValue> item, long size)
+			throws IOException;
+
+}
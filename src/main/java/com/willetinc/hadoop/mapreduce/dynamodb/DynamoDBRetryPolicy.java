@@ -0,0 +1,250 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.util.Progressable;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodb.model.ProvisionedThroughputExceededException;
+
+/**
+ * <p>
+ * Retries DynamoDB requests that failed with a transient error, shared by the
+ * record readers and writers.
+ * </p>
+ * 
+ * <p>
+ * Failures are classified by {@link #classify(AmazonClientException)}. Each
+ * class has its own maximum number of attempts per request and all retries of
+ * a task draw from a single retry budget. Between attempts the policy sleeps
+ * with capped exponential backoff and decorrelated jitter:
+ * </p>
+ * 
+ * <pre>
+ * delay = min(maxDelay, random(baseDelay, previousDelay * 3))
+ * </pre>
+ */
+public class DynamoDBRetryPolicy {
+
+	private static final Log LOG = LogFactory.getLog(DynamoDBRetryPolicy.class);
+
+	/**
+	 * Classes of errors that are retried independently.
+	 */
+	public enum ErrorClass {
+		/** Provisioned throughput or request rate exceeded */
+		THROTTLING,
+		/** 5xx responses and network failures */
+		TRANSIENT,
+		/** Errors that will fail again when retried */
+		PERMANENT
+	}
+
+	/**
+	 * A request executed by the policy.
+	 */
+	public interface Request<T> {
+
+		T execute();
+
+	}
+
+	private final long baseDelay;
+
+	private final long maxDelay;
+
+	private final int throttleAttempts;
+
+	private final int transientAttempts;
+
+	private final DynamoDBCounters counters;
+
+	private final Random random = new Random();
+
+	private long budget;
+
+	private volatile Progressable progress;
+
+	public DynamoDBRetryPolicy(DynamoDBConfiguration dbConf, DynamoDBCounters counters) {
+		this(
+				dbConf.getRetryBaseDelay(),
+				dbConf.getRetryMaxDelay(),
+				dbConf.getRetryThrottleAttempts(),
+				dbConf.getRetryTransientAttempts(),
+				dbConf.getRetryBudget(),
+				counters);
+	}
+
+	public DynamoDBRetryPolicy(
+			long baseDelay,
+			long maxDelay,
+			int throttleAttempts,
+			int transientAttempts,
+			long budget,
+			DynamoDBCounters counters) {
+		this.baseDelay = Math.max(1, baseDelay);
+		this.maxDelay = Math.max(this.baseDelay, maxDelay);
+		this.throttleAttempts = throttleAttempts;
+		this.transientAttempts = transientAttempts;
+		this.budget = budget;
+		this.counters = counters;
+	}
+
+	public DynamoDBCounters getCounters() {
+		return counters;
+	}
+
+	public int getThrottleAttempts() {
+		return throttleAttempts;
+	}
+
+	/**
+	 * @param progress
+	 *            Reports progress before every backoff, may be null
+	 */
+	public void setProgressable(Progressable progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Executes a request, retrying transient failures.
+	 * 
+	 * @param request
+	 *            Request to execute
+	 * @return Result of the first successful attempt
+	 * @throws InterruptedException
+	 *             Interrupted while backing off
+	 * @throws AmazonClientException
+	 *             The request failed with a permanent error, exhausted its
+	 *             attempts or the retry budget is spent
+	 */
+	public <T> T execute(Request<T> request) throws InterruptedException {
+		long delay = baseDelay;
+		for (int attempt = 1;; attempt++) {
+			try {
+				return request.execute();
+			} catch (AmazonClientException e) {
+				ErrorClass errorClass = classify(e);
+				if (errorClass == ErrorClass.THROTTLING) {
+					counters.increment(DynamoDBCounter.THROTTLED_REQUESTS, 1);
+				}
+				if (!acquireRetry(errorClass, attempt)) {
+					throw e;
+				}
+
+				if (LOG.isDebugEnabled()) {
+					LOG.debug(String.format(
+							"Retrying %s error (attempt %d): %s",
+							errorClass, attempt, e.getMessage()));
+				}
+
+				counters.increment(DynamoDBCounter.RETRIES, 1);
+				delay = backoff(delay);
+			}
+		}
+	}
+
+	/**
+	 * Sleeps before a resubmission that is not caused by an error, such as
+	 * resubmitting the unprocessed items of a batch. The sleep does not
+	 * count against the attempts or the retry budget.
+	 * 
+	 * @param previousDelay
+	 *            Delay returned by the previous backoff, or 0 for the first
+	 * @return Delay slept, to pass to the next backoff
+	 * @throws InterruptedException
+	 *             Interrupted while backing off
+	 */
+	public long backoff(long previousDelay) throws InterruptedException {
+		long delay = nextDelay(Math.max(baseDelay, previousDelay));
+		counters.increment(DynamoDBCounter.BACKOFF_MILLIS, delay);
+		Progressable progress = this.progress;
+		if (progress != null) {
+			progress.progress();
+		}
+		sleep(delay);
+		return delay;
+	}
+
+	private synchronized boolean acquireRetry(ErrorClass errorClass, int attempt) {
+		int maxAttempts;
+		switch (errorClass) {
+		case THROTTLING:
+			maxAttempts = throttleAttempts;
+			break;
+		case TRANSIENT:
+			maxAttempts = transientAttempts;
+			break;
+		default:
+			return false;
+		}
+
+		if (attempt >= maxAttempts) {
+			return false;
+		}
+
+		if (budget <= 0) {
+			LOG.warn("Retry budget exhausted");
+			return false;
+		}
+		budget--;
+		return true;
+	}
+
+	long nextDelay(long previousDelay) {
+		long upper = Math.min(maxDelay, previousDelay * 3);
+		long delay = baseDelay;
+		if (upper > baseDelay) {
+			delay += (long) (random.nextDouble() * (upper - baseDelay));
+		}
+		return Math.min(maxDelay, delay);
+	}
+
+	protected void sleep(long millis) throws InterruptedException {
+		Thread.sleep(millis);
+	}
+
+	/**
+	 * @param e
+	 *            Error raised by the client
+	 * @return Retry class of the error
+	 */
+	public static ErrorClass classify(AmazonClientException e) {
+		if (e instanceof ProvisionedThroughputExceededException) {
+			return ErrorClass.THROTTLING;
+		}
+
+		if (e instanceof AmazonServiceException) {
+			AmazonServiceException se = (AmazonServiceException) e;
+			if ("ThrottlingException".equals(se.getErrorCode())) {
+				return ErrorClass.THROTTLING;
+			}
+			if (se.getStatusCode() >= 500) {
+				return ErrorClass.TRANSIENT;
+			}
+			return ErrorClass.PERMANENT;
+		}
+
+		// no response was received, e.g. connection reset or timeout
+		return ErrorClass.TRANSIENT;
+	}
+}
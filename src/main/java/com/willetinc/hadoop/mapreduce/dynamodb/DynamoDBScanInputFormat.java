@@ -20,9 +20,12 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
@@ -34,13 +37,30 @@ import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodb.AmazonDynamoDBClient;
 import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.ComparisonOperator;
+import com.amazonaws.services.dynamodb.model.Condition;
+import com.amazonaws.services.dynamodb.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodb.model.TableDescription;
 import com.willetinc.hadoop.mapreduce.dynamodb.io.AttributeValueWritable;
 import com.willetinc.hadoop.mapreduce.dynamodb.io.DynamoDBKeyWritable;
 
 public class DynamoDBScanInputFormat<T extends DynamoDBKeyWritable> extends
 		InputFormat<LongWritable, T> implements Configurable {
 
+	private static final Log LOG = LogFactory
+			.getLog(DynamoDBScanInputFormat.class);
+
+	/**
+	 * The 2011-12-05 Scan API used by this client has no Segment and
+	 * TotalSegments parameters, so a table can only be read by a single
+	 * segment. Splits are planned for the computed number of segments and
+	 * capped to this value until segmented scans are available.
+	 */
+	static final int MAX_SCAN_SEGMENTS = 1;
+
 	public static class NullDynamoDBWritable implements DynamoDBKeyWritable {
 
 		@Override
@@ -96,23 +116,87 @@ public class DynamoDBScanInputFormat<T extends DynamoDBKeyWritable> extends
 	public static class DynamoDBInputSplit extends InputSplit implements
 			Writable {
 
+		private int segment = 0;
+
+		private int totalSegments = 1;
+
+		private long estimatedItems = 0;
+
+		private long estimatedBytes = 0;
+
 		/**
 		 * Default Constructor
 		 */
 		public DynamoDBInputSplit() {
 		}
 
-		public void readFields(DataInput in) throws IOException {
+		public DynamoDBInputSplit(int segment, int totalSegments) {
+			this.segment = segment;
+			this.totalSegments = totalSegments;
+		}
 
+		public void readFields(DataInput in) throws IOException {
+			this.segment = in.readInt();
+			this.totalSegments = in.readInt();
+			this.estimatedItems = in.readLong();
+			this.estimatedBytes = in.readLong();
 		}
 
 		public void write(DataOutput out) throws IOException {
+			out.writeInt(segment);
+			out.writeInt(totalSegments);
+			out.writeLong(estimatedItems);
+			out.writeLong(estimatedBytes);
+		}
 
+		/**
+		 * @return Zero based segment of the table read by this split
+		 */
+		public int getSegment() {
+			return segment;
 		}
 
+		/**
+		 * @return Number of segments the table was divided into
+		 */
+		public int getTotalSegments() {
+			return totalSegments;
+		}
+
+		/**
+		 * @return Estimated number of items in this split, 0 if unknown
+		 */
+		public long getEstimatedItems() {
+			return estimatedItems;
+		}
+
+		/**
+		 * @return Estimated number of bytes in this split, 0 if unknown
+		 */
+		public long getEstimatedBytes() {
+			return estimatedBytes;
+		}
+
+		/**
+		 * Sets the size of this split as estimated by the split planner.
+		 * 
+		 * @param items
+		 *            Estimated number of items
+		 * @param bytes
+		 *            Estimated number of bytes
+		 */
+		public void setEstimates(long items, long bytes) {
+			this.estimatedItems = items;
+			this.estimatedBytes = bytes;
+		}
+
+		/**
+		 * @return Estimated number of bytes in this split, used by Hadoop to
+		 *         schedule the largest splits first
+		 */
 		@Override
 		public long getLength() throws IOException, InterruptedException {
-			return 0;
+			return estimatedBytes;
 		}
 
 		@Override
@@ -142,6 +226,52 @@ public class DynamoDBScanInputFormat<T extends DynamoDBKeyWritable> extends
 		return dbConf.getDynamoDBEndpoint();
 	}
 
+	public static void setScanSplitSize(Job job, long splitSize) {
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(job.getConfiguration());
+		dbConf.setScanSplitSize(splitSize);
+	}
+
+	public static long getScanSplitSize(Job job) {
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(job.getConfiguration());
+		return dbConf.getScanSplitSize();
+	}
+
+	/**
+	 * Adds a condition to the ScanFilter sent with every Scan request, so
+	 * only matching items are returned by DynamoDB.
+	 * 
+	 * @param conf
+	 *            Hadoop configuration
+	 * @param attribute
+	 *            Name of the attribute to filter on
+	 * @param type
+	 *            Type of the condition values
+	 * @param operator
+	 *            Comparison operator
+	 * @param values
+	 *            Condition values, empty for NULL and NOT_NULL
+	 */
+	public static void setScanFilter(
+			Configuration conf,
+			String attribute,
+			Types type,
+			ComparisonOperator operator,
+			Collection<AttributeValue> values) {
+		DynamoDBConfiguration.addFilterCondition(
+				conf,
+				DynamoDBConfiguration.SCAN_FILTER_PROPERTY,
+				attribute,
+				type,
+				operator,
+				values);
+	}
+
+	public static Map<String, Condition> getScanFilter(Configuration conf) {
+		return DynamoDBConfiguration.getFilterConditions(
+				conf,
+				DynamoDBConfiguration.SCAN_FILTER_PROPERTY);
+	}
+
 	private DynamoDBConfiguration dbConf;
 
 	private String tableName;
@@ -177,7 +307,7 @@ public class DynamoDBScanInputFormat<T extends DynamoDBKeyWritable> extends
 				(DynamoDBInputSplit) inputSplit,
 				inputClass,
 				context.getConfiguration(),
-				dbConf.getAmazonDynamoDBClient(),
+				DynamoDBClientPool.getInstance().acquire(dbConf),
 				dbConf,
 				tableName);
 	}
@@ -197,9 +327,104 @@ public class DynamoDBScanInputFormat<T extends DynamoDBKeyWritable> extends
 	public List<InputSplit> getSplits(JobContext context)
 			throws IOException,
 			InterruptedException {
+		DynamoDBConfiguration conf = new DynamoDBConfiguration(
+				context.getConfiguration());
+		AmazonDynamoDBClient client = conf.getAmazonDynamoDBClient();
+		try {
+			return getSplits(client, conf);
+		} finally {
+			client.shutdown();
+		}
+	}
+
+	/**
+	 * Generates one split per table segment. The number of segments is derived
+	 * from the table size reported by DescribeTable and the configured scan
+	 * split size.
+	 * 
+	 * @param client
+	 *            Configured AmazonDynamoDBClient.
+	 * @param conf
+	 *            DynamoDB job configuration
+	 * @return Generated InputSplits
+	 */
+	List<InputSplit> getSplits(
+			AmazonDynamoDBClient client,
+			DynamoDBConfiguration conf) {
+		String table = conf.getInputTableName();
+
+		int totalSegments = 1;
+		TableDescription description = null;
+		try {
+			description = client.describeTable(
+					new DescribeTableRequest().withTableName(table))
+					.getTable();
+			totalSegments = getNumSegments(description, conf.getScanSplitSize());
+		} catch (AmazonClientException e) {
+			LOG.warn(String.format(
+					"Unable to describe table: %s, scanning as one segment",
+					table), e);
+		}
+
+		if (totalSegments > MAX_SCAN_SEGMENTS) {
+			LOG.info(String.format(
+					"Table: %s spans %d segments, scanning as %d segment(s)",
+					table, totalSegments, MAX_SCAN_SEGMENTS));
+			totalSegments = MAX_SCAN_SEGMENTS;
+		}
+
 		List<InputSplit> splits = new ArrayList<InputSplit>();
-		splits.add(new DynamoDBInputSplit());
+		for (int segment = 0; segment < totalSegments; segment++) {
+			splits.add(new DynamoDBInputSplit(segment, totalSegments));
+		}
+		setEstimates(splits, description);
 		return splits;
 	}
 
+	/**
+	 * Divides the item count and size reported by DescribeTable evenly
+	 * between splits. DynamoDB refreshes these values about every six hours,
+	 * so they are only estimates.
+	 * 
+	 * @param splits
+	 *            Splits reading the table
+	 * @param description
+	 *            Table description, may be null if the table could not be
+	 *            described
+	 */
+	static void setEstimates(
+			List<InputSplit> splits,
+			TableDescription description) {
+		if (null == description || splits.isEmpty()) {
+			return;
+		}
+
+		long items = (null == description.getItemCount()) ? 0 : description
+				.getItemCount();
+		long bytes = (null == description.getTableSizeBytes()) ? 0
+				: description.getTableSizeBytes();
+		for (InputSplit split : splits) {
+			((DynamoDBInputSplit) split).setEstimates(
+					items / splits.size(),
+					bytes / splits.size());
+		}
+	}
+
+	/**
+	 * @param description
+	 *            Table description returned by DescribeTable
+	 * @param splitSize
+	 *            Target number of table bytes per split
+	 * @return Number of segments needed to read the table
+	 */
+	static int getNumSegments(TableDescription description, long splitSize) {
+		Long tableSize = description.getTableSizeBytes();
+		if (null == tableSize || tableSize <= 0 || splitSize <= 0) {
+			return 1;
+		}
+
+		long segments = (tableSize + splitSize - 1) / splitSize;
+		return (int) Math.min(segments, Integer.MAX_VALUE);
+	}
+
 }
@@ -16,11 +16,16 @@
 
 package com.willetinc.hadoop.mapreduce.dynamodb;
 
+import java.util.List;
+import java.util.Map;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 
 import com.amazonaws.services.dynamodb.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodb.model.Condition;
+import com.amazonaws.services.dynamodb.model.Key;
 import com.amazonaws.services.dynamodb.model.ScanRequest;
 import com.amazonaws.services.dynamodb.model.ScanResult;
 import com.willetinc.hadoop.mapreduce.dynamodb.DynamoDBScanInputFormat.DynamoDBInputSplit;
@@ -30,6 +35,10 @@ public class DynamoDBScanRecordReader<T extends DynamoDBKeyWritable> extends Dyn
 
 	private static final Log LOG = LogFactory.getLog(DynamoDBScanRecordReader.class);
 	
+	private final List<String> attributesToGet;
+	
+	private final Map<String, Condition> scanFilter;
+	
 	public DynamoDBScanRecordReader(
 			DynamoDBInputSplit split,
 			Class<T> valueClass, 
@@ -38,19 +47,33 @@ public class DynamoDBScanRecordReader<T extends DynamoDBKeyWritable> extends Dyn
 			DynamoDBConfiguration dbConf,
 			String table) {
 		super(split, valueClass, conf, client, dbConf, table);
+		attributesToGet = getAttributesToGet();
+		scanFilter = DynamoDBScanInputFormat.getScanFilter(conf);
 	}
 	
 	@Override
-	protected void executeQuery() {
+	protected DynamoDBPage fetchPage(Key exclusiveStartKey) {
 		if (LOG.isDebugEnabled())
-			LOG.debug(String.format("Scaning of table: %s from ExclusiveStartKey: %s", getTableName(), getLastKey()));
+			LOG.debug(String.format("Scaning of table: %s from ExclusiveStartKey: %s", getTableName(), exclusiveStartKey));
 		
 		ScanRequest scanRequest = new ScanRequest().withTableName(getTableName());
-		if(getLastKey() != null) {
-			scanRequest.setExclusiveStartKey(getLastKey());
+		if(attributesToGet != null) {
+			scanRequest.setAttributesToGet(attributesToGet);
+		}
+		if(!scanFilter.isEmpty()) {
+			scanRequest.setScanFilter(scanFilter);
+		}
+		if(exclusiveStartKey != null) {
+			scanRequest.setExclusiveStartKey(exclusiveStartKey);
 		}
+		scanRequest.setLimit(getPageLimit());
 		ScanResult resultSet = getClient().scan(scanRequest);
-		setLastKey(resultSet.getLastEvaluatedKey());
-		setIterator(resultSet.getItems().iterator());
+		Key lastEvaluatedKey = resultSet.getLastEvaluatedKey();
+		Integer scannedCount = resultSet.getScannedCount();
+		return new DynamoDBPage(
+				resultSet.getItems(),
+				lastEvaluatedKey,
+				resultSet.getConsumedCapacityUnits(),
+				scannedCount == null ? -1 : scannedCount);
 	}
 }
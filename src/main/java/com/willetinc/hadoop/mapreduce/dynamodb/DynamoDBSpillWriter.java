@@ -0,0 +1,348 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.Progressable;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.Key;
+
+/**
+ * <p>
+ * Hands puts and deletes to a sender thread without ever blocking the
+ * caller for long, spilling them to local disk while the table cannot keep
+ * up.
+ * </p>
+ * 
+ * <p>
+ * Requests are queued in memory until the queue holds queueSize requests.
+ * From then on they are appended to spill segments of up to segmentSize
+ * requests in the format of {@link DynamoDBStagedWriter}, until the sender
+ * has caught up with everything spilled. The sender writes queued requests
+ * first and then replays the segments in order, so requests are written in
+ * the order they were made.
+ * </p>
+ * 
+ * <p>
+ * {@link #flush()} and {@link #close()} wait for everything spilled to be
+ * written and report progress meanwhile, so that a task draining a large
+ * spill is not killed for being unresponsive. As with
+ * {@link DynamoDBAsyncWriter} the first error of the sender is rethrown by
+ * the next call and later requests are discarded.
+ * </p>
+ */
+public class DynamoDBSpillWriter implements DynamoDBWriter {
+
+	private static final Log LOG = LogFactory.getLog(DynamoDBSpillWriter.class);
+
+	/** Milliseconds between progress reports while waiting for the sender */
+	private static final long PROGRESS_INTERVAL = 10000;
+
+	private static class Op {
+
+		final Key key;
+
+		final Map<String, AttributeValue> item;
+
+		Op(Key key, Map<String, AttributeValue> item) {
+			this.key = key;
+			this.item = item;
+		}
+	}
+
+	private class Sender implements Runnable {
+
+		@Override
+		public void run() {
+			try {
+				while (send()) {
+				}
+			} catch (Throwable e) {
+				setError(e);
+			}
+		}
+
+		/**
+		 * @return false once the writer is closed and everything was sent
+		 */
+		private boolean send() throws IOException, InterruptedException {
+			Op op = null;
+			Path segment = null;
+			long flushTicket = 0;
+			synchronized (DynamoDBSpillWriter.this) {
+				while (true) {
+					if (!queue.isEmpty()) {
+						op = queue.removeFirst();
+						break;
+					}
+					if (!segments.isEmpty()) {
+						segment = segments.removeFirst();
+						replaying = true;
+						break;
+					}
+					if (current != null) {
+						// caught up with the queue, replay the partial segment
+						rollSegment();
+						continue;
+					}
+					if (flushRequested > flushCompleted) {
+						flushTicket = flushRequested;
+						break;
+					}
+					if (closed) {
+						return false;
+					}
+					DynamoDBSpillWriter.this.wait();
+				}
+			}
+
+			if (op != null) {
+				if (op.item != null) {
+					writer.put(op.key, op.item);
+				} else {
+					writer.delete(op.key);
+				}
+			} else if (segment != null) {
+				long count = DynamoDBStagedWriter.replay(
+						fs,
+						segment,
+						writer,
+						progress);
+				fs.delete(segment, false);
+				if (LOG.isDebugEnabled()) {
+					LOG.debug("Replayed " + count + " spilled requests from "
+							+ segment);
+				}
+				synchronized (DynamoDBSpillWriter.this) {
+					replaying = false;
+					DynamoDBSpillWriter.this.notifyAll();
+				}
+			} else {
+				writer.flush();
+				synchronized (DynamoDBSpillWriter.this) {
+					flushCompleted = flushTicket;
+					DynamoDBSpillWriter.this.notifyAll();
+				}
+			}
+			return true;
+		}
+	}
+
+	private final DynamoDBWriter writer;
+
+	private final FileSystem fs;
+
+	private final Path dir;
+
+	private final int queueSize;
+
+	private final int segmentSize;
+
+	private final Progressable progress;
+
+	private final Thread thread;
+
+	private final LinkedList<Op> queue = new LinkedList<Op>();
+
+	private final LinkedList<Path> segments = new LinkedList<Path>();
+
+	private DynamoDBStagedWriter current;
+
+	private boolean replaying = false;
+
+	private int segmentNumber = 0;
+
+	private long spilledRequests = 0;
+
+	private long flushRequested = 0;
+
+	private long flushCompleted = 0;
+
+	private boolean closed = false;
+
+	private volatile Throwable error;
+
+	/**
+	 * @param writer
+	 *            Writer the sender thread writes with
+	 * @param fs
+	 *            Local file system
+	 * @param dir
+	 *            Directory spill segments are written to
+	 * @param queueSize
+	 *            Number of requests queued in memory before requests are
+	 *            spilled
+	 * @param segmentSize
+	 *            Number of requests per spill segment
+	 * @param progress
+	 *            Reports progress while waiting for the sender, may be null
+	 * @param name
+	 *            Name of the sender thread
+	 */
+	public DynamoDBSpillWriter(
+			DynamoDBWriter writer,
+			FileSystem fs,
+			Path dir,
+			int queueSize,
+			int segmentSize,
+			Progressable progress,
+			String name) {
+		this.writer = writer;
+		this.fs = fs;
+		this.dir = dir;
+		this.queueSize = Math.max(1, queueSize);
+		this.segmentSize = Math.max(1, segmentSize);
+		this.progress = progress;
+		this.thread = new Thread(new Sender(), name);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	@Override
+	public void put(Key key, Map<String, AttributeValue> item)
+			throws IOException {
+		enqueue(new Op(key, item));
+	}
+
+	@Override
+	public void delete(Key key) throws IOException {
+		enqueue(new Op(key, null));
+	}
+
+	private synchronized void enqueue(Op op) throws IOException {
+		checkError();
+		if (closed) {
+			throw new IOException("Writer is closed");
+		}
+
+		if (!isSpilling() && queue.size() < queueSize) {
+			queue.add(op);
+		} else {
+			if (current == null) {
+				Path path = new Path(dir, "spill-" + segmentNumber++);
+				current = new DynamoDBStagedWriter(fs, path);
+			}
+			if (op.item != null) {
+				current.put(op.key, op.item);
+			} else {
+				current.delete(op.key);
+			}
+			spilledRequests++;
+			if (current.getCount() >= segmentSize) {
+				rollSegment();
+			}
+		}
+		notifyAll();
+	}
+
+	/**
+	 * @return true while requests are spilled that the sender has not written
+	 */
+	private boolean isSpilling() {
+		return current != null || !segments.isEmpty() || replaying;
+	}
+
+	private void rollSegment() throws IOException {
+		current.close();
+		segments.add(current.getPath());
+		current = null;
+	}
+
+	/**
+	 * @return Number of requests spilled to disk so far
+	 */
+	public synchronized long getSpilledRequests() {
+		return spilledRequests;
+	}
+
+	/**
+	 * Waits until every request made so far, including spilled ones, has
+	 * been written.
+	 */
+	@Override
+	public void flush() throws IOException, InterruptedException {
+		synchronized (this) {
+			checkError();
+			long ticket = ++flushRequested;
+			notifyAll();
+			while (flushCompleted < ticket && error == null) {
+				wait(PROGRESS_INTERVAL);
+				if (progress != null) {
+					progress.progress();
+				}
+			}
+		}
+		checkError();
+	}
+
+	/**
+	 * Writes everything spilled, stops the sender and closes the underlying
+	 * writer.
+	 */
+	@Override
+	public void close() throws IOException, InterruptedException {
+		try {
+			if (!closed) {
+				flush();
+				synchronized (this) {
+					closed = true;
+					notifyAll();
+				}
+				thread.join();
+				writer.close();
+			}
+		} finally {
+			synchronized (this) {
+				closed = true;
+				notifyAll();
+				if (current != null) {
+					current.close();
+					current = null;
+				}
+			}
+			fs.delete(dir, true);
+		}
+		checkError();
+	}
+
+	private synchronized void setError(Throwable e) {
+		if (error == null) {
+			LOG.error("Spilled write failed", e);
+			error = e;
+		}
+		notifyAll();
+	}
+
+	private void checkError() throws IOException {
+		Throwable e = error;
+		if (e != null) {
+			if (e instanceof IOException) {
+				throw (IOException) e;
+			}
+			throw new IOException("Spilled write failed", e);
+		}
+	}
+}
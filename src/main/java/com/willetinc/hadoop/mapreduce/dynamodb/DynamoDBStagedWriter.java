@@ -0,0 +1,161 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.Progressable;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.Key;
+
+/**
+ * Writes puts and deletes to a file instead of a table, so they can be
+ * replayed against the table later with {@link #replay(FileSystem, Path,
+ * DynamoDBWriter, Progressable)}. A file is only complete once the writer has been closed.
+ */
+public class DynamoDBStagedWriter implements DynamoDBWriter {
+
+	private static final byte PUT = 0;
+
+	private static final byte DELETE = 1;
+
+	private static final byte END = 2;
+
+	/** Number of records replayed between progress reports */
+	static final int PROGRESS_INTERVAL = 1000;
+
+	private final DataOutputStream out;
+
+	private final Path path;
+
+	private long count = 0;
+
+	public DynamoDBStagedWriter(FileSystem fs, Path path) throws IOException {
+		this.path = path;
+		this.out = fs.create(path, true);
+	}
+
+	@Override
+	public void put(Key key, Map<String, AttributeValue> item)
+			throws IOException {
+		out.writeByte(PUT);
+		AttributeValueIOUtils.writeKey(key, out);
+		AttributeValueIOUtils.writeItem(item, out);
+		count++;
+	}
+
+	@Override
+	public void delete(Key key) throws IOException {
+		out.writeByte(DELETE);
+		AttributeValueIOUtils.writeKey(key, out);
+		count++;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			out.writeByte(END);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @return Number of puts and deletes staged
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * Sends every put and delete staged in a file to a writer, in the order
+	 * they were staged. The writer is flushed but not closed.
+	 * 
+	 * @param fs
+	 *            File system holding the file
+	 * @param path
+	 *            File written by a DynamoDBStagedWriter
+	 * @param writer
+	 *            Writer to send the staged puts and deletes to
+	 * @param progress
+	 *            Reports progress every {@value #PROGRESS_INTERVAL} records,
+	 *            may be null
+	 * @return Number of puts and deletes replayed
+	 * @throws IOException
+	 *             if the file is incomplete or cannot be read
+	 */
+	public static long replay(
+			FileSystem fs,
+			Path path,
+			DynamoDBWriter writer,
+			Progressable progress) throws IOException, InterruptedException {
+		DataInputStream in = fs.open(path);
+		try {
+			long count = 0;
+			while (true) {
+				byte op;
+				try {
+					op = in.readByte();
+				} catch (EOFException e) {
+					throw new IOException("Staged output " + path
+							+ " is incomplete after " + count + " records");
+				}
+
+				switch (op) {
+				case PUT: {
+					Key key = AttributeValueIOUtils.readKey(in);
+					writer.put(key, AttributeValueIOUtils.readItem(in));
+					break;
+				}
+				case DELETE:
+					writer.delete(AttributeValueIOUtils.readKey(in));
+					break;
+				case END:
+					writer.flush();
+					return count;
+				default:
+					throw new IOException("Unknown operation " + op
+							+ " in staged output " + path);
+				}
+				count++;
+				if (progress != null && count % PROGRESS_INTERVAL == 0) {
+					progress.progress();
+				}
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+}
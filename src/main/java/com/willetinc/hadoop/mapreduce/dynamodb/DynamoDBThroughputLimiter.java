@@ -0,0 +1,158 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.amazonaws.services.dynamodb.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodb.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodb.model.ProvisionedThroughputDescription;
+
+/**
+ * <p>
+ * Token bucket that paces requests against a share of a table's provisioned
+ * throughput.
+ * </p>
+ * 
+ * <p>
+ * The cost of a Scan, Query or write is only known once DynamoDB reports the
+ * consumed capacity units, so callers {@link #acquire()} before a request and
+ * {@link #consume(double)} the reported units afterwards. The bucket may go
+ * negative, in which case the next request waits until it is refilled.
+ * </p>
+ */
+public class DynamoDBThroughputLimiter {
+
+	private static final Log LOG = LogFactory
+			.getLog(DynamoDBThroughputLimiter.class);
+
+	private final double unitsPerSecond;
+
+	private final double maxUnits;
+
+	private double units;
+
+	private long lastRefill;
+
+	/**
+	 * @param unitsPerSecond
+	 *            Capacity units this limiter may consume per second
+	 */
+	public DynamoDBThroughputLimiter(double unitsPerSecond) {
+		if (unitsPerSecond <= 0) {
+			throw new IllegalArgumentException(
+					"Throughput must be greater than 0 units per second");
+		}
+		this.unitsPerSecond = unitsPerSecond;
+		this.maxUnits = Math.max(1.0, unitsPerSecond);
+		this.units = maxUnits;
+		this.lastRefill = currentTimeMillis();
+	}
+
+	public double getUnitsPerSecond() {
+		return unitsPerSecond;
+	}
+
+	/**
+	 * Blocks until the bucket holds a positive number of units.
+	 * 
+	 * @throws InterruptedException
+	 *             Interrupted while waiting
+	 */
+	public synchronized void acquire() throws InterruptedException {
+		refill();
+		while (units <= 0) {
+			long wait = (long) Math.ceil((1.0 - units) * 1000.0 / unitsPerSecond);
+			sleep(wait);
+			refill();
+		}
+	}
+
+	/**
+	 * Debits capacity units reported by DynamoDB.
+	 * 
+	 * @param consumedUnits
+	 *            Units consumed by a request
+	 */
+	public synchronized void consume(double consumedUnits) {
+		refill();
+		units -= consumedUnits;
+	}
+
+	synchronized double getAvailableUnits() {
+		refill();
+		return units;
+	}
+
+	private void refill() {
+		long now = currentTimeMillis();
+		if (now > lastRefill) {
+			units = Math.min(maxUnits, units + (now - lastRefill)
+					* unitsPerSecond / 1000.0);
+			lastRefill = now;
+		}
+	}
+
+	protected long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	protected void sleep(long millis) throws InterruptedException {
+		wait(millis);
+	}
+
+	/**
+	 * <p>
+	 * Creates a limiter for this task's share of a table's provisioned
+	 * throughput.
+	 * </p>
+	 * 
+	 * @param client
+	 *            Client used to describe the table
+	 * @param tableName
+	 *            Table to pace requests against
+	 * @param fraction
+	 *            Fraction of the provisioned throughput used by the job, where
+	 *            1.0 is all of it
+	 * @param numTasks
+	 *            Number of tasks sharing the throughput
+	 * @param reads
+	 *            true to use read capacity, false to use write capacity
+	 * @return Configured limiter
+	 */
+	public static DynamoDBThroughputLimiter create(
+			AmazonDynamoDBClient client,
+			String tableName,
+			double fraction,
+			int numTasks,
+			boolean reads) {
+		ProvisionedThroughputDescription throughput = client.describeTable(
+				new DescribeTableRequest().withTableName(tableName))
+				.getTable()
+				.getProvisionedThroughput();
+		Long provisioned = reads ? throughput.getReadCapacityUnits()
+				: throughput.getWriteCapacityUnits();
+
+		double unitsPerSecond = provisioned * fraction / Math.max(1, numTasks);
+		LOG.info(String.format(
+				"Limiting %s of table: %s to %.2f units/s (%d provisioned, %.0f%%, %d tasks)",
+				reads ? "reads" : "writes", tableName, unitsPerSecond,
+				provisioned, fraction * 100, numTasks));
+		return new DynamoDBThroughputLimiter(unitsPerSecond);
+	}
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.Key;
+
+/**
+ * Writes items to a single table for a record writer.
+ */
+public interface DynamoDBWriter {
+
+	/**
+	 * @param key
+	 *            Primary key of the item
+	 * @param item
+	 *            Item to put
+	 */
+	void put(Key key, Map<String, AttributeValue> item)
+			throws IOException,
+			InterruptedException;
+
+	/**
+	 * @param key
+	 *            Primary key of the item to delete
+	 */
+	void delete(Key key) throws IOException, InterruptedException;
+
+	/**
+	 * Blocks until every put and delete has been written.
+	 */
+	void flush() throws IOException, InterruptedException;
+
+	/**
+	 * Flushes and releases resources held by the writer.
+	 */
+	void close() throws IOException, InterruptedException;
+
+}
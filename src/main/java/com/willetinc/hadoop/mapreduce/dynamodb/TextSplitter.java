@@ -157,6 +157,28 @@ public class TextSplitter extends BigDecimalSplitter {
 	// that this still gives us a huge number of possible splits.
 	private final static int MAX_CHARS = 8;
 	
+	/**
+	 * @return Position of value within [minString, maxString] between 0 and 1
+	 */
+	float fraction(String minString, String maxString, String value) {
+		// strip the common prefix as generateRangeKeySplits does
+		int maxPrefixLen = Math.min(minString.length(), maxString.length());
+		int sharedLen;
+		for (sharedLen = 0; sharedLen < maxPrefixLen; sharedLen++) {
+			if (minString.charAt(sharedLen) != maxString.charAt(sharedLen)) {
+				break;
+			}
+		}
+		if (!value.startsWith(minString.substring(0, sharedLen))) {
+			return -1;
+		}
+
+		return fraction(
+				stringToBigDecimal(minString.substring(sharedLen), MAX_CHARS),
+				stringToBigDecimal(maxString.substring(sharedLen), MAX_CHARS),
+				stringToBigDecimal(value.substring(sharedLen), MAX_CHARS));
+	}
+
 	/**
 	 * Return a BigDecimal representation of string 'str' suitable for use in a
 	 * numerically-sorting order.
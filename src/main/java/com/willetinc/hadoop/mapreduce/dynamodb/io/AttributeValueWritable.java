@@ -23,6 +23,7 @@ import java.io.IOException;
 import org.apache.hadoop.io.Writable;
 
 import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.willetinc.hadoop.mapreduce.dynamodb.AttributeValueCodec;
 import com.willetinc.hadoop.mapreduce.dynamodb.AttributeValueIOUtils;
 import com.willetinc.hadoop.mapreduce.dynamodb.Types;
 
@@ -33,6 +34,8 @@ public abstract class AttributeValueWritable implements Writable {
 	private final Types type;
 	
 	private AttributeValue value;
+
+	private AttributeValueCodec.Reader reader;
 	
 	public AttributeValueWritable(Types type, String fieldName) {
 		this.type = type;
@@ -47,13 +50,61 @@ public abstract class AttributeValueWritable implements Writable {
 
 	@Override
 	public void readFields(DataInput in) throws IOException {
-		value = AttributeValueIOUtils.read(type, in);
-
+		DataInput legacyIn = AttributeValueCodec.readVersion(in);
+		if (null != legacyIn) {
+			readLegacyValue(legacyIn);
+		} else {
+			readValue(in);
+		}
 	}
 
 	@Override
 	public void write(DataOutput out) throws IOException {
-		AttributeValueIOUtils.write(type, value, out);
+		AttributeValueCodec.writeVersion(out);
+		writeValue(out);
+	}
+
+	/**
+	 * Reads the value without the encoding version, for writables that
+	 * check the version once for all of their fields.
+	 */
+	void readValue(DataInput in) throws IOException {
+		value = null == reader
+				? AttributeValueCodec.read(type, in)
+				: reader.read(in);
+	}
+
+	/**
+	 * Reads a value written by a release before AttributeValueCodec.
+	 */
+	void readLegacyValue(DataInput in) throws IOException {
+		value = AttributeValueIOUtils.read(type, in);
+	}
+
+	void writeValue(DataOutput out) throws IOException {
+		AttributeValueCodec.write(type, value, out);
+	}
+
+	/**
+	 * <p>
+	 * Enables reading values into recycled holders instead of allocating a
+	 * new AttributeValue on every call to readFields. When enabled, the
+	 * value and any string, buffer or list it holds may be overwritten by
+	 * the next call to readFields.
+	 * </p>
+	 * 
+	 * @param reuse
+	 *            true to reuse values
+	 */
+	public void setReuseValues(boolean reuse) {
+		reader = reuse ? new AttributeValueCodec.Reader(type) : null;
+	}
+
+	/**
+	 * @return true if values are read into recycled holders
+	 */
+	public boolean isReuseValues() {
+		return null != reader;
 	}
 
 	public String getFieldName() {
@@ -0,0 +1,371 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.willetinc.hadoop.mapreduce.dynamodb.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.willetinc.hadoop.mapreduce.dynamodb.AttributeValueIOUtils;
+import com.willetinc.hadoop.mapreduce.dynamodb.Types;
+
+//@formatter:off
+/**
+ * <p>DynamoDBComparableKey is an abstract primary key that can be used as a
+ * map output key. Keys sort by hash key and then range key, in DynamoDB
+ * order: numbers numerically, strings by their UTF-8 bytes and binaries as
+ * unsigned bytes.
+ * </p>
+ * 
+ * <p>Keys are serialized so that {@link Comparator} sorts them by comparing
+ * bytes, without deserializing them. Numbers are therefore written in a
+ * normalized form and read back without trailing zeros. Every key class
+ * has to register the comparator:
+ * </p>
+ * <pre>
+ *	public class UserEventKey extends DynamoDBComparableKey {
+ *		static {
+ *			DynamoDBComparableKey.define(UserEventKey.class);
+ *		}
+ *
+ *		public UserEventKey() {
+ *			super(new SWritable("user") {}, new NWritable("timestamp") {});
+ *		}
+ *	}
+ * </pre>
+ */
+//@formatter:on
+public abstract class DynamoDBComparableKey implements DynamoDBKeyWritable,
+		WritableComparable<DynamoDBComparableKey> {
+
+	/** Type marker of a missing key element */
+	private static final int ABSENT = 0xff;
+
+	private static final byte NEGATIVE = 0x01;
+
+	private static final byte ZERO = 0x02;
+
+	private static final byte POSITIVE = 0x03;
+
+	/**
+	 * Compares serialized keys byte by byte.
+	 */
+	public static class Comparator extends WritableComparator {
+
+		public Comparator(Class<? extends DynamoDBComparableKey> keyClass) {
+			super(keyClass, true);
+		}
+
+		@Override
+		public int compare(
+				byte[] b1,
+				int s1,
+				int l1,
+				byte[] b2,
+				int s2,
+				int l2) {
+			return compareKeys(b1, s1, b2, s2);
+		}
+	}
+
+	/**
+	 * Registers the byte comparator of a key class.
+	 * 
+	 * @param keyClass
+	 *            Key class
+	 */
+	public static void define(Class<? extends DynamoDBComparableKey> keyClass) {
+		WritableComparator.define(keyClass, new Comparator(keyClass));
+	}
+
+	private final AttributeValueWritable hashKey;
+
+	private final AttributeValueWritable rangeKey;
+
+	protected DynamoDBComparableKey(
+			AttributeValueWritable hashKey,
+			AttributeValueWritable rangeKey) {
+		this.hashKey = hashKey;
+		this.rangeKey = rangeKey;
+	}
+
+	@Override
+	public AttributeValueWritable getHashKey() {
+		return hashKey;
+	}
+
+	@Override
+	public AttributeValue getHashKeyValue() {
+		return hashKey.getValue();
+	}
+
+	@Override
+	public void setHashKeyValue(AttributeValue value) {
+		hashKey.setValue(value);
+	}
+
+	@Override
+	public boolean hasRangeKey() {
+		return null != rangeKey;
+	}
+
+	@Override
+	public AttributeValueWritable getRangeKey() {
+		return rangeKey;
+	}
+
+	@Override
+	public AttributeValue getRangeKeyValue() {
+		return rangeKey.getValue();
+	}
+
+	@Override
+	public void setRangeKeyValue(AttributeValue value) {
+		rangeKey.setValue(value);
+	}
+
+	@Override
+	public void readFields(Map<String, AttributeValue> in) {
+		hashKey.setValue(in.get(hashKey.getFieldName()));
+		if (null != rangeKey) {
+			rangeKey.setValue(in.get(rangeKey.getFieldName()));
+		}
+	}
+
+	@Override
+	public void write(Map<String, AttributeValue> out) {
+		out.put(hashKey.getFieldName(), hashKey.getValue());
+		if (null != rangeKey) {
+			out.put(rangeKey.getFieldName(), rangeKey.getValue());
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		hashKey.setValue(readElement(hashKey.getType(), in));
+		AttributeValue value = readElement(null == rangeKey ? null : rangeKey
+				.getType(), in);
+		if (null != rangeKey) {
+			rangeKey.setValue(value);
+		}
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		writeElement(hashKey, out);
+		writeElement(rangeKey, out);
+	}
+
+	@Override
+	public int compareTo(DynamoDBComparableKey other) {
+		return compareKeys(toBytes(this), 0, toBytes(other), 0);
+	}
+
+	@Override
+	public int hashCode() {
+		// consistent with compareTo, which ignores the form of numbers
+		byte[] bytes = toBytes(this);
+		return WritableComparator.hashBytes(bytes, bytes.length);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		return compareTo((DynamoDBComparableKey) obj) == 0;
+	}
+
+	@Override
+	public String toString() {
+		return "{" + getHashKeyValue()
+				+ (hasRangeKey() ? ", " + getRangeKeyValue() : "") + "}";
+	}
+
+	/**
+	 * Compares the elements of two serialized keys; the length prefixes only
+	 * delimit the element bytes and take no part in the ordering.
+	 */
+	private static int compareKeys(byte[] b1, int s1, byte[] b2, int s2) {
+		try {
+			for (int i = 0; i < 2; i++) {
+				int t1 = b1[s1++] & 0xff;
+				int t2 = b2[s2++] & 0xff;
+				if (t1 != t2) {
+					return t1 < t2 ? -1 : 1;
+				}
+				if (t1 == ABSENT) {
+					continue;
+				}
+
+				int n1 = WritableComparator.readVInt(b1, s1);
+				int n2 = WritableComparator.readVInt(b2, s2);
+				s1 += WritableUtils.decodeVIntSize(b1[s1]);
+				s2 += WritableUtils.decodeVIntSize(b2[s2]);
+				int c = WritableComparator.compareBytes(b1, s1, n1, b2, s2, n2);
+				if (c != 0) {
+					return c;
+				}
+				s1 += n1;
+				s2 += n2;
+			}
+			return 0;
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	private static byte[] toBytes(DynamoDBComparableKey key) {
+		DataOutputBuffer out = new DataOutputBuffer();
+		try {
+			key.write(out);
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+		byte[] bytes = new byte[out.getLength()];
+		System.arraycopy(out.getData(), 0, bytes, 0, bytes.length);
+		return bytes;
+	}
+
+	private static void writeElement(
+			AttributeValueWritable element,
+			DataOutput out) throws IOException {
+		if (null == element || null == element.getValue()) {
+			out.writeByte(ABSENT);
+			return;
+		}
+
+		AttributeValue value = element.getValue();
+		byte[] bytes;
+		switch (element.getType()) {
+		case STRING:
+			bytes =
+					AttributeValueIOUtils.toByteArray(Text.encode(value.getS()));
+			break;
+		case NUMBER:
+			bytes = encodeNumber(value.getN());
+			break;
+		case BINARY:
+			bytes = AttributeValueIOUtils.toByteArray(value.getB());
+			break;
+		default:
+			throw new IOException("Key " + element.getFieldName()
+					+ " has unsupported type " + element.getType());
+		}
+		out.writeByte(element.getType().ordinal());
+		WritableUtils.writeVInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private static AttributeValue readElement(Types expected, DataInput in)
+			throws IOException {
+		int type = in.readUnsignedByte();
+		if (type == ABSENT) {
+			return null;
+		}
+		if (null == expected || type != expected.ordinal()) {
+			throw new IOException("Unexpected key type " + type);
+		}
+
+		byte[] bytes = new byte[WritableUtils.readVInt(in)];
+		in.readFully(bytes);
+		switch (expected) {
+		case STRING:
+			return new AttributeValue().withS(Text.decode(bytes));
+		case NUMBER:
+			return new AttributeValue().withN(decodeNumber(bytes));
+		default:
+			return new AttributeValue().withB(ByteBuffer.wrap(bytes));
+		}
+	}
+
+	/**
+	 * Encodes a number so that encoded numbers sort like their values: a
+	 * sign byte, then for non-zero numbers the decimal exponent of 0.d1d2...
+	 * and its digits, terminated by 0. The bytes after the sign are inverted
+	 * for negative numbers.
+	 */
+	static byte[] encodeNumber(String number) {
+		BigDecimal value = new BigDecimal(number);
+		if (value.signum() == 0) {
+			return new byte[] { ZERO };
+		}
+
+		boolean negative = value.signum() < 0;
+		value = value.abs().stripTrailingZeros();
+		String digits = value.unscaledValue().toString();
+		int exponent = digits.length() - value.scale();
+
+		byte[] bytes = new byte[digits.length() + 6];
+		bytes[0] = negative ? NEGATIVE : POSITIVE;
+		int biased = exponent ^ 0x80000000;
+		bytes[1] = (byte) (biased >>> 24);
+		bytes[2] = (byte) (biased >>> 16);
+		bytes[3] = (byte) (biased >>> 8);
+		bytes[4] = (byte) biased;
+		for (int i = 0; i < digits.length(); i++) {
+			bytes[5 + i] = (byte) (digits.charAt(i) - '0' + 1);
+		}
+		bytes[bytes.length - 1] = 0;
+
+		if (negative) {
+			for (int i = 1; i < bytes.length; i++) {
+				bytes[i] = (byte) ~bytes[i];
+			}
+		}
+		return bytes;
+	}
+
+	static String decodeNumber(byte[] bytes) throws IOException {
+		if (bytes[0] == ZERO) {
+			return "0";
+		}
+
+		boolean negative = bytes[0] == NEGATIVE;
+		int flip = negative ? 0xff : 0;
+		int biased = 0;
+		for (int i = 1; i < 5; i++) {
+			biased = (biased << 8) | ((bytes[i] ^ flip) & 0xff);
+		}
+		int exponent = biased ^ 0x80000000;
+
+		StringBuilder digits = new StringBuilder();
+		for (int i = 5; i < bytes.length - 1; i++) {
+			digits.append((char) (((bytes[i] ^ flip) & 0xff) - 1 + '0'));
+		}
+		BigDecimal value = new BigDecimal(
+				new BigInteger(digits.toString()),
+				digits.length() - exponent);
+		return (negative ? value.negate() : value).toPlainString();
+	}
+
+}
@@ -20,11 +20,13 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
 import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.willetinc.hadoop.mapreduce.dynamodb.AttributeValueCodec;
 
 //@formatter:off
 /**
@@ -46,6 +48,9 @@ import com.amazonaws.services.dynamodb.model.AttributeValue;
  *		new NWritable("another-field") {},
  *	}) {};
  * </pre>
+ * <p>Items are written with {@link AttributeValueCodec}. Items written by
+ * earlier releases, for instance in sequence files, are still read.
+ * </p>
  */
 //@formatter:on
 public abstract class DynamoDBItemWritable implements DynamoDBKeyWritable {
@@ -63,17 +68,15 @@ public abstract class DynamoDBItemWritable implements DynamoDBKeyWritable {
 		this.hashKey = hashKey;
 		this.rangeKey = rangeKey;
 
-		if (null == rangeKey) {
-			this.fields = new AttributeValueWritable[fields.length + 1];
-		} else {
-			// has RangeKey
-			this.fields = new AttributeValueWritable[fields.length + 2];
+		int numKeys = (null == rangeKey) ? 1 : 2;
+		this.fields = new AttributeValueWritable[fields.length + numKeys];
+		this.fields[0] = hashKey;
+		if (null != rangeKey) {
 			this.fields[1] = rangeKey;
 		}
-		this.fields[0] = hashKey;
 
 		// copy remaining fields
-		System.arraycopy(fields, 0, this.fields, 2, fields.length);
+		System.arraycopy(fields, 0, this.fields, numKeys, fields.length);
 	}
 
 	@Override
@@ -93,7 +96,7 @@ public abstract class DynamoDBItemWritable implements DynamoDBKeyWritable {
 
 	@Override
 	public boolean hasRangeKey() {
-		return (null == rangeKey);
+		return (null != rangeKey);
 	}
 
 	@Override
@@ -111,6 +114,44 @@ public abstract class DynamoDBItemWritable implements DynamoDBKeyWritable {
 		this.rangeKey.setValue(rangeKey);
 	}
 
+	/**
+	 * @return Names of all attributes of this item, keys first
+	 */
+	public List<String> getFieldNames() {
+		List<String> names = new ArrayList<String>(fields.length);
+		for (AttributeValueWritable field : fields) {
+			names.add(field.getFieldName());
+		}
+		return names;
+	}
+
+	/**
+	 * Enables reading the values of all fields into recycled holders, see
+	 * {@link AttributeValueWritable#setReuseValues(boolean)}. Values
+	 * returned by this item are then only valid until the next call to
+	 * readFields.
+	 * 
+	 * @param reuse
+	 *            true to reuse values
+	 */
+	public void setReuseValues(boolean reuse) {
+		for (AttributeValueWritable field : fields) {
+			field.setReuseValues(reuse);
+		}
+	}
+
+	/**
+	 * @return true if any field reads its values into recycled holders
+	 */
+	public boolean isReuseValues() {
+		for (AttributeValueWritable field : fields) {
+			if (field.isReuseValues()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	public AttributeValue get(int columnIndex) {
 		return fields[columnIndex].getValue();
 	}
@@ -190,15 +231,21 @@ public abstract class DynamoDBItemWritable implements DynamoDBKeyWritable {
 
 	@Override
 	public void readFields(DataInput in) throws IOException {
+		DataInput legacyIn = AttributeValueCodec.readVersion(in);
 		for (AttributeValueWritable field : fields) {
-			field.readFields(in);
+			if (null != legacyIn) {
+				field.readLegacyValue(legacyIn);
+			} else {
+				field.readValue(in);
+			}
 		}
 	}
 
 	@Override
 	public void write(DataOutput out) throws IOException {
+		AttributeValueCodec.writeVersion(out);
 		for (AttributeValueWritable field : fields) {
-			field.write(out);
+			field.writeValue(out);
 		}
 	}
 
@@ -0,0 +1,269 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+
+public class AttributeValueCodecTest {
+
+	private static DataInputBuffer toInput(DataOutputBuffer out) {
+		DataInputBuffer in = new DataInputBuffer();
+		in.reset(out.getData(), out.getLength());
+		return in;
+	}
+
+	private static AttributeValue roundtrip(Types type, AttributeValue value)
+			throws IOException {
+		DataOutputBuffer out = new DataOutputBuffer();
+		AttributeValueCodec.write(type, value, out);
+		DataInputBuffer in = toInput(out);
+		AttributeValue read = AttributeValueCodec.read(type, in);
+		assertEquals(out.getLength(), in.getPosition());
+		return read;
+	}
+
+	@Test
+	public void testReadWriteNumbers() throws IOException {
+		String[] numbers = { "0", "123", "-123", "1.50", "-0.001", "1E+20",
+				"9223372036854775807", "-9223372036854775808",
+				"12345678901234567890123456789012345678",
+				"1.2345678901234567890123456789012345678E-120", "1e5", "-0",
+				"+7", "00.10" };
+		for (String number : numbers) {
+			AttributeValue value = new AttributeValue().withN(number);
+			assertEquals(value, roundtrip(Types.NUMBER, value));
+		}
+
+		AttributeValue set = new AttributeValue().withNS("1", "2.5", "1e5");
+		assertEquals(set, roundtrip(Types.NUMBER_SET, set));
+	}
+
+	@Test
+	public void testNumbersAreCompact() throws IOException {
+		DataOutputBuffer out = new DataOutputBuffer();
+		AttributeValueCodec.write(
+				Types.NUMBER,
+				new AttributeValue().withN("42"),
+				out);
+		// tag and value, one byte each
+		assertEquals(2, out.getLength());
+	}
+
+	@Test
+	public void testReadWriteStrings() throws IOException {
+		AttributeValue value = new AttributeValue().withS("café");
+		assertEquals(value, roundtrip(Types.STRING, value));
+
+		AttributeValue set = new AttributeValue().withSS("a", "bc");
+		assertEquals(set, roundtrip(Types.STRING_SET, set));
+	}
+
+	@Test
+	public void testSmallBinariesAreRaw() throws IOException {
+		byte[] id = new byte[16];
+		new Random(0).nextBytes(id);
+		AttributeValue value = new AttributeValue().withB(ByteBuffer.wrap(id));
+
+		DataOutputBuffer out = new DataOutputBuffer();
+		AttributeValueCodec.write(Types.BINARY, value, out);
+		assertEquals(17, out.getLength());
+		assertEquals(value, AttributeValueCodec.read(Types.BINARY, toInput(out)));
+	}
+
+	@Test
+	public void testLargeBinariesAreCompressed() throws IOException {
+		byte[] zeros = new byte[AttributeValueCodec.COMPRESS_THRESHOLD * 4];
+		AttributeValue value = new AttributeValue().withB(ByteBuffer.wrap(zeros));
+
+		DataOutputBuffer out = new DataOutputBuffer();
+		AttributeValueCodec.write(Types.BINARY, value, out);
+		assertTrue(out.getLength() < zeros.length);
+		assertEquals(value, AttributeValueCodec.read(Types.BINARY, toInput(out)));
+
+		// random bytes do not compress and stay raw
+		byte[] random = new byte[AttributeValueCodec.COMPRESS_THRESHOLD * 4];
+		new Random(0).nextBytes(random);
+		AttributeValue set = new AttributeValue().withBS(
+				ByteBuffer.wrap(random),
+				ByteBuffer.wrap(zeros));
+		assertEquals(set, roundtrip(Types.BINARY_SET, set));
+	}
+
+	@Test
+	public void testBinaryPosition() throws IOException {
+		ByteBuffer buf = ByteBuffer.wrap(new byte[] { 1, 2, 3, 4 });
+		buf.position(1);
+		AttributeValue value = new AttributeValue().withB(buf.slice());
+
+		AttributeValue read = roundtrip(Types.BINARY, value);
+		assertEquals(ByteBuffer.wrap(new byte[] { 2, 3, 4 }), read.getB());
+		assertEquals(1, buf.position());
+	}
+
+	@Test
+	public void testReadWriteCollection() throws IOException {
+		Collection<AttributeValue> values = Arrays.asList(
+				new AttributeValue().withN("1"),
+				new AttributeValue().withN("2"));
+
+		DataOutputBuffer out = new DataOutputBuffer();
+		AttributeValueCodec.writeCollection(Types.NUMBER, values, out);
+		assertEquals(values, AttributeValueCodec.readCollection(
+				Types.NUMBER,
+				toInput(out)));
+	}
+
+	@Test
+	public void testVersion() throws IOException {
+		DataOutputBuffer out = new DataOutputBuffer();
+		AttributeValueCodec.writeVersion(out);
+		assertNull(AttributeValueCodec.readVersion(toInput(out)));
+
+		// values of earlier releases start with a length or count
+		out.reset();
+		AttributeValueIOUtils.write(
+				Types.STRING,
+				new AttributeValue().withS("legacy"),
+				out);
+		DataInput legacyIn = AttributeValueCodec.readVersion(toInput(out));
+		assertEquals("legacy", AttributeValueIOUtils.read(Types.STRING, legacyIn).getS());
+
+		out.reset();
+		out.writeByte(0x80 | (AttributeValueCodec.VERSION + 1));
+		try {
+			AttributeValueCodec.readVersion(toInput(out));
+			fail("Expected an IOException");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testReaderReusesValues() throws IOException {
+		String[] numbers = { "12", "12", "1.50", "1e5", "1e5",
+				"123456789012345678901234567890", "12" };
+		DataOutputBuffer out = new DataOutputBuffer();
+		for (String number : numbers) {
+			AttributeValueCodec.write(
+					Types.NUMBER,
+					new AttributeValue().withN(number),
+					out);
+		}
+
+		AttributeValueCodec.Reader reader =
+				new AttributeValueCodec.Reader(Types.NUMBER);
+		DataInputBuffer in = toInput(out);
+		AttributeValue value = reader.read(in);
+		String previous = value.getN();
+		assertEquals("12", previous);
+		for (int i = 1; i < numbers.length; i++) {
+			assertSame(value, reader.read(in));
+			assertEquals(numbers[i], value.getN());
+			if (numbers[i].equals(numbers[i - 1])) {
+				assertSame(previous, value.getN());
+			}
+			previous = value.getN();
+		}
+	}
+
+	@Test
+	public void testReaderReusesStrings() throws IOException {
+		String[] strings = { "café", "café", "cafe", "", "a longer string value" };
+		DataOutputBuffer out = new DataOutputBuffer();
+		for (String string : strings) {
+			AttributeValueCodec.write(
+					Types.STRING,
+					new AttributeValue().withS(string),
+					out);
+		}
+
+		AttributeValueCodec.Reader reader =
+				new AttributeValueCodec.Reader(Types.STRING);
+		DataInputBuffer in = toInput(out);
+		String previous = null;
+		for (int i = 0; i < strings.length; i++) {
+			String read = reader.read(in).getS();
+			assertEquals(strings[i], read);
+			if (i > 0 && strings[i].equals(strings[i - 1])) {
+				assertSame(previous, read);
+			}
+			previous = read;
+		}
+	}
+
+	@Test
+	public void testReaderReusesBuffersAndLists() throws IOException {
+		DataOutputBuffer out = new DataOutputBuffer();
+		AttributeValueCodec.write(
+				Types.BINARY,
+				new AttributeValue().withB(ByteBuffer.wrap(new byte[] { 1, 2, 3 })),
+				out);
+		AttributeValueCodec.write(
+				Types.BINARY,
+				new AttributeValue().withB(ByteBuffer.wrap(new byte[] { 4 })),
+				out);
+
+		AttributeValueCodec.Reader reader =
+				new AttributeValueCodec.Reader(Types.BINARY);
+		DataInputBuffer in = toInput(out);
+		ByteBuffer first = reader.read(in).getB();
+		assertEquals(ByteBuffer.wrap(new byte[] { 1, 2, 3 }), first);
+		ByteBuffer second = reader.read(in).getB();
+		assertEquals(ByteBuffer.wrap(new byte[] { 4 }), second);
+		assertSame(first, second);
+
+		out.reset();
+		AttributeValueCodec.write(
+				Types.STRING_SET,
+				new AttributeValue().withSS("a", "b", "c"),
+				out);
+		AttributeValueCodec.write(
+				Types.STRING_SET,
+				new AttributeValue().withSS("a", "d"),
+				out);
+
+		reader = new AttributeValueCodec.Reader(Types.STRING_SET);
+		in = toInput(out);
+		AttributeValue value = reader.read(in);
+		assertEquals(Arrays.asList("a", "b", "c"), value.getSS());
+		Object list = value.getSS();
+		String a = value.getSS().get(0);
+		reader.read(in);
+		assertEquals(Arrays.asList("a", "d"), value.getSS());
+		assertSame(list, value.getSS());
+		assertSame(a, value.getSS().get(0));
+	}
+
+}
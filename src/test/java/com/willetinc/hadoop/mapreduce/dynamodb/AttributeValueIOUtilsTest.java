@@ -20,12 +20,19 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertNull;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.commons.codec.binary.Base64;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.junit.Test;
 
 import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.Key;
 import com.willetinc.hadoop.mapreduce.dynamodb.AttributeValueIOUtils;
 import com.willetinc.hadoop.mapreduce.dynamodb.Types;
 
@@ -89,5 +96,92 @@ public class AttributeValueIOUtilsTest {
 	public void testValueOfNull() {
 		assertNull(AttributeValueIOUtils.valueOf(Types.BINARY, null));
 	}
+	
+	@Test
+	public void testSizeOf() {
+		final byte[] BYTES = new byte[] {0xD, 0xE, 0xA, 0xD, 0xB, 0xE, 0xE, 0xF};
+		Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+		item.put("id", new AttributeValue().withS("caf\u00e9"));
+		item.put("count", new AttributeValue().withN("123"));
+		item.put("data", new AttributeValue().withB(ByteBuffer.wrap(BYTES)));
+		item.put("tags", new AttributeValue().withSS("a", "bc"));
+		
+		// names: 2 + 5 + 4 + 4, values: 5 + 3 + 8 + 3
+		assertEquals(34, AttributeValueIOUtils.sizeOf(item));
+		assertEquals(0, AttributeValueIOUtils.sizeOf((AttributeValue) null));
+	}
+
+	@Test
+	public void testReadWriteItem() throws IOException {
+		final byte[] BYTES = new byte[] {0xD, 0xE, 0xA, 0xD, 0xB, 0xE, 0xE, 0xF};
+		Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+		item.put("id", new AttributeValue().withS("caf\u00e9"));
+		item.put("count", new AttributeValue().withN("123"));
+		item.put("data", new AttributeValue().withB(ByteBuffer.wrap(BYTES)));
+		item.put("tags", new AttributeValue().withSS("a", "bc"));
+		item.put("scores", new AttributeValue().withNS("1", "2.5"));
+		item.put("blobs", new AttributeValue().withBS(ByteBuffer.wrap(BYTES)));
+		
+		DataOutputBuffer out = new DataOutputBuffer();
+		AttributeValueIOUtils.writeItem(item, out);
+		DataInputBuffer in = new DataInputBuffer();
+		in.reset(out.getData(), out.getLength());
+		
+		assertEquals(item, AttributeValueIOUtils.readItem(in));
+	}
+	
+	@Test
+	public void testReadWriteKey() throws IOException {
+		Key key = new Key(new AttributeValue().withS("hash"));
+		
+		DataOutputBuffer out = new DataOutputBuffer();
+		AttributeValueIOUtils.writeKey(key, out);
+		DataInputBuffer in = new DataInputBuffer();
+		in.reset(out.getData(), out.getLength());
+		
+		assertEquals(key, AttributeValueIOUtils.readKey(in));
+	}
+
+	@Test
+	public void testBufferPositionAndLimit() throws IOException {
+		ByteBuffer buf = ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5 });
+		buf.position(1);
+		buf.limit(4);
+		ByteBuffer expected = ByteBuffer.wrap(new byte[] { 2, 3, 4 });
+
+		assertArrayEquals(new byte[] { 2, 3, 4 }, AttributeValueIOUtils.toByteArray(buf));
+		assertEquals(1, buf.position());
+		assertEquals(
+				Base64.encodeBase64String(new byte[] { 2, 3, 4 }),
+				AttributeValueIOUtils.toString(Types.BINARY, new AttributeValue().withB(buf)));
+
+		// read-only and direct buffers have no accessible array
+		ByteBuffer direct = ByteBuffer.allocateDirect(3);
+		direct.put(new byte[] { 2, 3, 4 }).flip();
+		ByteBuffer[] buffers = { buf.slice(), buf.asReadOnlyBuffer(), direct };
+		for (ByteBuffer b : buffers) {
+			AttributeValue value = new AttributeValue().withB(b);
+			DataOutputBuffer out = new DataOutputBuffer();
+			AttributeValueIOUtils.write(Types.BINARY, value, out);
+			AttributeValueIOUtils.writeBytes(b, out);
+			DataInputBuffer in = new DataInputBuffer();
+			in.reset(out.getData(), out.getLength());
+
+			assertEquals(expected, AttributeValueIOUtils.read(Types.BINARY, in).getB());
+			byte[] raw = new byte[3];
+			in.readFully(raw);
+			assertArrayEquals(new byte[] { 2, 3, 4 }, raw);
+			assertEquals(3, b.remaining());
+		}
+
+		AttributeValue set = new AttributeValue().withBS(buf, direct);
+		DataOutputBuffer out = new DataOutputBuffer();
+		AttributeValueIOUtils.write(Types.BINARY_SET, set, out);
+		DataInputBuffer in = new DataInputBuffer();
+		in.reset(out.getData(), out.getLength());
+		assertEquals(
+				Arrays.asList(expected, expected),
+				AttributeValueIOUtils.read(Types.BINARY_SET, in).getBS());
+	}
 
 }
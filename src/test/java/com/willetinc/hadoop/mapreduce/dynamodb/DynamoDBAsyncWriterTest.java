@@ -0,0 +1,285 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.Key;
+
+public class DynamoDBAsyncWriterTest {
+
+	/**
+	 * Records the hash key and value of every put.
+	 */
+	private static class RecordingWriter implements DynamoDBWriter {
+
+		final List<String> written;
+
+		int flushes = 0;
+
+		RecordingWriter(List<String> written) {
+			this.written = written;
+		}
+
+		@Override
+		public void put(Key key, Map<String, AttributeValue> item)
+				throws IOException,
+				InterruptedException {
+			written.add(key.getHashKeyElement().getN() + "="
+					+ item.get("value").getS());
+		}
+
+		@Override
+		public void delete(Key key) throws IOException, InterruptedException {
+			written.add(key.getHashKeyElement().getN() + "=");
+		}
+
+		@Override
+		public void flush() throws IOException, InterruptedException {
+			flushes++;
+		}
+
+		@Override
+		public void close() throws IOException, InterruptedException {
+		}
+	}
+
+	private static Key key(int i) {
+		return new Key(new AttributeValue().withN(Integer.toString(i)));
+	}
+
+	private static Map<String, AttributeValue> item(String value) {
+		Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+		item.put("value", new AttributeValue().withS(value));
+		return item;
+	}
+
+	@Test
+	public void testWritesInKeyOrder() throws IOException, InterruptedException {
+		final List<String> written = Collections
+				.synchronizedList(new ArrayList<String>());
+		DynamoDBAsyncWriter writer = new DynamoDBAsyncWriter(
+				new DynamoDBAsyncWriter.WriterFactory() {
+					@Override
+					public DynamoDBWriter createWriter() {
+						return new RecordingWriter(written);
+					}
+				},
+				4,
+				8,
+				0,
+				"test");
+
+		for (int version = 0; version < 10; version++) {
+			for (int i = 0; i < 20; i++) {
+				writer.put(key(i), item(Integer.toString(version)));
+			}
+		}
+		writer.delete(key(0));
+		writer.close();
+
+		assertEquals(201, written.size());
+		for (int i = 0; i < 20; i++) {
+			// every key is written by one sender in the order of the puts
+			List<String> writes = new ArrayList<String>();
+			for (String write : written) {
+				if (write.startsWith(i + "=")) {
+					writes.add(write);
+				}
+			}
+			int expected = (i == 0) ? 11 : 10;
+			assertEquals(expected, writes.size());
+			for (int version = 0; version < 10; version++) {
+				assertEquals(i + "=" + version, writes.get(version));
+			}
+			if (i == 0) {
+				// the delete follows the puts of its key
+				assertEquals("0=", writes.get(10));
+			}
+		}
+	}
+
+	@Test
+	public void testFlushWaitsForSenders() throws IOException, InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<String> written = Collections
+				.synchronizedList(new ArrayList<String>());
+		DynamoDBAsyncWriter writer = new DynamoDBAsyncWriter(
+				new DynamoDBAsyncWriter.WriterFactory() {
+					@Override
+					public DynamoDBWriter createWriter() {
+						return new RecordingWriter(written) {
+							@Override
+							public void put(
+									Key key,
+									Map<String, AttributeValue> item)
+									throws IOException,
+									InterruptedException {
+								release.await();
+								super.put(key, item);
+							}
+						};
+					}
+				},
+				2,
+				10,
+				0,
+				"test");
+
+		writer.put(key(1), item("a"));
+		writer.put(key(2), item("b"));
+		assertTrue(written.isEmpty());
+
+		release.countDown();
+		writer.flush();
+		assertEquals(2, written.size());
+		writer.close();
+	}
+
+	@Test
+	public void testErrorSurfacesOnNextWrite() throws InterruptedException {
+		final AmazonClientException failure = new AmazonClientException("test");
+		DynamoDBAsyncWriter writer = new DynamoDBAsyncWriter(
+				new DynamoDBAsyncWriter.WriterFactory() {
+					@Override
+					public DynamoDBWriter createWriter() {
+						return new RecordingWriter(new ArrayList<String>()) {
+							@Override
+							public void put(
+									Key key,
+									Map<String, AttributeValue> item) {
+								throw failure;
+							}
+						};
+					}
+				},
+				1,
+				10,
+				0,
+				"test");
+
+		try {
+			writer.put(key(1), item("a"));
+			writer.flush();
+			fail("error not reported");
+		} catch (IOException e) {
+			assertSame(failure, e.getCause());
+		}
+
+		try {
+			writer.put(key(2), item("b"));
+			fail("error not reported");
+		} catch (IOException e) {
+			assertSame(failure, e.getCause());
+		}
+
+		try {
+			writer.close();
+			fail("error not reported");
+		} catch (IOException e) {
+			assertSame(failure, e.getCause());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testErrorDoesNotBlockCallers() throws InterruptedException {
+		final Error failure = new OutOfMemoryError("test");
+		DynamoDBAsyncWriter writer = new DynamoDBAsyncWriter(
+				new DynamoDBAsyncWriter.WriterFactory() {
+					@Override
+					public DynamoDBWriter createWriter() {
+						return new RecordingWriter(new ArrayList<String>()) {
+							@Override
+							public void put(
+									Key key,
+									Map<String, AttributeValue> item) {
+								throw failure;
+							}
+						};
+					}
+				},
+				1,
+				2,
+				0,
+				"test");
+
+		// more puts than the queue holds, before the error is seen
+		int puts = 0;
+		try {
+			for (; puts < 100; puts++) {
+				writer.put(key(1), item("a"));
+			}
+			fail("error not reported");
+		} catch (IOException e) {
+			assertSame(failure, e.getCause());
+		}
+		assertTrue(puts > 0);
+
+		try {
+			writer.flush();
+			fail("error not reported");
+		} catch (IOException e) {
+			assertSame(failure, e.getCause());
+		}
+
+		try {
+			writer.close();
+			fail("error not reported");
+		} catch (IOException e) {
+			assertSame(failure, e.getCause());
+		}
+	}
+
+	@Test
+	public void testIdleFlush() throws IOException, InterruptedException {
+		final List<RecordingWriter> writers = new ArrayList<RecordingWriter>();
+		DynamoDBAsyncWriter writer = new DynamoDBAsyncWriter(
+				new DynamoDBAsyncWriter.WriterFactory() {
+					@Override
+					public DynamoDBWriter createWriter() {
+						RecordingWriter recordingWriter = new RecordingWriter(
+								Collections.synchronizedList(new ArrayList<String>()));
+						writers.add(recordingWriter);
+						return recordingWriter;
+					}
+				},
+				1,
+				10,
+				10,
+				"test");
+
+		writer.put(key(1), item("a"));
+		Thread.sleep(100);
+		writer.close();
+		assertTrue(writers.get(0).flushes > 0);
+	}
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.Key;
+import com.willetinc.hadoop.mapreduce.dynamodb.DynamoDBCheckpointStore.Checkpoint;
+
+public class DynamoDBCheckpointStoreTest {
+
+	static final Path TEST_DIR = new Path(System.getProperty(
+			"test.build.data",
+			"target/test-data"), "checkpoints");
+
+	private Configuration conf;
+
+	private FileSystem fs;
+
+	@Before
+	public void setUp() throws IOException {
+		conf = new Configuration();
+		fs = FileSystem.getLocal(conf);
+		fs.delete(TEST_DIR, true);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		fs.delete(TEST_DIR, true);
+	}
+
+	@Test
+	public void testCreate() throws IOException {
+		TaskAttemptID id = new TaskAttemptID("jt", 1, true, 3, 0);
+		assertNull(DynamoDBCheckpointStore.create(conf, id));
+
+		new DynamoDBConfiguration(conf).setCheckpointDir(TEST_DIR.toString());
+		// speculative attempts would resume from each other's position
+		assertNull(DynamoDBCheckpointStore.create(conf, id));
+
+		conf.setBoolean("mapred.map.tasks.speculative.execution", false);
+		DynamoDBCheckpointStore store = DynamoDBCheckpointStore.create(conf, id);
+		assertEquals(new Path(new Path(TEST_DIR, "job_jt_0001"), "split-3"),
+				store.getPath());
+
+		// a retried attempt uses the same checkpoint
+		assertEquals(store.getPath(), DynamoDBCheckpointStore.create(
+				conf,
+				new TaskAttemptID("jt", 1, true, 3, 1)).getPath());
+	}
+
+	@Test
+	public void testSaveAndLoad() throws IOException {
+		DynamoDBCheckpointStore store = new DynamoDBCheckpointStore(
+				fs,
+				new Path(TEST_DIR, "split-0"));
+		assertNull(store.load());
+
+		Key key = new Key(
+				new AttributeValue().withN("22"),
+				new AttributeValue().withS("1353123945999"));
+		store.save(new Checkpoint(10, key));
+		Checkpoint checkpoint = store.load();
+		assertEquals(10, checkpoint.getPos());
+		assertEquals(key, checkpoint.getLastKey());
+
+		// replaces the previous checkpoint
+		key = new Key(new AttributeValue().withB(ByteBuffer
+				.wrap(new byte[] { 1, 2, 3 })));
+		store.save(new Checkpoint(20, key));
+		checkpoint = store.load();
+		assertEquals(20, checkpoint.getPos());
+		assertEquals(key, checkpoint.getLastKey());
+		assertNull(checkpoint.getLastKey().getRangeKeyElement());
+		assertFalse(fs.exists(store.getPath().suffix(".tmp")));
+
+		store.delete();
+		assertFalse(fs.exists(store.getPath()));
+		assertNull(store.load());
+	}
+
+	@Test
+	public void testLoadRecoversInterruptedSave() throws IOException {
+		Path path = new Path(TEST_DIR, "split-1");
+		Key key = new Key(new AttributeValue().withN("22"));
+		new DynamoDBCheckpointStore(fs, path, "attempt_0").save(
+				new Checkpoint(10, key));
+
+		// the attempt failed after removing the checkpoint and before
+		// renaming its temporary file, a later attempt failed while writing
+		Path tmp = path.suffix(".attempt_1.tmp");
+		fs.rename(path, tmp);
+		fs.create(path.suffix(".attempt_2.tmp")).close();
+		fs.setTimes(tmp, 1000, -1);
+		// a checkpoint of another split is not read
+		new DynamoDBCheckpointStore(fs, new Path(TEST_DIR, "split-10")).save(
+				new Checkpoint(30, key));
+
+		DynamoDBCheckpointStore store = new DynamoDBCheckpointStore(
+				fs,
+				path,
+				"attempt_3");
+		Checkpoint checkpoint = store.load();
+		assertEquals(10, checkpoint.getPos());
+		assertEquals(key, checkpoint.getLastKey());
+
+		store.save(new Checkpoint(20, key));
+		assertEquals(20, store.load().getPos());
+
+		store.delete();
+		assertFalse(fs.exists(tmp));
+		assertNull(store.load());
+		assertTrue(fs.exists(new Path(TEST_DIR, "split-10")));
+	}
+
+	@Test
+	public void testTypeOfKeyElements() {
+		assertTrue(Types.NUMBER == AttributeValueIOUtils
+				.typeOf(new AttributeValue().withN("1")));
+		assertTrue(Types.STRING == AttributeValueIOUtils
+				.typeOf(new AttributeValue().withS("a")));
+		assertTrue(Types.BINARY == AttributeValueIOUtils
+				.typeOf(new AttributeValue().withB(ByteBuffer.allocate(1))));
+	}
+}
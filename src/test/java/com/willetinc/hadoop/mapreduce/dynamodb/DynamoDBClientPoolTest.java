@@ -0,0 +1,126 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodb.AmazonDynamoDBClient;
+
+public class DynamoDBClientPoolTest {
+
+	private static class TestPool extends DynamoDBClientPool {
+
+		long now = 0;
+
+		@Override
+		protected AmazonDynamoDBClient createClient(
+				String accessKey,
+				String secretKey,
+				String endpoint,
+				int maxConnections) {
+			AmazonDynamoDBClient client = createMock(AmazonDynamoDBClient.class);
+			client.shutdown();
+			replay(client);
+			return client;
+		}
+
+		@Override
+		protected long currentTimeMillis() {
+			return now;
+		}
+	}
+
+	private TestPool pool;
+
+	private DynamoDBConfiguration dbConf;
+
+	@Before
+	public void setUp() {
+		pool = new TestPool();
+		Configuration conf = new Configuration();
+		DynamoDBConfiguration.setCredentals(conf, "access_key", "secret_key");
+		dbConf = new DynamoDBConfiguration(conf);
+		dbConf.setClientIdleTimeout(1000);
+	}
+
+	@Test
+	public void testSharedClient() {
+		AmazonDynamoDBClient first = pool.acquire(dbConf);
+		AmazonDynamoDBClient second = pool.acquire(dbConf);
+		assertSame(first, second);
+		assertEquals(1, pool.size());
+
+		// a different endpoint needs its own client
+		Configuration conf = new Configuration(dbConf.getConf());
+		DynamoDBConfiguration otherConf = new DynamoDBConfiguration(conf);
+		otherConf.setDynamoDBEndpoint("dynamodb.eu-west-1.amazonaws.com");
+		AmazonDynamoDBClient other = pool.acquire(otherConf);
+		assertNotSame(first, other);
+		assertEquals(2, pool.size());
+
+		pool.release(first);
+		pool.release(second);
+		pool.release(other);
+	}
+
+	@Test
+	public void testIdleEviction() {
+		AmazonDynamoDBClient client = pool.acquire(dbConf);
+		pool.release(client);
+
+		// reused while idle for less than the timeout
+		pool.now = 500;
+		assertSame(client, pool.acquire(dbConf));
+		pool.release(client);
+
+		pool.now = 1500;
+		assertEquals(1, pool.size());
+		AmazonDynamoDBClient next = pool.acquire(dbConf);
+		assertNotSame(client, next);
+		assertEquals(1, pool.size());
+		verify(client);
+	}
+
+	@Test
+	public void testClientInUseNotEvicted() {
+		AmazonDynamoDBClient client = pool.acquire(dbConf);
+		AmazonDynamoDBClient shared = pool.acquire(dbConf);
+		pool.release(shared);
+
+		pool.now = 5000;
+		assertSame(client, pool.acquire(dbConf));
+	}
+
+	@Test
+	public void testPoolDisabled() {
+		dbConf.setClientPoolEnabled(false);
+		AmazonDynamoDBClient client = pool.acquire(dbConf);
+		assertNotSame(client, pool.acquire(dbConf));
+		assertEquals(0, pool.size());
+
+		// clients that are not pooled are shut down
+		pool.release(client);
+		verify(client);
+	}
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.Key;
+
+public class DynamoDBCoalescingWriterTest {
+
+	private static Key key(String hashKey) {
+		return new Key(new AttributeValue().withS(hashKey));
+	}
+
+	private static Map<String, AttributeValue> item(String value) {
+		return Collections.singletonMap("value", new AttributeValue()
+				.withS(value));
+	}
+
+	@Test
+	public void testKeepsLatestWritePerKey()
+			throws IOException,
+			InterruptedException {
+		DynamoDBWriter writer = createStrictMock(DynamoDBWriter.class);
+		DynamoDBCounters counters = new DynamoDBCounters();
+		DynamoDBCoalescingWriter coalescer = new DynamoDBCoalescingWriter(
+				writer,
+				3,
+				0,
+				counters);
+
+		// keys are passed on in the order they were first written
+		writer.put(key("a"), item("a3"));
+		writer.delete(key("b"));
+		writer.put(key("c"), item("c1"));
+		writer.put(key("a"), item("a4"));
+		writer.close();
+		replay(writer);
+
+		coalescer.put(key("a"), item("a1"));
+		coalescer.put(key("b"), item("b1"));
+		coalescer.put(key("a"), item("a2"));
+		coalescer.delete(key("b"));
+		coalescer.put(key("a"), item("a3"));
+		coalescer.put(key("c"), item("c1"));
+		coalescer.put(key("a"), item("a4"));
+		coalescer.close();
+
+		assertEquals(3, counters.getValue(DynamoDBCounter.COALESCED_WRITES));
+		verify(writer);
+	}
+
+	@Test
+	public void testPassesOnWritesAfterWindow()
+			throws IOException,
+			InterruptedException {
+		final long[] now = { 0 };
+		DynamoDBWriter writer = createStrictMock(DynamoDBWriter.class);
+		DynamoDBCoalescingWriter coalescer = new DynamoDBCoalescingWriter(
+				writer,
+				100,
+				1000,
+				new DynamoDBCounters()) {
+			@Override
+			protected long currentTimeMillis() {
+				return now[0];
+			}
+		};
+
+		writer.put(key("a"), item("a2"));
+		writer.put(key("b"), item("b1"));
+		writer.put(key("a"), item("a3"));
+		writer.flush();
+		replay(writer);
+
+		coalescer.put(key("a"), item("a1"));
+		now[0] = 500;
+		coalescer.put(key("a"), item("a2"));
+		now[0] = 1000;
+		coalescer.put(key("b"), item("b1"));
+		coalescer.put(key("a"), item("a3"));
+		coalescer.flush();
+
+		verify(writer);
+	}
+
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapred.InvalidJobConfException;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodb.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodb.model.AttributeAction;
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.AttributeValueUpdate;
+import com.amazonaws.services.dynamodb.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodb.model.UpdateItemResult;
+import com.willetinc.hadoop.mapreduce.dynamodb.io.DynamoDBItemWritable;
+import com.willetinc.hadoop.mapreduce.dynamodb.io.SWritable;
+
+public class DynamoDBCounterOutputFormatTest {
+
+	private static final String TABLE_NAME = "page-views";
+
+	private static final String HASHKEY_FIELD = "user";
+
+	private static final Path TEST_DIR = new Path(System.getProperty(
+			"test.build.data",
+			"target/test-data"), "counters");
+
+	private class MyTable extends DynamoDBItemWritable {
+		public MyTable(String user) {
+			super(new SWritable(HASHKEY_FIELD) {
+			}, null);
+			setHashKeyValue(new AttributeValue().withS(user));
+		}
+	}
+
+	@Test
+	public void testSumsDeltasPerKey() throws IOException, InterruptedException {
+		AmazonDynamoDBClient client = createMock(AmazonDynamoDBClient.class);
+		TaskAttemptContext context = createMock(TaskAttemptContext.class);
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(new Configuration(false));
+		dbConf.setOutputTableName(TABLE_NAME);
+		dbConf.setCounterAttribute("views");
+		dbConf.setCounterCacheSize(10);
+		DynamoDBCounterOutputFormat<MyTable> outputFormat = new DynamoDBCounterOutputFormat<MyTable>();
+
+		RecordWriter<MyTable, LongWritable> writer = outputFormat.getRecordWriter(
+				client,
+				dbConf,
+				new DynamoDBCounters());
+
+		Capture<UpdateItemRequest> capture = new Capture<UpdateItemRequest>(CaptureType.ALL);
+		expect(client.updateItem(capture(capture))).andReturn(
+				new UpdateItemResult()).times(2);
+		client.shutdown();
+
+		replay(client);
+		replay(context);
+
+		writer.write(new MyTable("alice"), new LongWritable(1));
+		writer.write(new MyTable("bob"), new LongWritable(2));
+		writer.write(new MyTable("alice"), new LongWritable(3));
+		writer.write(new MyTable("carol"), new LongWritable(1));
+		writer.write(new MyTable("carol"), new LongWritable(-1));
+		writer.close(context);
+
+		Map<String, String> sums = new HashMap<String, String>();
+		for (UpdateItemRequest request : capture.getValues()) {
+			assertEquals(TABLE_NAME, request.getTableName());
+			AttributeValueUpdate update = request.getAttributeUpdates().get("views");
+			assertEquals(AttributeAction.ADD.toString(), update.getAction());
+			sums.put(request.getKey().getHashKeyElement().getS(), update.getValue().getN());
+		}
+		assertEquals(2, sums.size());
+		assertEquals("4", sums.get("alice"));
+		assertEquals("2", sums.get("bob"));
+
+		verify(client);
+		verify(context);
+	}
+
+	@Test
+	public void testCheckOutputSpecsRefusesSpeculativeAttempts()
+			throws IOException,
+			InterruptedException {
+		Configuration conf = new Configuration(false);
+		DynamoDBCounterOutputFormat<MyTable> outputFormat = new DynamoDBCounterOutputFormat<MyTable>();
+
+		try {
+			outputFormat.checkOutputSpecs(new JobContext(conf, null));
+			fail("Expected InvalidJobConfException");
+		} catch (InvalidJobConfException e) {
+			// reduces are speculative by default
+		}
+
+		conf.setBoolean("mapred.reduce.tasks.speculative.execution", false);
+		outputFormat.checkOutputSpecs(new JobContext(conf, null));
+
+		// map-only jobs write from their maps
+		conf.setInt("mapred.reduce.tasks", 0);
+		try {
+			outputFormat.checkOutputSpecs(new JobContext(conf, null));
+			fail("Expected InvalidJobConfException");
+		} catch (InvalidJobConfException e) {
+			// expected
+		}
+
+		// only the committing attempt adds staged values
+		new DynamoDBConfiguration(conf).setOutputStaged(true);
+		outputFormat.checkOutputSpecs(new JobContext(conf, null));
+	}
+
+	@Test
+	public void testStagedValuesAreAddedOnCommit()
+			throws IOException,
+			InterruptedException {
+		Configuration conf = new Configuration();
+		conf.set("mapred.local.dir", TEST_DIR.toString());
+		FileSystem fs = FileSystem.getLocal(conf);
+		fs.delete(TEST_DIR, true);
+		fs.mkdirs(TEST_DIR);
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(conf);
+		dbConf.setOutputTableName(TABLE_NAME);
+		dbConf.setCounterAttribute("views");
+		dbConf.setOutputStaged(true);
+		TaskAttemptContext context = new TaskAttemptContext(
+				conf,
+				TaskAttemptID.forName("attempt_201210180000_0001_r_000000_0"));
+		DynamoDBCounterOutputFormat<MyTable> outputFormat = new DynamoDBCounterOutputFormat<MyTable>();
+
+		try {
+			RecordWriter<MyTable, LongWritable> writer = outputFormat
+					.getRecordWriter(context);
+			writer.write(new MyTable("alice"), new LongWritable(1));
+			writer.write(new MyTable("bob"), new LongWritable(2));
+			writer.write(new MyTable("alice"), new LongWritable(3));
+			writer.close(context);
+
+			OutputCommitter committer = outputFormat.getOutputCommitter(context);
+			assertTrue(committer.needsTaskCommit(context));
+
+			// nothing is added before the commit
+			AmazonDynamoDBClient client = createMock(AmazonDynamoDBClient.class);
+			Capture<UpdateItemRequest> capture = new Capture<UpdateItemRequest>(CaptureType.ALL);
+			expect(client.updateItem(capture(capture))).andReturn(
+					new UpdateItemResult()).times(2);
+			replay(client);
+
+			((DynamoDBCounterOutputCommitter) committer).commitTask(
+					context,
+					client,
+					dbConf);
+
+			Map<String, String> sums = new HashMap<String, String>();
+			for (UpdateItemRequest request : capture.getValues()) {
+				AttributeValueUpdate update = request.getAttributeUpdates().get("views");
+				assertEquals(AttributeAction.ADD.toString(), update.getAction());
+				sums.put(request.getKey().getHashKeyElement().getS(), update.getValue().getN());
+			}
+			assertEquals("4", sums.get("alice"));
+			assertEquals("2", sums.get("bob"));
+			assertFalse(committer.needsTaskCommit(context));
+
+			verify(client);
+		} finally {
+			fs.delete(TEST_DIR, true);
+		}
+	}
+
+	@Test
+	public void testWritesSumsWhenCacheIsFull() throws InterruptedException {
+		AmazonDynamoDBClient client = createMock(AmazonDynamoDBClient.class);
+		DynamoDBCounterWriter writer = new DynamoDBCounterWriter(
+				client,
+				TABLE_NAME,
+				"views",
+				2,
+				0,
+				new DynamoDBRetryPolicy(
+						new DynamoDBConfiguration(new Configuration(false)),
+						new DynamoDBCounters()));
+
+		expect(client.updateItem(isA(UpdateItemRequest.class))).andReturn(
+				new UpdateItemResult()).times(2);
+		replay(client);
+
+		writer.add(DynamoDBOutputFormat.getKey(new MyTable("alice")), 1);
+		writer.add(DynamoDBOutputFormat.getKey(new MyTable("alice")), 1);
+		writer.add(DynamoDBOutputFormat.getKey(new MyTable("bob")), 1);
+
+		verify(client);
+	}
+
+}
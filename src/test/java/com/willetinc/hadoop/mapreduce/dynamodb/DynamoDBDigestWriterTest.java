@@ -0,0 +1,224 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.Key;
+
+public class DynamoDBDigestWriterTest {
+
+	private static final Path TEST_DIR = new Path(System.getProperty(
+			"test.build.data",
+			"target/test-data"), "digests");
+
+	private FileSystem fs;
+
+	@Before
+	public void setUp() throws IOException {
+		fs = FileSystem.getLocal(new Configuration());
+		fs.delete(TEST_DIR, true);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		fs.delete(TEST_DIR, true);
+	}
+
+	private static Key key(String hashKey) {
+		return new Key(new AttributeValue().withS(hashKey));
+	}
+
+	private static Map<String, AttributeValue> item(String hashKey, String value) {
+		Map<String, AttributeValue> item = new LinkedHashMap<String, AttributeValue>();
+		item.put("id", new AttributeValue().withS(hashKey));
+		item.put("value", new AttributeValue().withS(value));
+		return item;
+	}
+
+	@Test
+	public void testItemDigestIgnoresAttributeOrder() throws IOException {
+		Map<String, AttributeValue> item = item("a", "1");
+		Map<String, AttributeValue> reversed = new LinkedHashMap<String, AttributeValue>();
+		reversed.put("value", item.get("value"));
+		reversed.put("id", item.get("id"));
+
+		assertEquals(DynamoDBDigestStore.digest(item), DynamoDBDigestStore.digest(reversed));
+		assertFalse(DynamoDBDigestStore.digest(item) == DynamoDBDigestStore
+				.digest(item("a", "2")));
+	}
+
+	@Test
+	public void testBuilderKeepsLastDigestPerKey() throws IOException {
+		DynamoDBDigestStore.Builder builder = new DynamoDBDigestStore.Builder();
+		for (long i = 2000; i > 0; i--) {
+			builder.put(i, i * 10);
+		}
+		builder.put(5, 1);
+		builder.delete(7);
+		builder.put(-3, 4);
+		Path path = new Path(TEST_DIR, "store");
+
+		assertEquals(2000, builder.write(fs, path));
+
+		DynamoDBDigestStore store = DynamoDBDigestStore.read(fs, path);
+		assertEquals(2000, store.size());
+		assertTrue(store.contains(1, 10));
+		assertTrue(store.contains(2000, 20000));
+		assertTrue(store.contains(5, 1));
+		assertFalse(store.contains(5, 50));
+		assertFalse(store.contains(7, 70));
+		assertTrue(store.contains(-3, 4));
+	}
+
+	@Test
+	public void testSkipsUnchangedItems() throws IOException, InterruptedException {
+		Path first = new Path(TEST_DIR, "first");
+		Path second = new Path(TEST_DIR, "second");
+
+		// the first run writes everything
+		DynamoDBWriter writer = createStrictMock(DynamoDBWriter.class);
+		writer.put(key("a"), item("a", "1"));
+		writer.put(key("b"), item("b", "1"));
+		writer.put(key("c"), item("c", "1"));
+		writer.close();
+		replay(writer);
+
+		DynamoDBDigestWriter digestWriter = new DynamoDBDigestWriter(
+				writer,
+				null,
+				fs,
+				first,
+				new Path(TEST_DIR, "_first"),
+				new DynamoDBCounters());
+		digestWriter.put(key("a"), item("a", "1"));
+		digestWriter.put(key("b"), item("b", "1"));
+		digestWriter.put(key("c"), item("c", "1"));
+		digestWriter.close();
+		verify(writer);
+
+		// the second run only writes changed and new items
+		reset(writer);
+		writer.put(key("b"), item("b", "2"));
+		writer.delete(key("c"));
+		writer.put(key("d"), item("d", "1"));
+		writer.close();
+		replay(writer);
+
+		DynamoDBCounters counters = new DynamoDBCounters();
+		digestWriter = new DynamoDBDigestWriter(
+				writer,
+				DynamoDBDigestStore.read(fs, first),
+				fs,
+				second,
+				new Path(TEST_DIR, "_second"),
+				counters);
+		digestWriter.put(key("a"), item("a", "1"));
+		digestWriter.put(key("b"), item("b", "2"));
+		digestWriter.delete(key("c"));
+		digestWriter.put(key("d"), item("d", "1"));
+		digestWriter.close();
+		verify(writer);
+
+		assertEquals(1, counters.getValue(DynamoDBCounter.UNCHANGED_ITEMS));
+		assertFalse(fs.exists(new Path(TEST_DIR, "_second")));
+		DynamoDBDigestStore store = DynamoDBDigestStore.read(fs, second);
+		assertEquals(3, store.size());
+		assertTrue(store.contains(
+				DynamoDBDigestStore.digest(key("b")),
+				DynamoDBDigestStore.digest(item("b", "2"))));
+	}
+
+	@Test
+	public void testPublishFailsWhenDigestsExist() throws IOException, InterruptedException {
+		Path output = new Path(TEST_DIR, "digest-r-00000");
+		Map<String, DynamoDBDigestWriter> attempts = new HashMap<String, DynamoDBDigestWriter>();
+		for (String attempt : new String[] { "_0", "_1" }) {
+			DynamoDBWriter writer = createNiceMock(DynamoDBWriter.class);
+			replay(writer);
+			attempts.put(attempt, new DynamoDBDigestWriter(
+					writer,
+					null,
+					fs,
+					output,
+					new Path(TEST_DIR, attempt),
+					new DynamoDBCounters()));
+		}
+		attempts.get("_0").put(key("a"), item("a", "1"));
+		attempts.get("_1").put(key("a"), item("a", "2"));
+
+		attempts.get("_1").close();
+		try {
+			attempts.get("_0").close();
+			fail("Published over the digests of another attempt");
+		} catch (IOException e) {
+			// the digest file is kept
+		}
+
+		DynamoDBDigestStore store = DynamoDBDigestStore.read(fs, output);
+		assertTrue(store.contains(
+				DynamoDBDigestStore.digest(key("a")),
+				DynamoDBDigestStore.digest(item("a", "2"))));
+		assertFalse(fs.exists(new Path(TEST_DIR, "_0")));
+	}
+
+	@Test
+	public void testPublishLaterLeavesDigests() throws IOException, InterruptedException {
+		Path output = new Path(TEST_DIR, "digest-r-00000");
+		Path tmp = new Path(TEST_DIR, "_0");
+		DynamoDBWriter writer = createNiceMock(DynamoDBWriter.class);
+		replay(writer);
+		DynamoDBDigestWriter digestWriter = new DynamoDBDigestWriter(
+				writer,
+				null,
+				fs,
+				output,
+				tmp,
+				new DynamoDBCounters());
+		digestWriter.setPublishOnClose(false);
+		digestWriter.put(key("a"), item("a", "1"));
+		digestWriter.close();
+
+		assertFalse(fs.exists(output));
+		assertTrue(fs.exists(tmp));
+
+		DynamoDBDigestWriter.publish(fs, tmp, output);
+		assertFalse(fs.exists(tmp));
+		assertTrue(DynamoDBDigestStore.read(fs, output).contains(
+				DynamoDBDigestStore.digest(key("a")),
+				DynamoDBDigestStore.digest(item("a", "1"))));
+	}
+
+}
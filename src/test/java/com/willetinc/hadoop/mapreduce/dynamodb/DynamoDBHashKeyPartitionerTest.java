@@ -0,0 +1,74 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.hadoop.io.NullWritable;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.willetinc.hadoop.mapreduce.dynamodb.io.DynamoDBItemWritable;
+import com.willetinc.hadoop.mapreduce.dynamodb.io.NWritable;
+
+public class DynamoDBHashKeyPartitionerTest {
+
+	private class MyTable extends DynamoDBItemWritable {
+		public MyTable(int hashKey, int rangeKey) {
+			super(new NWritable("hashkey") {
+			}, new NWritable("rangekey") {
+			});
+			setHashKeyValue(new AttributeValue().withN(Integer.toString(hashKey)));
+			setRangeKeyValue(new AttributeValue().withN(Integer.toString(rangeKey)));
+		}
+	}
+
+	@Test
+	public void testPartitionsByHashKey() {
+		DynamoDBHashKeyPartitioner<MyTable, NullWritable> partitioner = new DynamoDBHashKeyPartitioner<MyTable, NullWritable>();
+
+		int partition = partitioner.getPartition(new MyTable(7, 1), NullWritable.get(), 10);
+		for (int rangeKey = 2; rangeKey < 100; rangeKey++) {
+			assertEquals(partition, partitioner.getPartition(
+					new MyTable(7, rangeKey),
+					NullWritable.get(),
+					10));
+		}
+	}
+
+	@Test
+	public void testSpreadsConsecutiveHashKeys() {
+		DynamoDBHashKeyPartitioner<MyTable, NullWritable> partitioner = new DynamoDBHashKeyPartitioner<MyTable, NullWritable>();
+
+		Set<Integer> partitions = new HashSet<Integer>();
+		for (int hashKey = 0; hashKey < 100; hashKey++) {
+			int partition = partitioner.getPartition(
+					new MyTable(hashKey, 1),
+					NullWritable.get(),
+					10);
+			assertTrue(partition >= 0 && partition < 10);
+			partitions.add(partition);
+		}
+		assertEquals(10, partitions.size());
+	}
+
+}
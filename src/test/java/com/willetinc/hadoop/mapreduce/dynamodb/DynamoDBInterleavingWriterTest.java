@@ -0,0 +1,75 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import static org.easymock.EasyMock.*;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.Key;
+
+public class DynamoDBInterleavingWriterTest {
+
+	private static Key key(String hashKey, String rangeKey) {
+		return new Key(
+				new AttributeValue().withS(hashKey),
+				new AttributeValue().withN(rangeKey));
+	}
+
+	private static final Map<String, AttributeValue> ITEM = Collections
+			.singletonMap("value", new AttributeValue().withS("x"));
+
+	@Test
+	public void testInterleavesHashKeys()
+			throws IOException,
+			InterruptedException {
+		DynamoDBWriter writer = createStrictMock(DynamoDBWriter.class);
+		DynamoDBInterleavingWriter interleaver = new DynamoDBInterleavingWriter(
+				writer,
+				6);
+
+		// first window: a1 a2 a3 b1 b2 c1
+		writer.put(key("a", "1"), ITEM);
+		writer.put(key("b", "1"), ITEM);
+		writer.put(key("c", "1"), ITEM);
+		writer.put(key("a", "2"), ITEM);
+		writer.delete(key("b", "2"));
+		writer.put(key("a", "3"), ITEM);
+		// partial window written on close
+		writer.put(key("d", "1"), ITEM);
+		writer.close();
+		replay(writer);
+
+		interleaver.put(key("a", "1"), ITEM);
+		interleaver.put(key("a", "2"), ITEM);
+		interleaver.put(key("a", "3"), ITEM);
+		interleaver.put(key("b", "1"), ITEM);
+		interleaver.delete(key("b", "2"));
+		interleaver.put(key("c", "1"), ITEM);
+		interleaver.put(key("d", "1"), ITEM);
+		interleaver.close();
+
+		verify(writer);
+	}
+
+}
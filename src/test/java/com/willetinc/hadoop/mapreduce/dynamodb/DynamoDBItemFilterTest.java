@@ -0,0 +1,151 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.ComparisonOperator;
+import com.amazonaws.services.dynamodb.model.Condition;
+
+public class DynamoDBItemFilterTest {
+
+	private static Condition condition(
+			ComparisonOperator operator,
+			AttributeValue... values) {
+		return new Condition()
+				.withComparisonOperator(operator)
+				.withAttributeValueList(values);
+	}
+
+	private static AttributeValue n(String value) {
+		return new AttributeValue().withN(value);
+	}
+
+	private static AttributeValue s(String value) {
+		return new AttributeValue().withS(value);
+	}
+
+	@Test
+	public void testNumberComparisons() {
+		AttributeValue value = n("10.5");
+
+		assertTrue(DynamoDBItemFilter.matches(value, Types.NUMBER, condition(ComparisonOperator.EQ, n("10.50"))));
+		assertTrue(DynamoDBItemFilter.matches(value, Types.NUMBER, condition(ComparisonOperator.GT, n("9"))));
+		assertFalse(DynamoDBItemFilter.matches(value, Types.NUMBER, condition(ComparisonOperator.LT, n("9"))));
+		assertTrue(DynamoDBItemFilter.matches(value, Types.NUMBER, condition(ComparisonOperator.BETWEEN, n("10"), n("11"))));
+		assertTrue(DynamoDBItemFilter.matches(value, Types.NUMBER, condition(ComparisonOperator.IN, n("1"), n("10.5"))));
+		assertTrue(DynamoDBItemFilter.matches(value, Types.NUMBER, condition(ComparisonOperator.NE, n("11"))));
+	}
+
+	@Test
+	public void testStringComparisons() {
+		AttributeValue value = s("clickstream");
+
+		assertTrue(DynamoDBItemFilter.matches(value, Types.STRING, condition(ComparisonOperator.BEGINS_WITH, s("click"))));
+		assertTrue(DynamoDBItemFilter.matches(value, Types.STRING, condition(ComparisonOperator.CONTAINS, s("stream"))));
+		assertFalse(DynamoDBItemFilter.matches(value, Types.STRING, condition(ComparisonOperator.NOT_CONTAINS, s("stream"))));
+		assertTrue(DynamoDBItemFilter.matches(value, Types.STRING, condition(ComparisonOperator.LE, s("d"))));
+
+		// strings compare by code point, not by UTF-16 unit
+		assertTrue(DynamoDBItemFilter.compare(Types.STRING, s("\uFFFF"), s("\uD83D\uDE00")) < 0);
+	}
+
+	@Test
+	public void testBinaryComparisons() {
+		AttributeValue value = new AttributeValue().withB(ByteBuffer.wrap(new byte[] {(byte) 0xFF, 0x01}));
+		AttributeValue prefix = new AttributeValue().withB(ByteBuffer.wrap(new byte[] {(byte) 0xFF}));
+		AttributeValue low = new AttributeValue().withB(ByteBuffer.wrap(new byte[] {0x7F}));
+
+		assertTrue(DynamoDBItemFilter.matches(value, Types.BINARY, condition(ComparisonOperator.BEGINS_WITH, prefix)));
+		assertTrue(DynamoDBItemFilter.matches(value, Types.BINARY, condition(ComparisonOperator.GT, low)));
+	}
+
+	@Test
+	public void testTypeMismatchAndMissingValues() {
+		assertFalse(DynamoDBItemFilter.matches(s("6"), Types.NUMBER, condition(ComparisonOperator.EQ, n("6"))));
+		assertTrue(DynamoDBItemFilter.matches(s("6"), Types.NUMBER, condition(ComparisonOperator.NE, n("6"))));
+		assertFalse(DynamoDBItemFilter.matches(null, Types.NUMBER, condition(ComparisonOperator.GT, n("6"))));
+		assertTrue(DynamoDBItemFilter.matches(null, Types.NUMBER, condition(ComparisonOperator.NULL)));
+		assertFalse(DynamoDBItemFilter.matches(null, Types.NUMBER, condition(ComparisonOperator.NOT_NULL)));
+	}
+
+	@Test
+	public void testSetContains() {
+		AttributeValue value = new AttributeValue().withNS("1", "2.50");
+
+		assertTrue(DynamoDBItemFilter.matches(value, Types.NUMBER, condition(ComparisonOperator.CONTAINS, n("2.5"))));
+		assertTrue(DynamoDBItemFilter.matches(value, Types.NUMBER, condition(ComparisonOperator.NOT_CONTAINS, n("3"))));
+	}
+
+	@Test
+	public void testCreateFromConfiguration() {
+		Configuration conf = new Configuration();
+		DynamoDBQueryInputFormat.setQueryFilter(
+				conf,
+				"visits",
+				Types.NUMBER,
+				ComparisonOperator.GE,
+				Arrays.asList(n("100")));
+		DynamoDBQueryInputFormat.setQueryFilter(
+				conf,
+				"country",
+				Types.STRING,
+				ComparisonOperator.NOT_NULL,
+				Collections.<AttributeValue> emptyList());
+
+		Map<String, Condition> conditions = DynamoDBQueryInputFormat.getQueryFilter(conf);
+		assertEquals(2, conditions.size());
+		assertEquals(ComparisonOperator.GE.toString(), conditions.get("visits").getComparisonOperator());
+		assertEquals(n("100"), conditions.get("visits").getAttributeValueList().get(0));
+		assertEquals(0, conditions.get("country").getAttributeValueList().size());
+
+		DynamoDBItemFilter filter = DynamoDBItemFilter.create(
+				conf,
+				DynamoDBConfiguration.QUERY_FILTER_PROPERTY);
+
+		List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+		Map<String, AttributeValue> match = new HashMap<String, AttributeValue>();
+		match.put("visits", n("150"));
+		match.put("country", s("CA"));
+		items.add(match);
+		Map<String, AttributeValue> tooFewVisits = new HashMap<String, AttributeValue>();
+		tooFewVisits.put("visits", n("50"));
+		tooFewVisits.put("country", s("CA"));
+		items.add(tooFewVisits);
+		Map<String, AttributeValue> noCountry = new HashMap<String, AttributeValue>();
+		noCountry.put("visits", n("150"));
+		items.add(noCountry);
+
+		filter.filter(items);
+		assertEquals(1, items.size());
+		assertEquals(match, items.get(0));
+	}
+}
@@ -0,0 +1,274 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.easymock.Capture;
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodb.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodb.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodb.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodb.model.WriteRequest;
+import com.willetinc.hadoop.mapreduce.dynamodb.io.DynamoDBItemWritable;
+import com.willetinc.hadoop.mapreduce.dynamodb.io.NWritable;
+
+public class DynamoDBOutputCommitterTest {
+
+	private static final String TABLE_NAME = "clickstream-log";
+
+	private static final String HASHKEY_FIELD = "hashkey";
+
+	private static final String RANGEKEY_FIELD = "rangekey";
+
+	private static final Path TEST_DIR = new Path(System.getProperty(
+			"test.build.data",
+			"target/test-data"), "local");
+
+	private static final TaskAttemptID ATTEMPT_ID = TaskAttemptID
+			.forName("attempt_201210180000_0001_r_000003_0");
+
+	private class MyTable extends DynamoDBItemWritable {
+		public MyTable() {
+			super(new NWritable(HASHKEY_FIELD) {
+			}, new NWritable(RANGEKEY_FIELD) {
+			});
+		}
+	}
+
+	private Configuration conf;
+
+	private TaskAttemptContext context;
+
+	@Before
+	public void setUp() throws IOException {
+		conf = new Configuration();
+		conf.set("mapred.local.dir", TEST_DIR.toString());
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(conf);
+		dbConf.setOutputTableName(TABLE_NAME);
+		dbConf.setOutputStaged(true);
+		context = new TaskAttemptContext(conf, ATTEMPT_ID);
+		FileSystem fs = FileSystem.getLocal(conf);
+		fs.delete(TEST_DIR, true);
+		// the allocator only checks local directories when they change
+		fs.mkdirs(TEST_DIR);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileSystem.getLocal(conf).delete(TEST_DIR, true);
+	}
+
+	@Test
+	public void testCommitStagedOutput()
+			throws IOException,
+			InterruptedException {
+		DynamoDBOutputCommitter committer = new DynamoDBOutputCommitter();
+		assertFalse(committer.needsTaskCommit(context));
+
+		writeRecords(3);
+		assertTrue(committer.needsTaskCommit(context));
+
+		AmazonDynamoDBClient client = createStrictMock(AmazonDynamoDBClient.class);
+		Capture<BatchWriteItemRequest> capture = new Capture<BatchWriteItemRequest>();
+		expect(client.batchWriteItem(capture(capture))).andReturn(
+				new BatchWriteItemResult());
+		replay(client);
+
+		committer.commitTask(context, client, new DynamoDBConfiguration(conf));
+
+		List<WriteRequest> written = capture.getValue().getRequestItems()
+				.get(TABLE_NAME);
+		assertEquals(3, written.size());
+		for (int i = 0; i < 3; i++) {
+			assertEquals(Integer.toString(i), written.get(i).getPutRequest()
+					.getItem().get(HASHKEY_FIELD).getN());
+		}
+		assertFalse(committer.needsTaskCommit(context));
+
+		verify(client);
+	}
+
+	@Test
+	public void testCommitReportsProgress()
+			throws IOException,
+			InterruptedException {
+		final int[] progress = new int[1];
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(conf);
+		dbConf.setRetryBaseDelay(1);
+		dbConf.setRetryMaxDelay(1);
+		context = new TaskAttemptContext(conf, ATTEMPT_ID) {
+			@Override
+			public void progress() {
+				progress[0]++;
+			}
+		};
+
+		int count = DynamoDBStagedWriter.PROGRESS_INTERVAL * 2;
+		writeRecords(count);
+
+		AmazonDynamoDBClient client = createMock(AmazonDynamoDBClient.class);
+		expect(client.batchWriteItem(isA(BatchWriteItemRequest.class)))
+				.andThrow(new ProvisionedThroughputExceededException("throttled"));
+		expect(client.batchWriteItem(isA(BatchWriteItemRequest.class)))
+				.andReturn(new BatchWriteItemResult())
+				.times(count / dbConf.getWriteBatchSize());
+		replay(client);
+
+		DynamoDBOutputCommitter committer = new DynamoDBOutputCommitter();
+		committer.commitTask(context, client, new DynamoDBConfiguration(conf));
+
+		// one report per interval replayed and one for the backoff
+		assertEquals(3, progress[0]);
+		verify(client);
+	}
+
+	@Test
+	public void testInterruptedCommitKeepsCause()
+			throws IOException,
+			InterruptedException {
+		writeRecords(1);
+
+		// the backoff after the throttled write is interrupted
+		AmazonDynamoDBClient client = createMock(AmazonDynamoDBClient.class);
+		expect(client.batchWriteItem(isA(BatchWriteItemRequest.class)))
+				.andAnswer(new IAnswer<BatchWriteItemResult>() {
+					@Override
+					public BatchWriteItemResult answer() throws Throwable {
+						Thread.currentThread().interrupt();
+						throw new ProvisionedThroughputExceededException("throttled");
+					}
+				});
+		replay(client);
+
+		DynamoDBOutputCommitter committer = new DynamoDBOutputCommitter();
+		try {
+			committer.commitTask(context, client, new DynamoDBConfiguration(conf));
+			fail("Expected IOException");
+		} catch (IOException e) {
+			assertTrue(e.getCause() instanceof InterruptedException);
+		} finally {
+			assertTrue(Thread.interrupted());
+		}
+		verify(client);
+	}
+
+	@Test
+	public void testAbortDiscardsStagedOutput()
+			throws IOException,
+			InterruptedException {
+		DynamoDBOutputCommitter committer = new DynamoDBOutputCommitter();
+		writeRecords(2);
+		assertTrue(committer.needsTaskCommit(context));
+
+		committer.abortTask(context);
+
+		assertFalse(committer.needsTaskCommit(context));
+	}
+
+	@Test
+	public void testCommitPublishesStagedDigests()
+			throws IOException,
+			InterruptedException {
+		Path digests = new Path(TEST_DIR, "digests");
+		new DynamoDBConfiguration(conf).setDigestOutputPath(digests.toString());
+		context = new TaskAttemptContext(conf, ATTEMPT_ID);
+		DynamoDBOutputCommitter committer = new DynamoDBOutputCommitter();
+		writeRecords(2);
+
+		FileSystem fs = FileSystem.getLocal(conf);
+		Path digestFile = new Path(digests, "digest-r-00003");
+		assertFalse(fs.exists(digestFile));
+
+		AmazonDynamoDBClient client = createNiceMock(AmazonDynamoDBClient.class);
+		expect(client.batchWriteItem(anyObject(BatchWriteItemRequest.class)))
+				.andReturn(new BatchWriteItemResult());
+		replay(client);
+		committer.commitTask(context, client, new DynamoDBConfiguration(conf));
+
+		assertTrue(fs.exists(digestFile));
+		assertFalse(fs.exists(new Path(digests, "_" + ATTEMPT_ID)));
+	}
+
+	@Test
+	public void testAbortDiscardsStagedDigests()
+			throws IOException,
+			InterruptedException {
+		Path digests = new Path(TEST_DIR, "digests");
+		new DynamoDBConfiguration(conf).setDigestOutputPath(digests.toString());
+		context = new TaskAttemptContext(conf, ATTEMPT_ID);
+		DynamoDBOutputCommitter committer = new DynamoDBOutputCommitter();
+		writeRecords(2);
+
+		FileSystem fs = FileSystem.getLocal(conf);
+		Path tmp = new Path(digests, "_" + ATTEMPT_ID);
+		assertTrue(fs.exists(tmp));
+
+		committer.abortTask(context);
+
+		assertFalse(fs.exists(tmp));
+		assertFalse(fs.exists(new Path(digests, "digest-r-00003")));
+	}
+
+	@Test
+	public void testDirectOutputNeedsNoCommit()
+			throws IOException,
+			InterruptedException {
+		writeRecords(1);
+		new DynamoDBConfiguration(conf).setOutputStaged(false);
+		context = new TaskAttemptContext(conf, ATTEMPT_ID);
+
+		assertFalse(new DynamoDBOutputCommitter().needsTaskCommit(context));
+	}
+
+	private void writeRecords(int count)
+			throws IOException,
+			InterruptedException {
+		RecordWriter<MyTable, NullWritable> writer = new DynamoDBOutputFormat<MyTable, NullWritable>()
+				.getRecordWriter(context);
+		for (int i = 0; i < count; i++) {
+			MyTable record = new MyTable();
+			record.setHashKeyValue(new AttributeValue().withN(Integer
+					.toString(i)));
+			record.setRangeKeyValue(new AttributeValue().withN("5"));
+			writer.write(record, NullWritable.get());
+		}
+		writer.close(context);
+	}
+
+}
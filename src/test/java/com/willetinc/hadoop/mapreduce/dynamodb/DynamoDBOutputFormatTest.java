@@ -18,21 +18,44 @@ package com.willetinc.hadoop.mapreduce.dynamodb;
 
 import static org.easymock.EasyMock.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapred.FileAlreadyExistsException;
+import org.apache.hadoop.mapred.InvalidJobConfException;
+import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.easymock.Capture;
+import org.easymock.IAnswer;
 import org.junit.Test;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.dynamodb.AmazonDynamoDBClient;
 import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodb.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodb.model.BatchWriteResponse;
+import com.amazonaws.services.dynamodb.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodb.model.DescribeTableResult;
+import com.amazonaws.services.dynamodb.model.Key;
+import com.amazonaws.services.dynamodb.model.ProvisionedThroughputDescription;
 import com.amazonaws.services.dynamodb.model.PutItemRequest;
 import com.amazonaws.services.dynamodb.model.PutItemResult;
+import com.amazonaws.services.dynamodb.model.TableDescription;
+import com.amazonaws.services.dynamodb.model.WriteRequest;
 import com.willetinc.hadoop.mapreduce.dynamodb.io.DynamoDBItemWritable;
 import com.willetinc.hadoop.mapreduce.dynamodb.io.NWritable;
 
@@ -112,7 +135,34 @@ public class DynamoDBOutputFormatTest {
 		expect(conf.get(DynamoDBConfiguration.ACCESS_KEY_PROPERTY)).andReturn(ACCESS_KEY);
 		expect(conf.get(DynamoDBConfiguration.SECRET_KEY_PROPERTY)).andReturn(SECRET_KEY);
 		expect(conf.get(DynamoDBConfiguration.OUTPUT_TABLE_NAME_PROPERTY)).andReturn(TABLE_NAME);
+		expect(conf.getInt(DynamoDBConfiguration.WRITE_BATCH_SIZE_PROPERTY, DynamoDBConfiguration.DEFAULT_WRITE_BATCH_SIZE))
+				.andReturn(DynamoDBConfiguration.DEFAULT_WRITE_BATCH_SIZE);
+		expect(conf.getLong(DynamoDBConfiguration.WRITE_FLUSH_INTERVAL_PROPERTY, 0)).andReturn(0L);
+		expect(conf.getFloat(DynamoDBConfiguration.WRITE_THROUGHPUT_PERCENT_PROPERTY, 0)).andReturn(0f);
+		expect(conf.getClass(DynamoDBConfiguration.REJECT_HANDLER_PROPERTY, null, DynamoDBRejectHandler.class)).andReturn(null);
+		expect(conf.getInt(DynamoDBConfiguration.WRITE_THREADS_PROPERTY, 0)).andReturn(0);
+		expect(conf.getBoolean(DynamoDBConfiguration.WRITE_SPILL_PROPERTY, false)).andReturn(false);
+		expect(conf.getInt(DynamoDBConfiguration.WRITE_INTERLEAVE_SIZE_PROPERTY, 0)).andReturn(0);
+		expect(conf.getInt(DynamoDBConfiguration.WRITE_COALESCE_SIZE_PROPERTY, 0)).andReturn(0);
+		expect(conf.get(DynamoDBConfiguration.DIGEST_INPUT_PROPERTY)).andReturn(null);
+		expect(conf.get(DynamoDBConfiguration.DIGEST_OUTPUT_PROPERTY)).andReturn(null);
+		expect(conf.getBoolean(DynamoDBConfiguration.OUTPUT_STAGED_PROPERTY, false)).andReturn(false);
 		expect(conf.get(DynamoDBConfiguration.DYNAMODB_ENDPOINT)).andReturn("test");
+		expect(conf.getInt(DynamoDBConfiguration.CLIENT_MAX_CONNECTIONS_PROPERTY, DynamoDBConfiguration.DEFAULT_CLIENT_MAX_CONNECTIONS))
+				.andReturn(DynamoDBConfiguration.DEFAULT_CLIENT_MAX_CONNECTIONS);
+		expect(conf.getBoolean(DynamoDBConfiguration.CLIENT_POOL_ENABLED_PROPERTY, true)).andReturn(true);
+		expect(conf.getLong(DynamoDBConfiguration.CLIENT_IDLE_TIMEOUT_PROPERTY, DynamoDBConfiguration.DEFAULT_CLIENT_IDLE_TIMEOUT))
+				.andReturn(DynamoDBConfiguration.DEFAULT_CLIENT_IDLE_TIMEOUT);
+		expect(conf.getLong(DynamoDBConfiguration.RETRY_BASE_DELAY_PROPERTY, DynamoDBConfiguration.DEFAULT_RETRY_BASE_DELAY))
+				.andReturn(DynamoDBConfiguration.DEFAULT_RETRY_BASE_DELAY);
+		expect(conf.getLong(DynamoDBConfiguration.RETRY_MAX_DELAY_PROPERTY, DynamoDBConfiguration.DEFAULT_RETRY_MAX_DELAY))
+				.andReturn(DynamoDBConfiguration.DEFAULT_RETRY_MAX_DELAY);
+		expect(conf.getInt(DynamoDBConfiguration.RETRY_THROTTLE_ATTEMPTS_PROPERTY, DynamoDBConfiguration.DEFAULT_RETRY_THROTTLE_ATTEMPTS))
+				.andReturn(DynamoDBConfiguration.DEFAULT_RETRY_THROTTLE_ATTEMPTS);
+		expect(conf.getInt(DynamoDBConfiguration.RETRY_TRANSIENT_ATTEMPTS_PROPERTY, DynamoDBConfiguration.DEFAULT_RETRY_TRANSIENT_ATTEMPTS))
+				.andReturn(DynamoDBConfiguration.DEFAULT_RETRY_TRANSIENT_ATTEMPTS);
+		expect(conf.getLong(DynamoDBConfiguration.RETRY_BUDGET_PROPERTY, DynamoDBConfiguration.DEFAULT_RETRY_BUDGET))
+				.andReturn(DynamoDBConfiguration.DEFAULT_RETRY_BUDGET);
 		
 		replay(context);
 		replay(conf);
@@ -124,4 +174,458 @@ public class DynamoDBOutputFormatTest {
 		verify(context);
 		verify(conf);
 	}
+
+	@Test
+	public void testBatchingRecordWriter() throws IOException, InterruptedException {
+		AmazonDynamoDBClient client = createStrictMock(AmazonDynamoDBClient.class);
+		TaskAttemptContext context = createMock(TaskAttemptContext.class);
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(new Configuration(false));
+		dbConf.setOutputTableName(TABLE_NAME);
+		dbConf.setWriteBatchSize(2);
+		DynamoDBCounters counters = new DynamoDBCounters();
+		DynamoDBOutputFormat<MyTable, NullWritable> outputFormat = new DynamoDBOutputFormat<MyTable, NullWritable>();
+
+		RecordWriter<MyTable, NullWritable> writer = outputFormat.getRecordWriter(
+				client,
+				dbConf,
+				counters);
+
+		// the first batch is full, one of its items is returned unprocessed
+		Capture<BatchWriteItemRequest> firstCapture = new Capture<BatchWriteItemRequest>();
+		Capture<BatchWriteItemRequest> retryCapture = new Capture<BatchWriteItemRequest>();
+		Capture<BatchWriteItemRequest> lastCapture = new Capture<BatchWriteItemRequest>();
+		expect(client.batchWriteItem(capture(firstCapture))).andAnswer(
+				new IAnswer<BatchWriteItemResult>() {
+					@Override
+					public BatchWriteItemResult answer() throws Throwable {
+						BatchWriteItemRequest request = (BatchWriteItemRequest) getCurrentArguments()[0];
+						Map<String, List<WriteRequest>> unprocessed = new HashMap<String, List<WriteRequest>>();
+						unprocessed.put(TABLE_NAME, request.getRequestItems()
+								.get(TABLE_NAME).subList(1, 2));
+						return new BatchWriteItemResult().withUnprocessedItems(unprocessed);
+					}
+				});
+		expect(client.batchWriteItem(capture(retryCapture))).andReturn(
+				new BatchWriteItemResult());
+		// the remaining item is flushed on close
+		expect(client.batchWriteItem(capture(lastCapture))).andReturn(
+				new BatchWriteItemResult());
+		client.shutdown();
+
+		replay(client);
+		replay(context);
+
+		for (int i = 0; i < 3; i++) {
+			MyTable record = new MyTable();
+			record.setHashKeyValue(new AttributeValue().withN(Integer.toString(i)));
+			record.setRangeKeyValue(new AttributeValue().withN(RANGEKEY_VALUE));
+			writer.write(record, NullWritable.get());
+		}
+		writer.close(context);
+
+		assertEquals(2, firstCapture.getValue().getRequestItems().get(TABLE_NAME).size());
+		List<WriteRequest> retried = retryCapture.getValue().getRequestItems().get(TABLE_NAME);
+		assertEquals(1, retried.size());
+		assertEquals("1", retried.get(0).getPutRequest().getItem().get(HASHKEY_FIELD).getN());
+		List<WriteRequest> last = lastCapture.getValue().getRequestItems().get(TABLE_NAME);
+		assertEquals(1, last.size());
+		assertEquals("2", last.get(0).getPutRequest().getItem().get(HASHKEY_FIELD).getN());
+		assertEquals(1, counters.getValue(DynamoDBCounter.UNPROCESSED_ITEMS));
+
+		verify(client);
+		verify(context);
+	}
+
+	@Test
+	public void testDeleteOutputFormat() throws IOException, InterruptedException {
+		AmazonDynamoDBClient client = createStrictMock(AmazonDynamoDBClient.class);
+		TaskAttemptContext context = createMock(TaskAttemptContext.class);
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(new Configuration(false));
+		dbConf.setOutputTableName(TABLE_NAME);
+		DynamoDBDeleteOutputFormat<MyTable, NullWritable> outputFormat = new DynamoDBDeleteOutputFormat<MyTable, NullWritable>();
+
+		RecordWriter<MyTable, NullWritable> writer = outputFormat.getRecordWriter(
+				client,
+				dbConf,
+				new DynamoDBCounters());
+
+		Capture<BatchWriteItemRequest> capture = new Capture<BatchWriteItemRequest>();
+		expect(client.batchWriteItem(capture(capture))).andReturn(
+				new BatchWriteItemResult());
+		client.shutdown();
+
+		replay(client);
+		replay(context);
+
+		for (int i = 0; i < 3; i++) {
+			MyTable record = new MyTable();
+			record.setHashKeyValue(new AttributeValue().withN(Integer.toString(i)));
+			record.setRangeKeyValue(new AttributeValue().withN(RANGEKEY_VALUE));
+			writer.write(record, NullWritable.get());
+		}
+		writer.close(context);
+
+		List<WriteRequest> deletes = capture.getValue().getRequestItems().get(TABLE_NAME);
+		assertEquals(3, deletes.size());
+		for (int i = 0; i < 3; i++) {
+			Key key = deletes.get(i).getDeleteRequest().getKey();
+			assertEquals(Integer.toString(i), key.getHashKeyElement().getN());
+			assertEquals(RANGEKEY_VALUE, key.getRangeKeyElement().getN());
+		}
+
+		verify(client);
+		verify(context);
+	}
+
+	@Test
+	public void testWriteCopiesReusedValues() throws IOException, InterruptedException {
+		DataOutputBuffer out = new DataOutputBuffer();
+		MyTable record = new MyTable();
+		for (int i = 0; i < 2; i++) {
+			record.setHashKeyValue(new AttributeValue().withN(Integer.toString(i)));
+			record.setRangeKeyValue(new AttributeValue().withN(RANGEKEY_VALUE));
+			record.write(out);
+		}
+
+		AmazonDynamoDBClient client = createStrictMock(AmazonDynamoDBClient.class);
+		Capture<BatchWriteItemRequest> capture = new Capture<BatchWriteItemRequest>();
+		expect(client.batchWriteItem(capture(capture))).andReturn(
+				new BatchWriteItemResult());
+		client.shutdown();
+		replay(client);
+
+		DynamoDBRetryPolicy retryPolicy = new DynamoDBRetryPolicy(
+				new DynamoDBConfiguration(new Configuration(false)),
+				new DynamoDBCounters());
+		DynamoDBOutputFormat<MyTable, NullWritable> outputFormat = new DynamoDBOutputFormat<MyTable, NullWritable>();
+		RecordWriter<MyTable, NullWritable> writer = outputFormat.new DynamoDBRecordWriter(
+				client,
+				TABLE_NAME,
+				new DynamoDBBatchWriter(client, TABLE_NAME, 25, 0, retryPolicy),
+				retryPolicy);
+
+		MyTable reused = new MyTable();
+		reused.setReuseValues(true);
+		DataInputBuffer in = new DataInputBuffer();
+		in.reset(out.getData(), out.getLength());
+		for (int i = 0; i < 2; i++) {
+			reused.readFields(in);
+			writer.write(reused, NullWritable.get());
+		}
+		writer.close(null);
+
+		List<WriteRequest> written = capture.getValue().getRequestItems()
+				.get(TABLE_NAME);
+		assertEquals(2, written.size());
+		for (int i = 0; i < 2; i++) {
+			Map<String, AttributeValue> item = written.get(i).getPutRequest()
+					.getItem();
+			assertEquals(Integer.toString(i), item.get(HASHKEY_FIELD).getN());
+			assertEquals(RANGEKEY_VALUE, item.get(RANGEKEY_FIELD).getN());
+		}
+
+		verify(client);
+	}
+
+	@Test
+	public void testBatchWriterFlushesDuplicateKeys() throws IOException, InterruptedException {
+		AmazonDynamoDBClient client = createStrictMock(AmazonDynamoDBClient.class);
+		DynamoDBBatchWriter batchWriter = new DynamoDBBatchWriter(
+				client,
+				TABLE_NAME,
+				25,
+				0,
+				new DynamoDBRetryPolicy(
+						new DynamoDBConfiguration(new Configuration(false)),
+						new DynamoDBCounters()));
+
+		expect(client.batchWriteItem(anyObject(BatchWriteItemRequest.class)))
+				.andReturn(new BatchWriteItemResult()).times(2);
+		replay(client);
+
+		Key key = new Key(new AttributeValue().withN(HASHKEY_VALUE));
+		batchWriter.put(key, new HashMap<String, AttributeValue>());
+		batchWriter.put(key, new HashMap<String, AttributeValue>());
+		batchWriter.close();
+
+		verify(client);
+	}
+
+	private static Map<String, AttributeValue> itemOfSize(String hashKey, int size) {
+		Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+		item.put(HASHKEY_FIELD, new AttributeValue().withN(hashKey));
+		char[] data = new char[size - HASHKEY_FIELD.length() - hashKey.length() - 4];
+		Arrays.fill(data, 'x');
+		item.put("data", new AttributeValue().withS(new String(data)));
+		return item;
+	}
+
+	@Test
+	public void testBatchWriterPacksBySize() throws IOException, InterruptedException {
+		AmazonDynamoDBClient client = createStrictMock(AmazonDynamoDBClient.class);
+		DynamoDBBatchWriter batchWriter = new DynamoDBBatchWriter(
+				client,
+				TABLE_NAME,
+				25,
+				0,
+				new DynamoDBRetryPolicy(
+						new DynamoDBConfiguration(new Configuration(false)),
+						new DynamoDBCounters()));
+
+		// 16 items of 64000 bytes fit in 1 MB, 17 do not
+		Capture<BatchWriteItemRequest> first = new Capture<BatchWriteItemRequest>();
+		Capture<BatchWriteItemRequest> last = new Capture<BatchWriteItemRequest>();
+		expect(client.batchWriteItem(capture(first))).andReturn(new BatchWriteItemResult());
+		expect(client.batchWriteItem(capture(last))).andReturn(new BatchWriteItemResult());
+		replay(client);
+
+		for (int i = 0; i < 20; i++) {
+			String hashKey = Integer.toString(i);
+			Map<String, AttributeValue> item = itemOfSize(hashKey, 64000);
+			assertEquals(64000, AttributeValueIOUtils.sizeOf(item));
+			batchWriter.put(new Key(item.get(HASHKEY_FIELD)), item);
+		}
+		batchWriter.close();
+
+		assertEquals(16, first.getValue().getRequestItems().get(TABLE_NAME).size());
+		assertEquals(4, last.getValue().getRequestItems().get(TABLE_NAME).size());
+		verify(client);
+	}
+
+	@Test
+	public void testBatchWriterRejectsOversizedItems() throws IOException, InterruptedException {
+		AmazonDynamoDBClient client = createStrictMock(AmazonDynamoDBClient.class);
+		DynamoDBRejectHandler rejectHandler = createStrictMock(DynamoDBRejectHandler.class);
+		DynamoDBCounters counters = new DynamoDBCounters();
+		DynamoDBBatchWriter batchWriter = new DynamoDBBatchWriter(
+				client,
+				TABLE_NAME,
+				25,
+				0,
+				new DynamoDBRetryPolicy(
+						new DynamoDBConfiguration(new Configuration(false)),
+						counters));
+		batchWriter.setRejectHandler(rejectHandler);
+
+		Map<String, AttributeValue> oversized = itemOfSize("1", 70000);
+		Key oversizedKey = new Key(oversized.get(HASHKEY_FIELD));
+		Map<String, AttributeValue> item = itemOfSize("2", 1000);
+		Capture<BatchWriteItemRequest> capture = new Capture<BatchWriteItemRequest>();
+		rejectHandler.reject(oversizedKey, oversized, 70000);
+		expect(client.batchWriteItem(capture(capture))).andReturn(new BatchWriteItemResult());
+		replay(client);
+		replay(rejectHandler);
+
+		batchWriter.put(oversizedKey, oversized);
+		batchWriter.put(new Key(item.get(HASHKEY_FIELD)), item);
+
+		// without a handler the task fails
+		batchWriter.setRejectHandler(null);
+		try {
+			batchWriter.put(oversizedKey, oversized);
+			fail("Expected IOException");
+		} catch (IOException e) {
+			// expected
+		}
+		batchWriter.close();
+
+		assertEquals(1, capture.getValue().getRequestItems().get(TABLE_NAME).size());
+		assertEquals(2, counters.getValue(DynamoDBCounter.REJECTED_ITEMS));
+		verify(client);
+		verify(rejectHandler);
+	}
+
+	private static DynamoDBRetryPolicy noSleepRetryPolicy(
+			DynamoDBConfiguration dbConf,
+			DynamoDBCounters counters) {
+		return new DynamoDBRetryPolicy(dbConf, counters) {
+			@Override
+			protected void sleep(long millis) {
+			}
+		};
+	}
+
+	private static IAnswer<BatchWriteItemResult> processFirst(final int processed) {
+		return new IAnswer<BatchWriteItemResult>() {
+			@Override
+			public BatchWriteItemResult answer() throws Throwable {
+				BatchWriteItemRequest request = (BatchWriteItemRequest) getCurrentArguments()[0];
+				List<WriteRequest> items = request.getRequestItems().get(TABLE_NAME);
+				Map<String, List<WriteRequest>> unprocessed = new HashMap<String, List<WriteRequest>>();
+				unprocessed.put(TABLE_NAME, items.subList(processed, items.size()));
+				return new BatchWriteItemResult().withUnprocessedItems(unprocessed);
+			}
+		};
+	}
+
+	@Test
+	public void testBatchWriterResubmitsUnprocessedItems() throws IOException, InterruptedException {
+		AmazonDynamoDBClient client = createStrictMock(AmazonDynamoDBClient.class);
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(new Configuration(false));
+		dbConf.setRetryThrottleAttempts(2);
+		DynamoDBCounters counters = new DynamoDBCounters();
+		DynamoDBBatchWriter batchWriter = new DynamoDBBatchWriter(
+				client,
+				TABLE_NAME,
+				5,
+				0,
+				noSleepRetryPolicy(dbConf, counters));
+		final int[] acquired = new int[1];
+		batchWriter.setThroughputLimiter(new DynamoDBThroughputLimiter(1000) {
+			@Override
+			public synchronized void acquire() throws InterruptedException {
+				acquired[0]++;
+			}
+		});
+
+		// DynamoDB writes one item per request, more requests than the
+		// throttle attempts
+		expect(client.batchWriteItem(anyObject(BatchWriteItemRequest.class)))
+				.andAnswer(processFirst(1)).times(5);
+		replay(client);
+
+		for (int i = 0; i < 5; i++) {
+			batchWriter.put(new Key(new AttributeValue().withN(Integer.toString(i))),
+					new HashMap<String, AttributeValue>());
+		}
+		batchWriter.close();
+
+		assertEquals(5, acquired[0]);
+		assertEquals(4 + 3 + 2 + 1, counters.getValue(DynamoDBCounter.UNPROCESSED_ITEMS));
+		assertEquals(0, counters.getValue(DynamoDBCounter.THROTTLED_REQUESTS));
+		assertEquals(0, counters.getValue(DynamoDBCounter.RETRIES));
+		verify(client);
+	}
+
+	@Test
+	public void testBatchWriterFailsWithoutProgress() throws IOException, InterruptedException {
+		AmazonDynamoDBClient client = createStrictMock(AmazonDynamoDBClient.class);
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(new Configuration(false));
+		dbConf.setRetryThrottleAttempts(3);
+		DynamoDBBatchWriter batchWriter = new DynamoDBBatchWriter(
+				client,
+				TABLE_NAME,
+				2,
+				0,
+				noSleepRetryPolicy(dbConf, new DynamoDBCounters()));
+
+		// one item is written, then nothing for three requests
+		expect(client.batchWriteItem(anyObject(BatchWriteItemRequest.class)))
+				.andAnswer(processFirst(1));
+		expect(client.batchWriteItem(anyObject(BatchWriteItemRequest.class)))
+				.andAnswer(processFirst(0)).times(3);
+		replay(client);
+
+		batchWriter.put(new Key(new AttributeValue().withN("1")),
+				new HashMap<String, AttributeValue>());
+		try {
+			batchWriter.put(new Key(new AttributeValue().withN("2")),
+					new HashMap<String, AttributeValue>());
+			fail("Expected IOException");
+		} catch (IOException e) {
+			// expected
+		}
+
+		verify(client);
+	}
+
+	@Test
+	public void testGetRecordWriterReleasesClientOnFailure() throws IOException {
+		AmazonDynamoDBClient client = createStrictMock(AmazonDynamoDBClient.class);
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(new Configuration(false));
+		dbConf.setOutputTableName(TABLE_NAME);
+		dbConf.setWriteThroughputPercent(50);
+
+		expect(client.describeTable(anyObject(DescribeTableRequest.class)))
+				.andThrow(new AmazonClientException("unreachable"));
+		client.shutdown();
+		replay(client);
+
+		try {
+			new DynamoDBOutputFormat<MyTable, NullWritable>().getRecordWriter(
+					client,
+					dbConf,
+					new DynamoDBCounters());
+			fail("Expected AmazonClientException");
+		} catch (AmazonClientException e) {
+			// expected
+		}
+
+		verify(client);
+	}
+
+	@Test
+	public void testCheckOutputSpecsRejectsStaleDigests() throws IOException, InterruptedException {
+		Path dir = new Path(System.getProperty(
+				"test.build.data",
+				"target/test-data"), "digest-specs");
+		Configuration conf = new Configuration();
+		FileSystem fs = FileSystem.getLocal(conf);
+		fs.delete(dir, true);
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(conf);
+		DynamoDBOutputFormat<MyTable, NullWritable> outputFormat = new DynamoDBOutputFormat<MyTable, NullWritable>();
+
+		// a new digest directory
+		dbConf.setDigestOutputPath(new Path(dir, "run-1").toString());
+		outputFormat.checkOutputSpecs(new JobContext(conf, null));
+
+		// the previous run's digests as input and output
+		dbConf.setDigestInputPath(new Path(dir, "run-1").toString());
+		try {
+			outputFormat.checkOutputSpecs(new JobContext(conf, null));
+			fail("Expected InvalidJobConfException");
+		} catch (InvalidJobConfException e) {
+			// expected
+		}
+
+		// digests left by an earlier run
+		dbConf.setDigestOutputPath(new Path(dir, "run-2").toString());
+		fs.mkdirs(new Path(dir, "run-2"));
+		try {
+			outputFormat.checkOutputSpecs(new JobContext(conf, null));
+			fail("Expected FileAlreadyExistsException");
+		} catch (FileAlreadyExistsException e) {
+			// expected
+		} finally {
+			fs.delete(dir, true);
+		}
+	}
+
+	@Test
+	public void testWriteLimiter() throws IOException, InterruptedException {
+		AmazonDynamoDBClient client = createStrictMock(AmazonDynamoDBClient.class);
+		Configuration conf = new Configuration(false);
+		conf.setInt("mapred.reduce.tasks", 0);
+		conf.setInt("mapred.map.tasks", 5);
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(conf);
+		dbConf.setWriteThroughputPercent(50);
+
+		TableDescription description = new TableDescription()
+				.withProvisionedThroughput(new ProvisionedThroughputDescription()
+						.withWriteCapacityUnits(100L));
+		expect(client.describeTable(anyObject(DescribeTableRequest.class)))
+				.andReturn(new DescribeTableResult().withTable(description));
+		Map<String, BatchWriteResponse> responses = new HashMap<String, BatchWriteResponse>();
+		responses.put(TABLE_NAME, new BatchWriteResponse().withConsumedCapacityUnits(4.0));
+		expect(client.batchWriteItem(anyObject(BatchWriteItemRequest.class)))
+				.andReturn(new BatchWriteItemResult().withResponses(responses));
+		replay(client);
+
+		DynamoDBBatchWriter writer = (DynamoDBBatchWriter) DynamoDBOutputFormat.createWriter(
+				client,
+				TABLE_NAME,
+				dbConf,
+				new DynamoDBRetryPolicy(dbConf, new DynamoDBCounters()));
+
+		// a map only job shares the capacity between its map tasks
+		DynamoDBThroughputLimiter limiter = writer.getThroughputLimiter();
+		assertEquals(10.0, limiter.getUnitsPerSecond(), 0.001);
+
+		writer.put(new Key(new AttributeValue().withN(HASHKEY_VALUE)),
+				new HashMap<String, AttributeValue>());
+		writer.close();
+		assertTrue(limiter.getAvailableUnits() < 10.0 - 4.0 + 1.0);
+
+		verify(client);
+	}
 }
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.Key;
+
+public class DynamoDBPagePrefetcherTest {
+
+	private static DynamoDBPage createPage(String value, Key lastKey) {
+		List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+		Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+		item.put("id", new AttributeValue().withS(value));
+		items.add(item);
+		return new DynamoDBPage(items, lastKey);
+	}
+
+	@Test
+	public void testPagesInOrder() throws IOException, InterruptedException {
+		final int NUM_PAGES = 5;
+		final List<Key> startKeys = new ArrayList<Key>();
+
+		DynamoDBPagePrefetcher prefetcher = new DynamoDBPagePrefetcher(
+				new DynamoDBPagePrefetcher.PageFetcher() {
+					@Override
+					public DynamoDBPage fetchPage(Key exclusiveStartKey) {
+						startKeys.add(exclusiveStartKey);
+						int page = startKeys.size();
+						Key lastKey = (page < NUM_PAGES) ? new Key(
+								new AttributeValue().withN(Integer.toString(page)))
+								: null;
+						return createPage(Integer.toString(page), lastKey);
+					}
+				},
+				null,
+				2,
+				Long.MAX_VALUE);
+		prefetcher.start("test");
+
+		for (int i = 1; i <= NUM_PAGES; i++) {
+			DynamoDBPage page = prefetcher.next();
+			assertEquals(Integer.toString(i), page.getItems().get(0).get("id").getS());
+		}
+		prefetcher.close();
+
+		assertEquals(NUM_PAGES, startKeys.size());
+		assertNull(startKeys.get(0));
+		assertEquals("1", startKeys.get(1).getHashKeyElement().getN());
+	}
+
+	@Test
+	public void testBoundedByPages() throws IOException, InterruptedException {
+		final AtomicInteger fetched = new AtomicInteger();
+		final Key lastKey = new Key(new AttributeValue().withN("1"));
+
+		DynamoDBPagePrefetcher prefetcher = new DynamoDBPagePrefetcher(
+				new DynamoDBPagePrefetcher.PageFetcher() {
+					@Override
+					public DynamoDBPage fetchPage(Key exclusiveStartKey) {
+						fetched.incrementAndGet();
+						return createPage("page", lastKey);
+					}
+				},
+				null,
+				1,
+				Long.MAX_VALUE);
+		prefetcher.start("test");
+
+		prefetcher.next();
+		Thread.sleep(100);
+
+		// one page queued and one page waiting for space
+		assertEquals(3, fetched.get());
+		prefetcher.close();
+	}
+
+	@Test
+	public void testErrorPropagation() throws IOException, InterruptedException {
+		final AmazonClientException error = new AmazonClientException("failed");
+		DynamoDBPagePrefetcher prefetcher = new DynamoDBPagePrefetcher(
+				new DynamoDBPagePrefetcher.PageFetcher() {
+					@Override
+					public DynamoDBPage fetchPage(Key exclusiveStartKey) {
+						throw error;
+					}
+				},
+				null,
+				2,
+				Long.MAX_VALUE);
+		prefetcher.start("test");
+
+		try {
+			prefetcher.next();
+			fail("Expected exception from the prefetch thread");
+		} catch (AmazonClientException e) {
+			assertSame(error, e);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.Key;
+
+public class DynamoDBPageSizeControllerTest {
+
+	private static final Key LAST_KEY = new Key(new AttributeValue().withN("1"));
+
+	private static DynamoDBPage createPage(int numItems, int itemSize, Key lastKey) {
+		return createPage(numItems, itemSize, lastKey, -1);
+	}
+
+	private static DynamoDBPage createPage(
+			int numItems,
+			int itemSize,
+			Key lastKey,
+			int scannedCount) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < itemSize - 1; i++) {
+			sb.append('x');
+		}
+
+		List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+		for (int i = 0; i < numItems; i++) {
+			Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+			item.put("a", new AttributeValue().withS(sb.toString()));
+			items.add(item);
+		}
+		return new DynamoDBPage(items, lastKey, null, scannedCount);
+	}
+
+	@Test
+	public void testFixedLimit() {
+		DynamoDBPageSizeController controller = new DynamoDBPageSizeController(100, 0);
+		controller.update(createPage(100, 10, LAST_KEY), 1000);
+		controller.throttled();
+		assertEquals(100, controller.getLimit());
+	}
+
+	@Test
+	public void testSlowPagesShrinkLimit() {
+		DynamoDBPageSizeController controller = new DynamoDBPageSizeController(100, 200);
+
+		controller.update(createPage(100, 10, LAST_KEY), 250);
+		assertEquals(80, controller.getLimit());
+
+		// shrinks by at most half
+		controller.update(createPage(80, 10, LAST_KEY), 10000);
+		assertEquals(40, controller.getLimit());
+	}
+
+	@Test
+	public void testFastFullPagesGrowLimit() {
+		DynamoDBPageSizeController controller = new DynamoDBPageSizeController(100, 200);
+
+		controller.update(createPage(100, 10, LAST_KEY), 160);
+		assertEquals(125, controller.getLimit());
+
+		// grows by at most double
+		controller.update(createPage(125, 10, LAST_KEY), 1);
+		assertEquals(250, controller.getLimit());
+
+		// the last page of a split does not grow the limit
+		controller.update(createPage(20, 10, null), 1);
+		assertEquals(250, controller.getLimit());
+	}
+
+	@Test
+	public void testLimitCappedByPageBytes() {
+		DynamoDBPageSizeController controller = new DynamoDBPageSizeController(100, 200);
+
+		// 100 items of 8 KB fill 800 KB, only 128 fit into 1 MB
+		controller.update(createPage(100, 8 * 1024, LAST_KEY), 1);
+		assertEquals(128, controller.getLimit());
+	}
+
+	@Test
+	public void testFilteredPagesSizeScannedItems() {
+		DynamoDBPageSizeController controller = new DynamoDBPageSizeController(100, 200);
+
+		// nothing passed the filter, the size of the items is unknown
+		controller.update(createPage(0, 8 * 1024, LAST_KEY, 100), 1);
+		assertEquals(100, controller.getLimit());
+
+		// one returned item of 8 KB stands for the 100 items scanned
+		controller.update(createPage(1, 8 * 1024, LAST_KEY, 100), 1);
+		assertEquals(128, controller.getLimit());
+
+		// the size is kept for pages that return nothing
+		controller.update(createPage(0, 8 * 1024, LAST_KEY, 128), 1);
+		assertEquals(128, controller.getLimit());
+	}
+
+	@Test
+	public void testThrottledHalvesLimit() {
+		DynamoDBPageSizeController controller = new DynamoDBPageSizeController(3, 200);
+		controller.throttled();
+		assertEquals(1, controller.getLimit());
+		controller.throttled();
+		assertEquals(1, controller.getLimit());
+	}
+}
@@ -29,6 +29,7 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
@@ -485,4 +486,45 @@ public class DynamoDBQueryInputFormatTest {
 
 	}
 
+
+	@Test
+	public void testInputSplitGetRangeFraction() {
+		AttributeValue hashKeyValue = new AttributeValue().withN("22");
+
+		DynamoDBQueryInputFormat.DynamoDBQueryInputSplit numberSplit =
+				new DynamoDBQueryInputFormat.DynamoDBQueryInputSplit(
+						Types.NUMBER,
+						hashKeyValue,
+						Types.NUMBER,
+						Arrays.asList(
+								new AttributeValue().withN("100"),
+								new AttributeValue().withN("200")),
+						ComparisonOperator.BETWEEN);
+		assertEquals(0.0f, numberSplit.getRangeFraction(
+				new AttributeValue().withN("100")), 0.001f);
+		assertEquals(0.25f, numberSplit.getRangeFraction(
+				new AttributeValue().withN("125")), 0.001f);
+		assertEquals(1.0f, numberSplit.getRangeFraction(
+				new AttributeValue().withN("200")), 0.001f);
+
+		DynamoDBQueryInputFormat.DynamoDBQueryInputSplit stringSplit =
+				new DynamoDBQueryInputFormat.DynamoDBQueryInputSplit(
+						Types.NUMBER,
+						hashKeyValue,
+						Types.STRING,
+						Arrays.asList(
+								new AttributeValue().withS("2012-01"),
+								new AttributeValue().withS("2012-09")),
+						ComparisonOperator.BETWEEN);
+		assertEquals(0.5f, stringSplit.getRangeFraction(
+				new AttributeValue().withS("2012-05")), 0.01f);
+
+		// only BETWEEN intervals have a position
+		DynamoDBQueryInputFormat.DynamoDBQueryInputSplit hashKeySplit =
+				new DynamoDBQueryInputFormat.DynamoDBQueryInputSplit(
+						Types.NUMBER,
+						hashKeyValue);
+		assertEquals(-1.0f, hashKeySplit.getRangeFraction(
+				new AttributeValue().withN("125")), 0.0f);
+	}
 }
@@ -19,16 +19,20 @@ package com.willetinc.hadoop.mapreduce.dynamodb;
 import static org.easymock.EasyMock.*;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.Job;
+import org.easymock.Capture;
 import org.junit.Test;
 
 import com.amazonaws.services.dynamodb.AmazonDynamoDBClient;
@@ -141,14 +145,18 @@ public class DynamoDBQueryRecordReaderTest {
 		// first set of results
 		expect(inputSplit.getHashKeyValue()).andReturn(hashKeyValue);
 		expect(inputSplit.hasRangeKey()).andReturn(false);
-		expect(client.query(anyObject(QueryRequest.class))).andReturn(result);
+		Capture<QueryRequest> firstRequest = new Capture<QueryRequest>();
+		expect(client.query(capture(firstRequest))).andReturn(result);
 		expect(result.getLastEvaluatedKey()).andReturn(lastKey);
 		expect(result.getItems()).andReturn(list);
+		expect(result.getConsumedCapacityUnits()).andReturn(1.0);
 		
 		// second set of results
-		expect(client.query(anyObject(QueryRequest.class))).andReturn(result);
+		Capture<QueryRequest> secondRequest = new Capture<QueryRequest>();
+		expect(client.query(capture(secondRequest))).andReturn(result);
 		expect(result.getLastEvaluatedKey()).andReturn(null);
 		expect(result.getItems()).andReturn(list);
+		expect(result.getConsumedCapacityUnits()).andReturn(1.0);
 
 		replay(inputSplit);
 		replay(client);
@@ -174,10 +182,117 @@ public class DynamoDBQueryRecordReaderTest {
 		// no more results
 		assertFalse(reader.nextKeyValue());
 		
+		// every page is fetched with its own request
+		assertNull(firstRequest.getValue().getExclusiveStartKey());
+		assertSame(lastKey, secondRequest.getValue().getExclusiveStartKey());
+		assertEquals(hashKeyValue, secondRequest.getValue().getHashKeyValue());
+		
 		verify(inputSplit);
 		verify(client);
 		verify(result);
 		verify(lastKey);
 	}
 	
+	@Test
+	public void testRecordReaderWithQueryFilter() throws IOException, InterruptedException {
+		Job job = new Job();
+		Configuration conf = job.getConfiguration();
+		DynamoDBConfiguration.setCredentals(conf, ACCESS_KEY, SECRET_KEY);
+		DynamoDBQueryInputFormat.setQueryFilter(
+				conf,
+				"clickstream",
+				Types.STRING,
+				ComparisonOperator.EQ,
+				Arrays.asList(new AttributeValue().withS("673 713")));
+
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(conf);
+
+		DynamoDBQueryInputSplit inputSplit = createMock(DynamoDBQueryInputSplit.class);
+		AmazonDynamoDBClient client = createMock(AmazonDynamoDBClient.class);
+		
+		List<Map<String, AttributeValue>> list = new ArrayList<Map<String, AttributeValue>>();
+		Map<String, AttributeValue> match = new HashMap<String, AttributeValue>();
+		match.put("store_id", new AttributeValue().withN("22"));
+		match.put("clickstream", new AttributeValue().withS("673 713"));
+		list.add(match);
+		Map<String, AttributeValue> other = new HashMap<String, AttributeValue>();
+		other.put("store_id", new AttributeValue().withN("23"));
+		other.put("clickstream", new AttributeValue().withS("1"));
+		list.add(other);
+		
+		expect(inputSplit.getHashKeyValue()).andReturn(new AttributeValue().withN("007"));
+		expect(inputSplit.hasRangeKey()).andReturn(false);
+		expect(client.query(anyObject(QueryRequest.class))).andReturn(
+				new QueryResult().withItems(list));
+
+		replay(inputSplit);
+		replay(client);
+		
+		DynamoDBRecordReader<CSRecord> reader = new DynamoDBQueryRecordReader<CSRecord>(
+				inputSplit,
+				CSRecord.class, 
+				conf, 
+				client, 
+				dbConf, 
+				TABLE_NAME);
+		
+		assertTrue(reader.nextKeyValue());
+		assertEquals("22", reader.getCurrentValue().getNumber(0));
+		assertFalse(reader.nextKeyValue());
+		
+		verify(inputSplit);
+		verify(client);
+	}
+
+	@Test
+	public void testProgressFromRangeKey() throws IOException, InterruptedException {
+		Job job = new Job();
+		Configuration conf = job.getConfiguration();
+		DynamoDBConfiguration.setCredentals(conf, ACCESS_KEY, SECRET_KEY);
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(conf);
+
+		DynamoDBQueryInputSplit inputSplit = new DynamoDBQueryInputSplit(
+				Types.NUMBER,
+				new AttributeValue().withN("22"),
+				Types.NUMBER,
+				Arrays.asList(
+						new AttributeValue().withN("1000"),
+						new AttributeValue().withN("2000")),
+				ComparisonOperator.BETWEEN);
+		// the size of a single HashKey is unknown
+		assertEquals(0, inputSplit.getLength());
+		assertEquals(0, inputSplit.getEstimatedItems());
+
+		List<Map<String, AttributeValue>> list = new ArrayList<Map<String, AttributeValue>>();
+		for (String timestamp : new String[] { "1250", "1750" }) {
+			Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+			item.put("store_id", new AttributeValue().withN("22"));
+			item.put("timestamp", new AttributeValue().withN(timestamp));
+			list.add(item);
+		}
+
+		AmazonDynamoDBClient client = createMock(AmazonDynamoDBClient.class);
+		expect(client.query(anyObject(QueryRequest.class))).andReturn(
+				new QueryResult().withItems(list));
+		replay(client);
+
+		DynamoDBRecordReader<CSRecord> reader = new DynamoDBQueryRecordReader<CSRecord>(
+				inputSplit,
+				CSRecord.class,
+				conf,
+				client,
+				dbConf,
+				TABLE_NAME);
+
+		assertEquals(0.0f, reader.getProgress(), 0.0f);
+		assertTrue(reader.nextKeyValue());
+		assertEquals(0.25f, reader.getProgress(), 0.001f);
+		assertTrue(reader.nextKeyValue());
+		assertEquals(0.75f, reader.getProgress(), 0.001f);
+		assertFalse(reader.nextKeyValue());
+		assertEquals(1.0f, reader.getProgress(), 0.0f);
+
+		verify(client);
+	}
+
 }
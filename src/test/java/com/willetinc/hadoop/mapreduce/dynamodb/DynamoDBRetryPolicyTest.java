@@ -0,0 +1,181 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodb.model.ProvisionedThroughputExceededException;
+import com.willetinc.hadoop.mapreduce.dynamodb.DynamoDBRetryPolicy.ErrorClass;
+
+public class DynamoDBRetryPolicyTest {
+
+	private static class TestPolicy extends DynamoDBRetryPolicy {
+
+		final List<Long> sleeps = new ArrayList<Long>();
+
+		TestPolicy(int throttleAttempts, int transientAttempts, long budget) {
+			super(10, 1000, throttleAttempts, transientAttempts, budget,
+					new DynamoDBCounters());
+		}
+
+		@Override
+		protected void sleep(long millis) {
+			sleeps.add(millis);
+		}
+	}
+
+	private static class FailingRequest implements
+			DynamoDBRetryPolicy.Request<String> {
+
+		private final AmazonClientException error;
+
+		private int failures;
+
+		int attempts;
+
+		FailingRequest(AmazonClientException error, int failures) {
+			this.error = error;
+			this.failures = failures;
+		}
+
+		@Override
+		public String execute() {
+			attempts++;
+			if (failures-- > 0) {
+				throw error;
+			}
+			return "ok";
+		}
+	}
+
+	private static AmazonServiceException serviceException(
+			String errorCode,
+			int statusCode) {
+		AmazonServiceException e = new AmazonServiceException("test");
+		e.setErrorCode(errorCode);
+		e.setStatusCode(statusCode);
+		return e;
+	}
+
+	@Test
+	public void testClassify() {
+		assertEquals(ErrorClass.THROTTLING, DynamoDBRetryPolicy
+				.classify(new ProvisionedThroughputExceededException("test")));
+		assertEquals(ErrorClass.THROTTLING, DynamoDBRetryPolicy
+				.classify(serviceException("ThrottlingException", 400)));
+		assertEquals(ErrorClass.TRANSIENT, DynamoDBRetryPolicy
+				.classify(serviceException("InternalServerError", 500)));
+		assertEquals(ErrorClass.PERMANENT, DynamoDBRetryPolicy
+				.classify(serviceException("ValidationException", 400)));
+		assertEquals(ErrorClass.TRANSIENT, DynamoDBRetryPolicy
+				.classify(new AmazonClientException("connection reset")));
+	}
+
+	@Test
+	public void testRetryThrottled() throws InterruptedException {
+		TestPolicy policy = new TestPolicy(5, 3, 100);
+		FailingRequest request = new FailingRequest(
+				new ProvisionedThroughputExceededException("test"), 3);
+
+		assertEquals("ok", policy.execute(request));
+		assertEquals(4, request.attempts);
+		assertEquals(3, policy.sleeps.size());
+
+		long total = 0;
+		for (long delay : policy.sleeps) {
+			assertTrue(delay >= 10 && delay <= 1000);
+			total += delay;
+		}
+
+		DynamoDBCounters counters = policy.getCounters();
+		assertEquals(3, counters.getValue(DynamoDBCounter.THROTTLED_REQUESTS));
+		assertEquals(3, counters.getValue(DynamoDBCounter.RETRIES));
+		assertEquals(total, counters.getValue(DynamoDBCounter.BACKOFF_MILLIS));
+	}
+
+	@Test
+	public void testPermanentNotRetried() throws InterruptedException {
+		TestPolicy policy = new TestPolicy(5, 3, 100);
+		AmazonServiceException error = serviceException(
+				"ValidationException", 400);
+		FailingRequest request = new FailingRequest(error, 1);
+
+		try {
+			policy.execute(request);
+			fail("permanent error retried");
+		} catch (AmazonServiceException e) {
+			assertSame(error, e);
+		}
+		assertEquals(1, request.attempts);
+		assertTrue(policy.sleeps.isEmpty());
+	}
+
+	@Test
+	public void testTransientAttempts() throws InterruptedException {
+		TestPolicy policy = new TestPolicy(5, 3, 100);
+		FailingRequest request = new FailingRequest(
+				serviceException("InternalServerError", 500), 10);
+
+		try {
+			policy.execute(request);
+			fail("attempts not limited");
+		} catch (AmazonServiceException e) {
+			// expected
+		}
+		assertEquals(3, request.attempts);
+		assertEquals(2, policy.sleeps.size());
+	}
+
+	@Test
+	public void testBudget() throws InterruptedException {
+		TestPolicy policy = new TestPolicy(10, 10, 3);
+
+		assertEquals("ok", policy.execute(new FailingRequest(
+				new AmazonClientException("test"), 2)));
+
+		FailingRequest request = new FailingRequest(
+				new AmazonClientException("test"), 5);
+		try {
+			policy.execute(request);
+			fail("budget not enforced");
+		} catch (AmazonClientException e) {
+			// expected
+		}
+		assertEquals(2, request.attempts);
+		assertEquals(3, policy.getCounters().getValue(DynamoDBCounter.RETRIES));
+	}
+
+	@Test
+	public void testNextDelay() {
+		TestPolicy policy = new TestPolicy(5, 5, 100);
+		long delay = 10;
+		for (int i = 0; i < 100; i++) {
+			delay = policy.nextDelay(delay);
+			assertTrue(delay >= 10 && delay <= 1000);
+		}
+	}
+}
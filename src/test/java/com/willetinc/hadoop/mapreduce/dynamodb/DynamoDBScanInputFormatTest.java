@@ -0,0 +1,158 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.junit.Test;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodb.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodb.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodb.model.DescribeTableResult;
+import com.amazonaws.services.dynamodb.model.TableDescription;
+import com.willetinc.hadoop.mapreduce.dynamodb.DynamoDBScanInputFormat.DynamoDBInputSplit;
+
+public class DynamoDBScanInputFormatTest {
+
+	private static final String TABLE_NAME = "clickstream-log";
+
+	@Test
+	public void testInputSplitWriteReadFields() throws IOException {
+		DynamoDBInputSplit split = new DynamoDBInputSplit(3, 8);
+		split.setEstimates(100, 4096);
+
+		ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+		split.write(new DataOutputStream(bytesOut));
+
+		DynamoDBInputSplit result = new DynamoDBInputSplit();
+		result.readFields(new DataInputStream(new ByteArrayInputStream(
+				bytesOut.toByteArray())));
+
+		assertEquals(3, result.getSegment());
+		assertEquals(8, result.getTotalSegments());
+		assertEquals(100, result.getEstimatedItems());
+		assertEquals(4096, result.getEstimatedBytes());
+	}
+
+	@Test
+	public void testGetNumSegments() {
+		final long SPLIT_SIZE = 1024;
+
+		TableDescription description = new TableDescription();
+		assertEquals(1, DynamoDBScanInputFormat.getNumSegments(
+				description,
+				SPLIT_SIZE));
+
+		description.setTableSizeBytes(SPLIT_SIZE);
+		assertEquals(1, DynamoDBScanInputFormat.getNumSegments(
+				description,
+				SPLIT_SIZE));
+
+		description.setTableSizeBytes(SPLIT_SIZE + 1);
+		assertEquals(2, DynamoDBScanInputFormat.getNumSegments(
+				description,
+				SPLIT_SIZE));
+
+		description.setTableSizeBytes(400 * SPLIT_SIZE);
+		assertEquals(400, DynamoDBScanInputFormat.getNumSegments(
+				description,
+				SPLIT_SIZE));
+	}
+
+	@Test
+	public void testGetSplits() throws IOException, InterruptedException {
+		Configuration conf = new Configuration();
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(conf);
+		dbConf.setInputTableName(TABLE_NAME);
+		dbConf.setScanSplitSize(1024);
+
+		AmazonDynamoDBClient client = createMock(AmazonDynamoDBClient.class);
+		TableDescription description = new TableDescription()
+				.withTableName(TABLE_NAME)
+				.withTableSizeBytes(4096L)
+				.withItemCount(40L);
+		expect(client.describeTable(anyObject(DescribeTableRequest.class)))
+				.andReturn(new DescribeTableResult().withTable(description));
+
+		replay(client);
+
+		List<InputSplit> splits = new DynamoDBScanInputFormat<CSRecord>()
+				.getSplits(client, dbConf);
+
+		assertEquals(DynamoDBScanInputFormat.MAX_SCAN_SEGMENTS, splits.size());
+		DynamoDBInputSplit split = (DynamoDBInputSplit) splits.get(0);
+		assertEquals(0, split.getSegment());
+		assertEquals(DynamoDBScanInputFormat.MAX_SCAN_SEGMENTS,
+				split.getTotalSegments());
+		assertEquals(40 / DynamoDBScanInputFormat.MAX_SCAN_SEGMENTS,
+				split.getEstimatedItems());
+		assertEquals(4096 / DynamoDBScanInputFormat.MAX_SCAN_SEGMENTS,
+				split.getLength());
+
+		verify(client);
+	}
+
+	@Test
+	public void testGetSplitsDescribeTableFailure() throws IOException, InterruptedException {
+		Configuration conf = new Configuration();
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(conf);
+		dbConf.setInputTableName(TABLE_NAME);
+
+		AmazonDynamoDBClient client = createMock(AmazonDynamoDBClient.class);
+		expect(client.describeTable(anyObject(DescribeTableRequest.class)))
+				.andThrow(new AmazonServiceException("AccessDenied"));
+
+		replay(client);
+
+		List<InputSplit> splits = new DynamoDBScanInputFormat<CSRecord>()
+				.getSplits(client, dbConf);
+
+		assertEquals(1, splits.size());
+		assertEquals(0, splits.get(0).getLength());
+
+		verify(client);
+	}
+
+	@Test
+	public void testSetEstimates() throws IOException, InterruptedException {
+		List<InputSplit> splits = new ArrayList<InputSplit>();
+		for (int segment = 0; segment < 4; segment++) {
+			splits.add(new DynamoDBInputSplit(segment, 4));
+		}
+
+		DynamoDBScanInputFormat.setEstimates(splits, new TableDescription()
+				.withItemCount(1000L)
+				.withTableSizeBytes(8000L));
+
+		for (InputSplit split : splits) {
+			assertEquals(250, ((DynamoDBInputSplit) split).getEstimatedItems());
+			assertEquals(2000, split.getLength());
+		}
+	}
+}
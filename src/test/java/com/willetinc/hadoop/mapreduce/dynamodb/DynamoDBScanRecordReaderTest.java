@@ -23,18 +23,30 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.easymock.Capture;
 import org.junit.Test;
 
 import com.amazonaws.services.dynamodb.AmazonDynamoDBClient;
 import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.ComparisonOperator;
+import com.amazonaws.services.dynamodb.model.Condition;
+import com.amazonaws.services.dynamodb.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodb.model.DescribeTableResult;
 import com.amazonaws.services.dynamodb.model.Key;
+import com.amazonaws.services.dynamodb.model.ProvisionedThroughputDescription;
 import com.amazonaws.services.dynamodb.model.ScanRequest;
 import com.amazonaws.services.dynamodb.model.ScanResult;
+import com.amazonaws.services.dynamodb.model.TableDescription;
 import com.willetinc.hadoop.mapreduce.dynamodb.DynamoDBConfiguration;
 import com.willetinc.hadoop.mapreduce.dynamodb.DynamoDBRecordReader;
 import com.willetinc.hadoop.mapreduce.dynamodb.DynamoDBScanRecordReader;
@@ -67,12 +79,16 @@ public class DynamoDBScanRecordReaderTest {
 		// first set of results
 		expect(client.scan(anyObject(ScanRequest.class))).andReturn(result);
 		expect(result.getLastEvaluatedKey()).andReturn(lastKey);
+		expect(result.getScannedCount()).andReturn(1);
 		expect(result.getItems()).andReturn(list);
+		expect(result.getConsumedCapacityUnits()).andReturn(1.0);
 		
 		// second set of results
 		expect(client.scan(anyObject(ScanRequest.class))).andReturn(result);
 		expect(result.getLastEvaluatedKey()).andReturn(null);
+		expect(result.getScannedCount()).andReturn(1);
 		expect(result.getItems()).andReturn(list);
+		expect(result.getConsumedCapacityUnits()).andReturn(1.0);
 
 		replay(inputSplit);
 		replay(client);
@@ -103,5 +119,331 @@ public class DynamoDBScanRecordReaderTest {
 		verify(result);
 		verify(lastKey);
 	}
+	
+	@Test
+	public void testRecordReaderWithPrefetch() throws IOException, InterruptedException {
+		final String TABLE_NAME = "clickstream-log";
+		final String ACCESS_KEY = "access_key";
+		final String SECRET_KEY = "secret_key";
+
+		Configuration conf = new Configuration();
+		DynamoDBConfiguration.setCredentals(conf, ACCESS_KEY, SECRET_KEY);
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(conf);
+		dbConf.setPrefetchEnabled(true);
+		dbConf.setPrefetchPages(1);
+
+		DynamoDBInputSplit inputSplit = createMock(DynamoDBInputSplit.class);
+		AmazonDynamoDBClient client = createMock(AmazonDynamoDBClient.class);
+		
+		List<Map<String, AttributeValue>> list = new ArrayList<Map<String, AttributeValue>>();
+		Map<String, AttributeValue> value = new HashMap<String, AttributeValue>();
+		value.put("store_id", new AttributeValue().withN("22"));
+		value.put("timestamp", new AttributeValue().withN("1353123945999"));
+		value.put("clickstream", new AttributeValue().withS("673 713"));
+		list.add(value);
+		
+		Key lastKey = new Key(new AttributeValue().withN("22"));
+		ScanResult first = new ScanResult().withItems(list).withLastEvaluatedKey(lastKey);
+		ScanResult second = new ScanResult().withItems(list);
+		
+		expect(client.scan(anyObject(ScanRequest.class))).andReturn(first);
+		expect(client.scan(anyObject(ScanRequest.class))).andReturn(second);
+		client.shutdown();
+
+		replay(inputSplit);
+		replay(client);
+		
+		DynamoDBRecordReader<CSRecord> reader = new DynamoDBScanRecordReader<CSRecord>(
+				inputSplit,
+				CSRecord.class, 
+				conf, 
+				client, 
+				dbConf, 
+				TABLE_NAME);
+		
+		assertTrue(reader.nextKeyValue());
+		assertEquals(0, reader.getCurrentKey().get());
+		assertEquals("22", reader.getCurrentValue().getNumber(0));
+		
+		assertTrue(reader.nextKeyValue());
+		assertEquals(1, reader.getCurrentKey().get());
+		
+		assertFalse(reader.nextKeyValue());
+		reader.close();
+		
+		verify(inputSplit);
+		verify(client);
+	}
+
+	@Test
+	public void testRecordReaderWithReadLimit() throws IOException, InterruptedException {
+		final String TABLE_NAME = "clickstream-log";
+		final String ACCESS_KEY = "access_key";
+		final String SECRET_KEY = "secret_key";
+
+		Configuration conf = new Configuration();
+		conf.setInt("mapred.map.tasks", 4);
+		DynamoDBConfiguration.setCredentals(conf, ACCESS_KEY, SECRET_KEY);
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(conf);
+		dbConf.setReadThroughputPercent(50);
+
+		DynamoDBInputSplit inputSplit = createMock(DynamoDBInputSplit.class);
+		AmazonDynamoDBClient client = createStrictMock(AmazonDynamoDBClient.class);
+		
+		List<Map<String, AttributeValue>> list = new ArrayList<Map<String, AttributeValue>>();
+		Map<String, AttributeValue> value = new HashMap<String, AttributeValue>();
+		value.put("store_id", new AttributeValue().withN("22"));
+		list.add(value);
+		
+		TableDescription description = new TableDescription()
+				.withProvisionedThroughput(new ProvisionedThroughputDescription()
+						.withReadCapacityUnits(80L));
+		
+		// the table is described once to size the limiter
+		expect(client.describeTable(anyObject(DescribeTableRequest.class)))
+				.andReturn(new DescribeTableResult().withTable(description));
+		expect(client.scan(anyObject(ScanRequest.class))).andReturn(
+				new ScanResult()
+						.withItems(list)
+						.withLastEvaluatedKey(new Key(new AttributeValue().withN("22")))
+						.withConsumedCapacityUnits(5.0));
+		expect(client.scan(anyObject(ScanRequest.class))).andReturn(
+				new ScanResult()
+						.withItems(list)
+						.withConsumedCapacityUnits(5.0));
+
+		replay(inputSplit);
+		replay(client);
+		
+		DynamoDBRecordReader<CSRecord> reader = new DynamoDBScanRecordReader<CSRecord>(
+				inputSplit,
+				CSRecord.class, 
+				conf, 
+				client, 
+				dbConf, 
+				TABLE_NAME);
+		
+		assertTrue(reader.nextKeyValue());
+		assertTrue(reader.nextKeyValue());
+		assertFalse(reader.nextKeyValue());
+		
+		verify(inputSplit);
+		verify(client);
+	}
+
+	@Test
+	public void testRecordReaderWithProjectionAndScanFilter() throws IOException, InterruptedException {
+		final String TABLE_NAME = "clickstream-log";
+		final String ACCESS_KEY = "access_key";
+		final String SECRET_KEY = "secret_key";
+
+		Configuration conf = new Configuration();
+		DynamoDBConfiguration.setCredentals(conf, ACCESS_KEY, SECRET_KEY);
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(conf);
+		dbConf.setProjectionEnabled(true);
+		dbConf.setPageLimit(25);
+		DynamoDBScanInputFormat.setScanFilter(
+				conf,
+				"clickstream",
+				Types.STRING,
+				ComparisonOperator.BEGINS_WITH,
+				Arrays.asList(new AttributeValue().withS("673")));
+
+		DynamoDBInputSplit inputSplit = createMock(DynamoDBInputSplit.class);
+		AmazonDynamoDBClient client = createMock(AmazonDynamoDBClient.class);
+		
+		Capture<ScanRequest> scanCapture = new Capture<ScanRequest>();
+		expect(client.scan(capture(scanCapture))).andReturn(
+				new ScanResult().withItems(new ArrayList<Map<String, AttributeValue>>()));
+
+		replay(inputSplit);
+		replay(client);
+		
+		DynamoDBRecordReader<CSRecord> reader = new DynamoDBScanRecordReader<CSRecord>(
+				inputSplit,
+				CSRecord.class, 
+				conf, 
+				client, 
+				dbConf, 
+				TABLE_NAME);
+		
+		assertFalse(reader.nextKeyValue());
+		assertEquals(
+				Arrays.asList("store_id", "timestamp", "clickstream"),
+				scanCapture.getValue().getAttributesToGet());
+		assertEquals(Integer.valueOf(25), scanCapture.getValue().getLimit());
+		Condition condition = scanCapture.getValue().getScanFilter().get("clickstream");
+		assertEquals(ComparisonOperator.BEGINS_WITH.toString(), condition.getComparisonOperator());
+		assertEquals("673", condition.getAttributeValueList().get(0).getS());
+		
+		verify(inputSplit);
+		verify(client);
+	}
+
+	@Test
+	public void testRecordReaderResumesFromCheckpoint() throws IOException, InterruptedException {
+		final String TABLE_NAME = "clickstream-log";
+		final String ACCESS_KEY = "access_key";
+		final String SECRET_KEY = "secret_key";
+
+		Configuration conf = new Configuration();
+		DynamoDBConfiguration.setCredentals(conf, ACCESS_KEY, SECRET_KEY);
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(conf);
+		dbConf.setCheckpointDir(DynamoDBCheckpointStoreTest.TEST_DIR.toString());
+		conf.setBoolean("mapred.map.tasks.speculative.execution", false);
+		dbConf.setCheckpointInterval(0);
+		
+		FileSystem fs = FileSystem.getLocal(conf);
+		fs.delete(DynamoDBCheckpointStoreTest.TEST_DIR, true);
+		
+		// checkpoint left behind by a failed attempt
+		TaskAttemptID attemptId = new TaskAttemptID("jt", 1, true, 0, 1);
+		DynamoDBCheckpointStore store = DynamoDBCheckpointStore.create(conf, attemptId);
+		Key savedKey = new Key(new AttributeValue().withN("21"));
+		store.save(new DynamoDBCheckpointStore.Checkpoint(5, savedKey));
+
+		DynamoDBInputSplit inputSplit = createMock(DynamoDBInputSplit.class);
+		TaskAttemptContext context = createMock(TaskAttemptContext.class);
+		AmazonDynamoDBClient client = createMock(AmazonDynamoDBClient.class);
+		
+		List<Map<String, AttributeValue>> list = new ArrayList<Map<String, AttributeValue>>();
+		Map<String, AttributeValue> value = new HashMap<String, AttributeValue>();
+		value.put("store_id", new AttributeValue().withN("22"));
+		list.add(value);
+		Key lastKey = new Key(new AttributeValue().withN("22"));
+		
+		Capture<ScanRequest> firstCapture = new Capture<ScanRequest>();
+		Capture<ScanRequest> secondCapture = new Capture<ScanRequest>();
+		expect(context.getTaskAttemptID()).andReturn(attemptId);
+		expect(client.scan(capture(firstCapture))).andReturn(
+				new ScanResult().withItems(list).withLastEvaluatedKey(lastKey));
+		expect(client.scan(capture(secondCapture))).andReturn(
+				new ScanResult().withItems(list));
+
+		replay(inputSplit);
+		replay(context);
+		replay(client);
+		
+		DynamoDBRecordReader<CSRecord> reader = new DynamoDBScanRecordReader<CSRecord>(
+				inputSplit,
+				CSRecord.class, 
+				conf, 
+				client, 
+				dbConf, 
+				TABLE_NAME);
+		reader.initialize(inputSplit, context);
+		
+		assertTrue(reader.nextKeyValue());
+		assertEquals(5, reader.getCurrentKey().get());
+		assertEquals(savedKey, firstCapture.getValue().getExclusiveStartKey());
+		
+		assertTrue(reader.nextKeyValue());
+		assertEquals(6, reader.getCurrentKey().get());
+		assertEquals(lastKey, secondCapture.getValue().getExclusiveStartKey());
+		assertEquals(6, store.load().getPos());
+		assertEquals(lastKey, store.load().getLastKey());
+		
+		// the checkpoint is removed once the split is complete
+		assertFalse(reader.nextKeyValue());
+		assertFalse(fs.exists(store.getPath()));
+		
+		verify(inputSplit);
+		verify(context);
+		verify(client);
+		fs.delete(DynamoDBCheckpointStoreTest.TEST_DIR, true);
+	}
+
+	@Test
+	public void testRecordReaderProgress() throws IOException, InterruptedException {
+		final String TABLE_NAME = "clickstream-log";
+		final String ACCESS_KEY = "access_key";
+		final String SECRET_KEY = "secret_key";
+
+		Configuration conf = new Configuration();
+		DynamoDBConfiguration.setCredentals(conf, ACCESS_KEY, SECRET_KEY);
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(conf);
+
+		DynamoDBInputSplit inputSplit = new DynamoDBInputSplit(0, 1);
+		inputSplit.setEstimates(4, 1024);
+		AmazonDynamoDBClient client = createMock(AmazonDynamoDBClient.class);
+		
+		List<Map<String, AttributeValue>> list = new ArrayList<Map<String, AttributeValue>>();
+		Map<String, AttributeValue> value = new HashMap<String, AttributeValue>();
+		value.put("store_id", new AttributeValue().withN("22"));
+		list.add(value);
+		list.add(value);
+		
+		expect(client.scan(anyObject(ScanRequest.class))).andReturn(
+				new ScanResult().withItems(list));
+
+		replay(client);
+		
+		DynamoDBRecordReader<CSRecord> reader = new DynamoDBScanRecordReader<CSRecord>(
+				inputSplit,
+				CSRecord.class, 
+				conf, 
+				client, 
+				dbConf, 
+				TABLE_NAME);
+		
+		assertEquals(0.0f, reader.getProgress(), 0.0f);
+		assertTrue(reader.nextKeyValue());
+		assertEquals(0.25f, reader.getProgress(), 0.0f);
+		assertTrue(reader.nextKeyValue());
+		assertEquals(0.5f, reader.getProgress(), 0.0f);
+		
+		// the table holds fewer items than estimated
+		assertFalse(reader.nextKeyValue());
+		assertEquals(1.0f, reader.getProgress(), 0.0f);
+		
+		verify(client);
+	}
+
+	@Test
+	public void testRecordReaderProgressWithScanFilter() throws IOException, InterruptedException {
+		final String TABLE_NAME = "clickstream-log";
+		final String ACCESS_KEY = "access_key";
+		final String SECRET_KEY = "secret_key";
+
+		Configuration conf = new Configuration();
+		DynamoDBConfiguration.setCredentals(conf, ACCESS_KEY, SECRET_KEY);
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(conf);
+
+		DynamoDBInputSplit inputSplit = new DynamoDBInputSplit(0, 1);
+		inputSplit.setEstimates(10, 1024);
+		AmazonDynamoDBClient client = createMock(AmazonDynamoDBClient.class);
+		
+		List<Map<String, AttributeValue>> list = new ArrayList<Map<String, AttributeValue>>();
+		Map<String, AttributeValue> value = new HashMap<String, AttributeValue>();
+		value.put("store_id", new AttributeValue().withN("22"));
+		list.add(value);
+		
+		// the scan filter kept one of the five items scanned per page
+		expect(client.scan(anyObject(ScanRequest.class))).andReturn(
+				new ScanResult()
+						.withItems(list)
+						.withScannedCount(5)
+						.withLastEvaluatedKey(new Key(new AttributeValue().withN("22"))));
+		expect(client.scan(anyObject(ScanRequest.class))).andReturn(
+				new ScanResult().withItems(list).withScannedCount(5));
+
+		replay(client);
+		
+		DynamoDBRecordReader<CSRecord> reader = new DynamoDBScanRecordReader<CSRecord>(
+				inputSplit,
+				CSRecord.class, 
+				conf, 
+				client, 
+				dbConf, 
+				TABLE_NAME);
+		
+		assertTrue(reader.nextKeyValue());
+		assertEquals(0.5f, reader.getProgress(), 0.0f);
+		assertTrue(reader.nextKeyValue());
+		assertEquals(1.0f, reader.getProgress(), 0.0f);
+		assertFalse(reader.nextKeyValue());
+		
+		verify(client);
+	}
 
 }
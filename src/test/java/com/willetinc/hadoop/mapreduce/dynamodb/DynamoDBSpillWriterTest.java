@@ -0,0 +1,177 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.amazonaws.services.dynamodb.model.Key;
+
+public class DynamoDBSpillWriterTest {
+
+	private static final Path TEST_DIR = new Path(System.getProperty(
+			"test.build.data",
+			"target/test-data"), "spill");
+
+	/**
+	 * Records writes, blocking until it is opened.
+	 */
+	private static class GatedWriter implements DynamoDBWriter {
+
+		final CountDownLatch gate = new CountDownLatch(1);
+
+		final List<String> writes = Collections
+				.synchronizedList(new ArrayList<String>());
+
+		volatile boolean closed = false;
+
+		@Override
+		public void put(Key key, Map<String, AttributeValue> item)
+				throws IOException,
+				InterruptedException {
+			gate.await();
+			writes.add("put " + key.getHashKeyElement().getS());
+		}
+
+		@Override
+		public void delete(Key key) throws IOException, InterruptedException {
+			gate.await();
+			writes.add("delete " + key.getHashKeyElement().getS());
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+	private FileSystem fs;
+
+	@Before
+	public void setUp() throws IOException {
+		fs = FileSystem.getLocal(new Configuration());
+		fs.delete(TEST_DIR, true);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		fs.delete(TEST_DIR, true);
+	}
+
+	private static Key key(int i) {
+		return new Key(new AttributeValue().withS(Integer.toString(i)));
+	}
+
+	@Test
+	public void testSpillsWhileSenderIsBlocked()
+			throws IOException,
+			InterruptedException {
+		GatedWriter delegate = new GatedWriter();
+		DynamoDBSpillWriter writer = new DynamoDBSpillWriter(
+				delegate,
+				fs,
+				TEST_DIR,
+				2,
+				3,
+				null,
+				"test spill");
+
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 10; i++) {
+			if (i % 4 == 3) {
+				writer.delete(key(i));
+				expected.add("delete " + i);
+			} else {
+				writer.put(key(i), Collections.singletonMap(
+						"value",
+						new AttributeValue().withN(Integer.toString(i))));
+				expected.add("put " + i);
+			}
+		}
+
+		// the sender holds at most one request, the queue two
+		assertTrue(writer.getSpilledRequests() >= 7);
+		assertTrue(fs.exists(TEST_DIR));
+
+		delegate.gate.countDown();
+		writer.close();
+
+		assertEquals(expected, delegate.writes);
+		assertTrue(delegate.closed);
+		assertFalse(fs.exists(TEST_DIR));
+	}
+
+	@Test
+	public void testRethrowsSenderError()
+			throws IOException,
+			InterruptedException {
+		DynamoDBWriter failing = new GatedWriter() {
+			@Override
+			public void put(Key key, Map<String, AttributeValue> item)
+					throws IOException {
+				throw new IOException("test");
+			}
+		};
+		DynamoDBSpillWriter writer = new DynamoDBSpillWriter(
+				failing,
+				fs,
+				TEST_DIR,
+				2,
+				3,
+				null,
+				"test spill");
+
+		writer.put(key(1), Collections.singletonMap(
+				"value",
+				new AttributeValue().withN("1")));
+		try {
+			writer.flush();
+			fail("Expected IOException");
+		} catch (IOException e) {
+			assertEquals("test", e.getMessage());
+		}
+		try {
+			writer.close();
+			fail("Expected IOException");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.willetinc.hadoop.mapreduce.dynamodb;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodb.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodb.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodb.model.DescribeTableResult;
+import com.amazonaws.services.dynamodb.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodb.model.TableDescription;
+
+public class DynamoDBThroughputLimiterTest {
+
+	private static class ManualClockLimiter extends DynamoDBThroughputLimiter {
+
+		private long now = 0;
+
+		private long slept = 0;
+
+		public ManualClockLimiter(double unitsPerSecond) {
+			super(unitsPerSecond);
+		}
+
+		@Override
+		protected long currentTimeMillis() {
+			return now;
+		}
+
+		@Override
+		protected void sleep(long millis) {
+			slept += millis;
+			now += millis;
+		}
+	}
+
+	@Test
+	public void testAcquireWithinBudget() throws InterruptedException {
+		ManualClockLimiter limiter = new ManualClockLimiter(10);
+
+		limiter.acquire();
+		limiter.consume(5);
+		limiter.acquire();
+
+		assertEquals(0, limiter.slept);
+		assertEquals(5.0, limiter.getAvailableUnits(), 0.001);
+	}
+
+	@Test
+	public void testAcquireWaitsForRefill() throws InterruptedException {
+		ManualClockLimiter limiter = new ManualClockLimiter(10);
+
+		// overdraw the bucket by 19 units: 2 seconds to refill above zero
+		limiter.acquire();
+		limiter.consume(29);
+		limiter.acquire();
+
+		assertEquals(2000, limiter.slept);
+		assertEquals(1.0, limiter.getAvailableUnits(), 0.001);
+	}
+
+	@Test
+	public void testRefillIsCapped() throws InterruptedException {
+		ManualClockLimiter limiter = new ManualClockLimiter(10);
+		limiter.now += 60000;
+
+		assertEquals(10.0, limiter.getAvailableUnits(), 0.001);
+	}
+
+	@Test
+	public void testCreate() {
+		final String TABLE_NAME = "clickstream-log";
+
+		AmazonDynamoDBClient client = createMock(AmazonDynamoDBClient.class);
+		TableDescription description = new TableDescription()
+				.withProvisionedThroughput(new ProvisionedThroughputDescription()
+						.withReadCapacityUnits(1000L)
+						.withWriteCapacityUnits(200L));
+		expect(client.describeTable(anyObject(DescribeTableRequest.class)))
+				.andReturn(new DescribeTableResult().withTable(description))
+				.times(2);
+
+		replay(client);
+
+		DynamoDBThroughputLimiter reads = DynamoDBThroughputLimiter.create(
+				client, TABLE_NAME, 0.5, 10, true);
+		assertEquals(50.0, reads.getUnitsPerSecond(), 0.001);
+
+		DynamoDBThroughputLimiter writes = DynamoDBThroughputLimiter.create(
+				client, TABLE_NAME, 0.5, 10, false);
+		assertEquals(10.0, writes.getUnitsPerSecond(), 0.001);
+
+		verify(client);
+	}
+
+	@Test
+	public void testReadThroughputPercentRange() {
+		Configuration conf = new Configuration(false);
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(conf);
+		dbConf.setReadThroughputPercent(100);
+		assertEquals(100, dbConf.getReadThroughputPercent(), 0);
+
+		try {
+			dbConf.setReadThroughputPercent(150);
+			fail("percentage above 100 accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		conf.setFloat(DynamoDBConfiguration.READ_THROUGHPUT_PERCENT_PROPERTY, 150);
+		try {
+			dbConf.getReadThroughputPercent();
+			fail("percentage above 100 accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testWriteThroughputPercentRange() {
+		Configuration conf = new Configuration(false);
+		DynamoDBConfiguration dbConf = new DynamoDBConfiguration(conf);
+		dbConf.setWriteThroughputPercent(100);
+		assertEquals(100, dbConf.getWriteThroughputPercent(), 0);
+
+		try {
+			dbConf.setWriteThroughputPercent(150);
+			fail("percentage above 100 accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		conf.setFloat(DynamoDBConfiguration.WRITE_THROUGHPUT_PERCENT_PROPERTY, 150);
+		try {
+			dbConf.getWriteThroughputPercent();
+			fail("percentage above 100 accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+}
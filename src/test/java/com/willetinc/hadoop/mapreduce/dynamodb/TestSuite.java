@@ -24,13 +24,30 @@ import com.willetinc.hadoop.mapreduce.dynamodb.io.IOTestSuite;
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
 		AbstractSplitterTest.class,
+		AttributeValueCodecTest.class,
 		AttributeValueIOUtilsTest.class,
+		DynamoDBAsyncWriterTest.class,
 		BigDecimalSplitterTest.class,
 		BinarySplitterTest.class,
+		DynamoDBPagePrefetcherTest.class,
+		DynamoDBPageSizeControllerTest.class,
 		DynamoDBQueryInputFormatTest.class,
 		DynamoDBQueryRecordReaderTest.class,
+		DynamoDBRetryPolicyTest.class,
+		DynamoDBScanInputFormatTest.class,
 		DynamoDBScanRecordReaderTest.class,
+		DynamoDBSpillWriterTest.class,
+		DynamoDBCheckpointStoreTest.class,
+		DynamoDBClientPoolTest.class,
+		DynamoDBCoalescingWriterTest.class,
+		DynamoDBCounterOutputFormatTest.class,
+		DynamoDBDigestWriterTest.class,
+		DynamoDBHashKeyPartitionerTest.class,
+		DynamoDBInterleavingWriterTest.class,
+		DynamoDBItemFilterTest.class,
+		DynamoDBOutputCommitterTest.class,
 		DynamoDBOutputFormatTest.class,
+		DynamoDBThroughputLimiterTest.class,
 		TextSplitterTest.class,
 		
 		// test suites
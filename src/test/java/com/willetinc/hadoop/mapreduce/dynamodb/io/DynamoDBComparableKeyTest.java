@@ -0,0 +1,178 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.willetinc.hadoop.mapreduce.dynamodb.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.WritableComparator;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+
+public class DynamoDBComparableKeyTest {
+
+	public static class NumberKey extends DynamoDBComparableKey {
+		static {
+			DynamoDBComparableKey.define(NumberKey.class);
+		}
+
+		public NumberKey() {
+			super(new SWritable("user") {
+			}, new NWritable("timestamp") {
+			});
+		}
+
+		public NumberKey(String user, String timestamp) {
+			this();
+			setHashKeyValue(new AttributeValue().withS(user));
+			setRangeKeyValue(new AttributeValue().withN(timestamp));
+		}
+	}
+
+	public static class BinaryKey extends DynamoDBComparableKey {
+		static {
+			DynamoDBComparableKey.define(BinaryKey.class);
+		}
+
+		public BinaryKey() {
+			super(new BWritable("id") {
+			}, null);
+		}
+
+		public BinaryKey(int... bytes) {
+			this();
+			byte[] b = new byte[bytes.length];
+			for (int i = 0; i < bytes.length; i++) {
+				b[i] = (byte) bytes[i];
+			}
+			setHashKeyValue(new AttributeValue().withB(ByteBuffer.wrap(b)));
+		}
+	}
+
+	private static byte[] serialize(DynamoDBComparableKey key) throws IOException {
+		DataOutputBuffer out = new DataOutputBuffer();
+		key.write(out);
+		byte[] bytes = new byte[out.getLength()];
+		System.arraycopy(out.getData(), 0, bytes, 0, bytes.length);
+		return bytes;
+	}
+
+	private static void assertSortsAs(List<? extends DynamoDBComparableKey> expected,
+			Class<? extends DynamoDBComparableKey> keyClass) throws IOException {
+		RawComparator<?> comparator = WritableComparator.get(keyClass);
+		assertTrue(comparator instanceof DynamoDBComparableKey.Comparator);
+
+		for (int i = 0; i < expected.size(); i++) {
+			for (int j = 0; j < expected.size(); j++) {
+				byte[] b1 = serialize(expected.get(i));
+				byte[] b2 = serialize(expected.get(j));
+				int raw = comparator.compare(b1, 0, b1.length, b2, 0, b2.length);
+				int objects = expected.get(i).compareTo(expected.get(j));
+				String message = expected.get(i) + " vs " + expected.get(j);
+				assertEquals(message, Integer.signum(i - j), Integer.signum(raw));
+				assertEquals(message, Integer.signum(i - j), Integer.signum(objects));
+			}
+		}
+	}
+
+	@Test
+	public void testNumbersSortNumerically() throws IOException {
+		String[] numbers = { "-1E+20", "-100", "-10.5", "-10", "-1", "-0.5",
+				"-0.05", "0", "0.001", "0.5", "1", "9", "10", "10.5", "100",
+				"123456789012345678901234567890", "1E+40" };
+		List<NumberKey> keys = new ArrayList<NumberKey>();
+		for (String number : numbers) {
+			keys.add(new NumberKey("user", number));
+		}
+		assertSortsAs(keys, NumberKey.class);
+	}
+
+	@Test
+	public void testSortsByHashKeyFirst() throws IOException {
+		List<NumberKey> keys = new ArrayList<NumberKey>();
+		keys.add(new NumberKey("a", "9"));
+		keys.add(new NumberKey("ab", "1"));
+		keys.add(new NumberKey("b", "-5"));
+		keys.add(new NumberKey("b", "5"));
+		keys.add(new NumberKey("z", "0"));
+		// UTF-8 sorts non-ASCII characters after ASCII
+		keys.add(new NumberKey("é", "0"));
+		keys.add(new NumberKey("中", "0"));
+		assertSortsAs(keys, NumberKey.class);
+	}
+
+	@Test
+	public void testBinariesSortUnsigned() throws IOException {
+		List<BinaryKey> keys = new ArrayList<BinaryKey>();
+		keys.add(new BinaryKey(0x00));
+		keys.add(new BinaryKey(0x00, 0x00));
+		keys.add(new BinaryKey(0x7f));
+		keys.add(new BinaryKey(0x80));
+		keys.add(new BinaryKey(0xff, 0x00));
+		assertSortsAs(keys, BinaryKey.class);
+	}
+
+	@Test
+	public void testReadWrite() throws IOException {
+		NumberKey key = new NumberKey("user", "-12.50");
+		NumberKey other = new NumberKey("user", "-12.5");
+		assertEquals(key, other);
+		assertEquals(key.hashCode(), other.hashCode());
+
+		DataInputBuffer in = new DataInputBuffer();
+		byte[] bytes = serialize(key);
+		in.reset(bytes, bytes.length);
+		NumberKey read = new NumberKey();
+		read.readFields(in);
+
+		assertEquals("user", read.getHashKeyValue().getS());
+		assertEquals("-12.5", read.getRangeKeyValue().getN());
+
+		BinaryKey binary = new BinaryKey(1, 2, 3);
+		bytes = serialize(binary);
+		in.reset(bytes, bytes.length);
+		BinaryKey readBinary = new BinaryKey();
+		readBinary.readFields(in);
+		assertEquals(ByteBuffer.wrap(new byte[] { 1, 2, 3 }), readBinary.getHashKeyValue().getB());
+		assertEquals(binary, readBinary);
+	}
+
+	@Test
+	public void testSortsWithRawComparator() throws IOException {
+		List<NumberKey> keys = new ArrayList<NumberKey>();
+		for (int i = 20; i > -20; i -= 3) {
+			keys.add(new NumberKey("user", Integer.toString(i)));
+		}
+		Collections.sort(keys);
+		for (int i = 1; i < keys.size(); i++) {
+			assertTrue(Integer.parseInt(keys.get(i - 1).getRangeKeyValue().getN()) < Integer
+					.parseInt(keys.get(i).getRangeKeyValue().getN()));
+		}
+	}
+
+}
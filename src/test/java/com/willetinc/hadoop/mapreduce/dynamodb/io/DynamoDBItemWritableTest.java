@@ -0,0 +1,128 @@
+/**
+ * Copyright 2012 Willet Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.willetinc.hadoop.mapreduce.dynamodb.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodb.model.AttributeValue;
+import com.willetinc.hadoop.mapreduce.dynamodb.AttributeValueIOUtils;
+import com.willetinc.hadoop.mapreduce.dynamodb.Types;
+
+public class DynamoDBItemWritableTest {
+
+	@Test
+	public void testGetFieldNamesWithRangeKey() {
+		DynamoDBItemWritable item = new DynamoDBItemWritable(
+				new NWritable("hashkey") {},
+				new NWritable("rangekey") {},
+				new SWritable("field") {}) {};
+
+		assertEquals(
+				Arrays.asList("hashkey", "rangekey", "field"),
+				item.getFieldNames());
+	}
+
+	@Test
+	public void testGetFieldNamesWithoutRangeKey() {
+		DynamoDBItemWritable item = new DynamoDBItemWritable(
+				new NWritable("hashkey") {},
+				null,
+				new SWritable("field1") {},
+				new SWritable("field2") {}) {};
+
+		assertEquals(
+				Arrays.asList("hashkey", "field1", "field2"),
+				item.getFieldNames());
+	}
+
+	@Test
+	public void testReadFieldsReusesValues() throws IOException {
+		DynamoDBItemWritable item = new DynamoDBItemWritable(
+				new NWritable("hashkey") {},
+				null,
+				new SWritable("field") {}) {};
+		DataOutputBuffer out = new DataOutputBuffer();
+		for (int i = 0; i < 3; i++) {
+			item.set(0, new AttributeValue().withN(Integer.toString(i)));
+			item.set(1, new AttributeValue().withS("value"));
+			item.write(out);
+		}
+
+		DynamoDBItemWritable read = new DynamoDBItemWritable(
+				new NWritable("hashkey") {},
+				null,
+				new SWritable("field") {}) {};
+		read.setReuseValues(true);
+		assertTrue(read.getHashKey().isReuseValues());
+
+		DataInputBuffer in = new DataInputBuffer();
+		in.reset(out.getData(), out.getLength());
+		read.readFields(in);
+		AttributeValue hashKey = read.get(0);
+		String field = read.getString(1);
+		for (int i = 1; i < 3; i++) {
+			read.readFields(in);
+			assertSame(hashKey, read.get(0));
+			assertEquals(Integer.toString(i), read.getNumber(0));
+			assertSame(field, read.getString(1));
+		}
+	}
+
+	@Test
+	public void testReadFieldsOfEarlierRelease() throws IOException {
+		StringBuilder longNumber = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			longNumber.append('9');
+		}
+		String[] numbers = { "1", "12345", longNumber.toString() };
+
+		// written by AttributeValueIOUtils without a version
+		DataOutputBuffer out = new DataOutputBuffer();
+		for (String number : numbers) {
+			AttributeValueIOUtils.write(
+					Types.NUMBER,
+					new AttributeValue().withN(number),
+					out);
+			AttributeValueIOUtils.write(
+					Types.STRING,
+					new AttributeValue().withS("value " + number),
+					out);
+		}
+
+		DynamoDBItemWritable read = new DynamoDBItemWritable(
+				new NWritable("hashkey") {},
+				null,
+				new SWritable("field") {}) {};
+		DataInputBuffer in = new DataInputBuffer();
+		in.reset(out.getData(), out.getLength());
+		for (String number : numbers) {
+			read.readFields(in);
+			assertEquals(number, read.getNumber(0));
+			assertEquals("value " + number, read.getString(1));
+		}
+		assertEquals(out.getLength(), in.getPosition());
+	}
+}
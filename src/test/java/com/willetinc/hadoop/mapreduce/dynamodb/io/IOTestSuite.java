@@ -32,6 +32,8 @@ import com.willetinc.hadoop.mapreduce.dynamodb.io.SWritableTest;
 		AttributeValueWritableTest.class,
 		BWritableTest.class,
 		BSWritableTest.class,
+		DynamoDBComparableKeyTest.class,
+		DynamoDBItemWritableTest.class,
 		NWritableTest.class,
 		NSWritableTest.class,
 		SWritableTest.class,